@@ -0,0 +1,301 @@
+package httpraider.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import httpraider.controller.engines.JSEngine;
+import httpraider.model.network.NetworkModel;
+import httpraider.model.network.ProxyModel;
+import httpraider.parser.ChainBatchRunner;
+import httpraider.parser.DesyncDetector;
+import httpraider.parser.ParseCache;
+import httpraider.parser.ParsedRequest;
+import httpraider.utils.ProxyExporter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Headless entry point of the extension jar: runs payload files through a network exported with
+ * {@link ProxyExporter#exportNetwork} and writes one JSON line per request boundary, divergence
+ * between connected hops and failed payload, in payload order. Payload files are read as their turn
+ * comes and written out once simulated, so corpora of any size run in bounded memory.
+ * No Burp or Swing classes are loaded.
+ */
+public final class ChainSimulationCli {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -jar HTTP-Hacker.jar --network <network.json> --payloads <file|dir> [options]",
+            "",
+            "  --network <file>      Network exported from the extension (or written by hand)",
+            "  --payloads <path>     Payload file, or directory of payload files (recursive); repeatable",
+            "  --targets <ids>       Comma-separated proxy ids to report (default: every proxy but the client)",
+            "  --threads <n>         Payloads simulated in parallel (default: available processors)",
+            "  --output <file>       JSON lines output (default: standard output)",
+            "  --js-mode <mode>      Parser and rule scripts: compiled (default, fastest for large corpora)",
+            "                        or interpreted (fastest to start, for a handful of payloads)",
+            "  --js-max-instructions <n>  Instruction budget of one script evaluation, 0 for none (default 50000000)",
+            "  --js-max-millis <n>   Time budget of one script evaluation, 0 for none (default 2000)",
+            "  --fail-on-desync      Exit with status 3 when any payload desyncs connected proxies",
+            "  --help                Show this help");
+
+    private static final int EXIT_ERROR = 1;
+    private static final int EXIT_USAGE = 2;
+    private static final int EXIT_DESYNC = 3;
+
+    private ChainSimulationCli() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    static int run(String[] args) {
+        Path networkFile = null;
+        Path output = null;
+        List<Path> payloadPaths = new ArrayList<>();
+        List<String> targetIds = null;
+        int threads = ChainBatchRunner.defaultThreads();
+        boolean failOnDesync = false;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--network": networkFile = Paths.get(value(args, ++i)); break;
+                    case "--payloads": payloadPaths.add(Paths.get(value(args, ++i))); break;
+                    case "--targets": targetIds = Arrays.asList(value(args, ++i).split("\\s*,\\s*")); break;
+                    case "--threads": threads = Integer.parseInt(value(args, ++i)); break;
+                    case "--output": output = Paths.get(value(args, ++i)); break;
+                    case "--js-mode": JSEngine.setOptimizationLevel(jsMode(value(args, ++i))); break;
+                    case "--js-max-instructions":
+                        JSEngine.setBudget(Long.parseLong(value(args, ++i)), JSEngine.getMaxMillis());
+                        break;
+                    case "--js-max-millis":
+                        JSEngine.setBudget(JSEngine.getMaxInstructions(), Long.parseLong(value(args, ++i)));
+                        break;
+                    case "--fail-on-desync": failOnDesync = true; break;
+                    case "--help":
+                    case "-h":
+                        System.out.println(USAGE);
+                        return 0;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + args[i]);
+                }
+            }
+            if (networkFile == null) throw new IllegalArgumentException("--network is required");
+            if (payloadPaths.isEmpty()) throw new IllegalArgumentException("At least one --payloads is required");
+            if (threads < 1) throw new IllegalArgumentException("--threads must be at least 1");
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        try {
+            NetworkModel network = ProxyExporter.importNetwork(networkFile.toFile());
+            List<ProxyModel> targets = resolveTargets(network, targetIds);
+            List<Path> files = listPayloadFiles(payloadPaths);
+
+            long started = System.nanoTime();
+            JsonLinesWriter lines;
+            try (Writer writer = output != null
+                    ? Files.newBufferedWriter(output, StandardCharsets.UTF_8)
+                    : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+                // Payloads are read by the pool threads and each one's lines are written as soon as it is its turn
+                lines = new JsonLinesWriter(writer, files, targets);
+                ChainBatchRunner.stream(network, new ParseCache(), files.size(), index -> Files.readAllBytes(files.get(index)),
+                        targets, threads, lines);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+            System.err.println(files.size() + " payloads, " + targets.size() + " proxies, " + lines.boundaries
+                    + " boundaries, " + lines.desyncs + " divergences, " + lines.errors + " errors in " + elapsedMillis + " ms");
+            long budgetHits = JSEngine.getInstructionBudgetHits() + JSEngine.getTimeBudgetHits();
+            if (budgetHits > 0) {
+                System.err.println(budgetHits + " script evaluations stopped by their budget ("
+                        + JSEngine.getInstructionBudgetHits() + " instructions, " + JSEngine.getTimeBudgetHits() + " time)");
+            }
+            return failOnDesync && lines.desyncs > 0 ? EXIT_DESYNC : 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted");
+            return EXIT_ERROR;
+        } catch (Exception e) {
+            System.err.println("Error: " + (e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName()));
+            return EXIT_ERROR;
+        }
+    }
+
+    // Writes the lines of each payload as the batch reports it (in payload order, one call at a time)
+    private static final class JsonLinesWriter implements ChainBatchRunner.Listener {
+        private final Writer writer;
+        private final List<Path> files;
+        private final List<ProxyModel> targets;
+        private final Gson gson = new Gson();
+        long boundaries;
+        int desyncs;
+        int errors;
+
+        JsonLinesWriter(Writer writer, List<Path> files, List<ProxyModel> targets) {
+            this.writer = writer;
+            this.files = files;
+            this.targets = targets;
+        }
+
+        @Override
+        public void onPayloadDone(ChainBatchRunner.PayloadResult result, int completed, int total) {
+            try {
+                write(result);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (completed % 1000 == 0) System.err.println(completed + " / " + total + " payloads");
+        }
+
+        private void write(ChainBatchRunner.PayloadResult result) throws IOException {
+            String name = files.get(result.getIndex()).toString();
+            for (ProxyModel target : targets) {
+                List<List<ParsedRequest>> groups = result.getGroups(target.getId());
+                for (int g = 0; g < groups.size(); g++) {
+                    List<ParsedRequest> group = groups.get(g);
+                    for (int r = 0; r < group.size(); r++) {
+                        writeLine(writer, gson, boundary(name, result.getIndex(), target, g, r, group.get(r)));
+                        boundaries++;
+                    }
+                }
+            }
+            if (result.getDesync() != null) {
+                for (DesyncDetector.Divergence divergence : result.getDesync().getDivergences()) {
+                    writeLine(writer, gson, desync(name, result.getIndex(), divergence));
+                    desyncs++;
+                }
+            }
+            if (result.getError() != null) {
+                JsonObject line = payloadLine("error", name, result.getIndex());
+                line.addProperty("message", result.getError());
+                writeLine(writer, gson, line);
+                errors++;
+            }
+        }
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) throw new IllegalArgumentException(args[i - 1] + " needs a value");
+        return args[i];
+    }
+
+    private static int jsMode(String mode) {
+        switch (mode) {
+            case "compiled": return JSEngine.COMPILED;
+            case "interpreted": return JSEngine.INTERPRETED;
+            default: throw new IllegalArgumentException("--js-mode must be compiled or interpreted");
+        }
+    }
+
+    // Requested proxies in the given order, or every non-client proxy from the client outwards
+    private static List<ProxyModel> resolveTargets(NetworkModel network, List<String> targetIds) {
+        List<ProxyModel> targets = new ArrayList<>();
+        if (targetIds != null) {
+            for (String id : targetIds) {
+                ProxyModel proxy = network.getProxy(id);
+                if (proxy == null) throw new IllegalArgumentException("Unknown proxy id: " + id);
+                targets.add(proxy);
+            }
+            return targets;
+        }
+        for (ProxyModel proxy : network.getProxies()) {
+            if (!proxy.isClient()) targets.add(proxy);
+        }
+        targets.sort(Comparator.comparingInt(p -> {
+            int distance = network.getDistanceToClient(p.getId());
+            return distance < 0 ? Integer.MAX_VALUE : distance;
+        }));
+        return targets;
+    }
+
+    // Regular, non-hidden files, directories walked recursively in path order
+    private static List<Path> listPayloadFiles(List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files.addAll(walk.filter(Files::isRegularFile)
+                            .filter(p -> !p.getFileName().toString().startsWith("."))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else if (Files.isRegularFile(path)) {
+                files.add(path);
+            } else {
+                throw new IOException("No such payload file or directory: " + path);
+            }
+        }
+        return files;
+    }
+
+    private static JsonObject payloadLine(String type, String payload, int index) {
+        JsonObject line = new JsonObject();
+        line.addProperty("type", type);
+        line.addProperty("payload", payload);
+        line.addProperty("index", index);
+        return line;
+    }
+
+    // Offsets are into the bytes the proxy received in that group (the forwarded stream for later hops)
+    private static JsonObject boundary(String payload, int index, ProxyModel proxy, int group, int request,
+                                       ParsedRequest parsed) {
+        JsonObject line = payloadLine("boundary", payload, index);
+        line.addProperty("proxy", proxy.getId());
+        line.addProperty("proxyName", proxy.getDomainName());
+        line.addProperty("group", group);
+        line.addProperty("request", request);
+        line.addProperty("start", parsed.getStart());
+        line.addProperty("end", parsed.getEnd());
+        line.addProperty("status", parsed.getStatus().name());
+        if (parsed.getStatus() != ParsedRequest.Status.HEADERS_INCOMPLETE && parsed.getStatus() != ParsedRequest.Status.ERROR) {
+            line.addProperty("parsedLength", parsed.getContent().length());
+        }
+        if (parsed.getMissingBytes() > 0) line.addProperty("missingBytes", parsed.getMissingBytes());
+        if (parsed.getError() != null) line.addProperty("detail", parsed.getError());
+        if (parsed.isBlocked()) {
+            line.addProperty("detail", parsed.getFirewallSource());
+            line.addProperty("connectionClosed", parsed.isConnectionClosed());
+        }
+        return line;
+    }
+
+    // Offsets are into the payload itself
+    private static JsonObject desync(String payload, int index, DesyncDetector.Divergence divergence) {
+        JsonObject line = payloadLine("desync", payload, index);
+        line.addProperty("upstream", divergence.getUpstreamId());
+        line.addProperty("downstream", divergence.getDownstreamId());
+        line.addProperty("kind", divergence.getKind().name());
+        line.addProperty("start", divergence.getStart());
+        line.addProperty("position", divergence.getPosition());
+        line.addProperty("upstreamEnd", divergence.getUpstreamEnd());
+        line.addProperty("downstreamEnd", divergence.getDownstreamEnd());
+        line.addProperty("resync", divergence.getResync());
+        line.addProperty("upstreamStatus", divergence.getUpstreamStatus() != null ? divergence.getUpstreamStatus().name() : null);
+        line.addProperty("downstreamStatus", divergence.getDownstreamStatus() != null ? divergence.getDownstreamStatus().name() : null);
+        return line;
+    }
+
+    private static void writeLine(Writer writer, Gson gson, JsonObject line) throws IOException {
+        writer.write(gson.toJson(line));
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,583 @@
+package httpraider.controller.engines;
+
+import httpraider.model.network.FirewallRule;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+
+public final class JSEngine {
+
+    // Rhino optimization levels: interpreted compiles fastest, compiled (bytecode) runs fastest
+    public static final int INTERPRETED = -1;
+    public static final int COMPILED = 9;
+
+    // Default budget of one evaluation; a runaway script fails instead of hanging the calling thread
+    public static final long DEFAULT_MAX_INSTRUCTIONS = 50_000_000L;
+    public static final long DEFAULT_MAX_MILLIS = 2_000L;
+    // Instructions between two budget checks
+    private static final int OBSERVER_THRESHOLD = 10_000;
+
+    private static final EngineContextFactory CONTEXT_FACTORY = new EngineContextFactory();
+    // One Context per thread, entered and exited around each evaluation and reused for the next one
+    private static final ThreadLocal<EngineContext> CONTEXTS = ThreadLocal.withInitial(CONTEXT_FACTORY::newContext);
+    private static volatile int optimizationLevel = COMPILED;
+    private static volatile long maxInstructions = DEFAULT_MAX_INSTRUCTIONS;
+    private static volatile long maxMillis = DEFAULT_MAX_MILLIS;
+    private static final LongAdder INSTRUCTION_BUDGET_HITS = new LongAdder();
+    private static final LongAdder TIME_BUDGET_HITS = new LongAdder();
+
+    // Scripts are compiled once per source text and run against a fresh scope whose prototype is
+    // the shared standard objects, so an evaluation costs neither a compile nor initStandardObjects.
+    // The shared scope is sealed: scripts see the standard library but cannot modify it for others.
+    private static final ScriptableObject SHARED_SCOPE = initSharedScope();
+
+    private static final ScriptCache SCRIPTS = new ScriptCache("script", false);
+    private static final ScriptCache RULES = new ScriptCache("rule", false);
+    // Firewall bodies "return" their verdict, so they run wrapped in a function
+    private static final ScriptCache FIREWALL_RULES = new ScriptCache("firewall", true);
+
+    private JSEngine() {}
+
+    private static ScriptableObject initSharedScope() {
+        Context ctx = enter();
+        try {
+            return ctx.initStandardObjects(null, true);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    /** Thrown by the script entry points when an evaluation runs past its instruction or time budget. */
+    public static final class ScriptBudgetException extends RuntimeException {
+        public enum Kind { INSTRUCTIONS, TIME }
+
+        private final Kind kind;
+        private final long limit;
+
+        ScriptBudgetException(Kind kind, long limit) {
+            super(kind == Kind.INSTRUCTIONS
+                    ? "Script stopped after exceeding its budget of " + limit + " instructions"
+                    : "Script stopped after exceeding its budget of " + limit + " ms");
+            this.kind = kind;
+            this.limit = limit;
+        }
+
+        public Kind getKind() { return kind; }
+        public long getLimit() { return limit; }
+
+        // Callers prefix messages with the exception's toString(); keep them readable
+        @Override
+        public String toString() {
+            return getMessage();
+        }
+    }
+
+    // Raised inside Rhino: an Error, so scripts can neither catch it nor run finally blocks on the way out
+    private static final class BudgetError extends Error {
+        final ScriptBudgetException.Kind kind;
+        final long limit;
+
+        BudgetError(ScriptBudgetException.Kind kind, long limit) {
+            super(null, null, false, false);
+            this.kind = kind;
+            this.limit = limit;
+        }
+
+        ScriptBudgetException toException() {
+            (kind == ScriptBudgetException.Kind.INSTRUCTIONS ? INSTRUCTION_BUDGET_HITS : TIME_BUDGET_HITS).increment();
+            return new ScriptBudgetException(kind, limit);
+        }
+    }
+
+    private static final class EngineContext extends Context {
+        // Budget of the evaluation in progress, reset by enter()
+        long instructions;
+        long instructionLimit;
+        long deadline;
+        long millisLimit;
+
+        EngineContext(ContextFactory factory) {
+            super(factory);
+        }
+    }
+
+    private static final class EngineContextFactory extends ContextFactory {
+        EngineContext newContext() {
+            return (EngineContext) makeContext();
+        }
+
+        @Override
+        protected Context makeContext() {
+            EngineContext ctx = new EngineContext(this);
+            ctx.setInstructionObserverThreshold(OBSERVER_THRESHOLD);
+            // Compiled scripts only count instructions when generated with observer support
+            ctx.setGenerateObserverCount(true);
+            return ctx;
+        }
+
+        @Override
+        protected void observeInstructionCount(Context cx, int instructionCount) {
+            EngineContext ctx = (EngineContext) cx;
+            ctx.instructions += instructionCount;
+            if (ctx.instructionLimit > 0 && ctx.instructions > ctx.instructionLimit) {
+                throw new BudgetError(ScriptBudgetException.Kind.INSTRUCTIONS, ctx.instructionLimit);
+            }
+            if (ctx.millisLimit > 0 && System.nanoTime() - ctx.deadline > 0) {
+                throw new BudgetError(ScriptBudgetException.Kind.TIME, ctx.millisLimit);
+            }
+        }
+    }
+
+    /**
+     * Sets the budget of every later evaluation: the number of Rhino instructions and the wall-clock
+     * time a single script run may take (0 or less for no limit). Time is checked every few thousand
+     * instructions, so a script blocked inside one long native call (e.g. a catastrophic regex)
+     * is only stopped once it returns to script code.
+     */
+    public static void setBudget(long instructions, long millis) {
+        maxInstructions = instructions;
+        maxMillis = millis;
+    }
+
+    public static long getMaxInstructions() {
+        return maxInstructions;
+    }
+
+    public static long getMaxMillis() {
+        return maxMillis;
+    }
+
+    // Evaluations stopped by the instruction budget since startup (or the last reset)
+    public static long getInstructionBudgetHits() {
+        return INSTRUCTION_BUDGET_HITS.sum();
+    }
+
+    // Evaluations stopped by the time budget since startup (or the last reset)
+    public static long getTimeBudgetHits() {
+        return TIME_BUDGET_HITS.sum();
+    }
+
+    public static void resetBudgetHits() {
+        INSTRUCTION_BUDGET_HITS.reset();
+        TIME_BUDGET_HITS.reset();
+    }
+
+    public static int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    /**
+     * Sets the Rhino optimization level of every later evaluation, from {@link #INTERPRETED} (-1)
+     * to {@link #COMPILED} (9). Compiled scripts are dropped so they are compiled again at the new level.
+     */
+    public static void setOptimizationLevel(int level) {
+        if (!Context.isValidOptimizationLevel(level)) {
+            throw new IllegalArgumentException("Invalid Rhino optimization level: " + level);
+        }
+        optimizationLevel = level;
+        SCRIPTS.clear();
+        RULES.clear();
+        FIREWALL_RULES.clear();
+    }
+
+    // Enters this thread's Context; callers must Context.exit() in a finally block
+    private static Context enter() {
+        EngineContext ctx = CONTEXTS.get();
+        int level = optimizationLevel;
+        if (ctx.getOptimizationLevel() != level) {
+            ctx.setOptimizationLevel(level);
+        }
+        ctx.instructions = 0;
+        ctx.instructionLimit = maxInstructions;
+        ctx.millisLimit = maxMillis;
+        ctx.deadline = System.nanoTime() + ctx.millisLimit * 1_000_000L;
+        return CONTEXT_FACTORY.enterContext(ctx);
+    }
+
+    // Top-level scope of one evaluation: script variables and inputs land here, lookups fall through to the shared scope
+    private static Scriptable newScope() {
+        Scriptable scope = new NativeObject();
+        scope.setPrototype(SHARED_SCOPE);
+        scope.setParentScope(null);
+        return scope;
+    }
+
+    /**
+     * Compiled scripts by source text, least recently used evicted past MAX_ENTRIES.
+     * Sources that fail to compile are not cached, so they fail again (with the same error) on the next call.
+     */
+    private static final class ScriptCache {
+        private static final int MAX_ENTRIES = 512;
+
+        private final String sourceName;
+        private final boolean wrapInFunction;
+        private final Map<String, Script> scripts = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Script> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+        ScriptCache(String sourceName, boolean wrapInFunction) {
+            this.sourceName = sourceName;
+            this.wrapInFunction = wrapInFunction;
+        }
+
+        void clear() {
+            synchronized (scripts) {
+                scripts.clear();
+            }
+        }
+
+        Script get(Context ctx, String source) {
+            Script script;
+            synchronized (scripts) {
+                script = scripts.get(source);
+            }
+            if (script != null) return script;
+            // Compiled outside the lock; two threads may compile the same source once each
+            String compiled = wrapInFunction ? "(function() { " + source + " })()" : source;
+            script = ctx.compileString(compiled, sourceName, 1, null);
+            synchronized (scripts) {
+                scripts.put(source, script);
+            }
+            return script;
+        }
+    }
+
+    private static void run(String script, Map<String, Object> inputs, Map<String, Object> outputs) {
+        Context ctx = enter();
+        try {
+            Scriptable scope = newScope();
+            for (Map.Entry<String, Object> e : inputs.entrySet()) {
+                Object jsObj = Context.javaToJS(e.getValue(), scope);
+                org.mozilla.javascript.ScriptableObject.putProperty(scope, e.getKey(), jsObj);
+            }
+            SCRIPTS.get(ctx, script).exec(ctx, scope);
+            for (String key : outputs.keySet()) {
+                Object value = org.mozilla.javascript.ScriptableObject.getProperty(scope, key);
+                if (value == Scriptable.NOT_FOUND) {
+                    outputs.put(key, null);
+                } else if (value instanceof Boolean) {
+                    outputs.put(key, (Boolean) value);
+                } else if (value instanceof Number) {
+                    outputs.put(key, (Number) value);
+                } else if (value instanceof String) {
+                    outputs.put(key, (String) value);
+                } else if (value instanceof org.mozilla.javascript.NativeArray) {
+                    outputs.put(key, value);
+                } else if (value instanceof org.mozilla.javascript.NativeJavaObject) {
+                    outputs.put(key, ((org.mozilla.javascript.NativeJavaObject) value).unwrap());
+                } else {
+                    outputs.put(key, value.toString());
+                }
+            }
+        } catch (BudgetError e) {
+            throw e.toException();
+        } catch (Exception ex) {
+            System.out.println(ex);
+        } finally {
+            Context.exit();
+        }
+    }
+
+    public static String runTagEngine(String script, String input) {
+        Map<String, Object> in = new HashMap<>();
+        in.put("input", input);
+        Map<String, Object> out = new HashMap<>();
+        out.put("output", null);
+        if (script == null || script.trim().isEmpty()) return "";
+        run(script, in, out);
+        Object result = out.get("output");
+        if (result == null) return "";
+        
+        // Fix: Check if Number is actually an integer value
+        if (result instanceof Number) {
+            Number num = (Number) result;
+            double d = num.doubleValue();
+            // Check if it's a whole number
+            if (d == Math.floor(d) && !Double.isInfinite(d)) {
+                // Return as integer string without decimal
+                return String.valueOf(num.longValue());
+            }
+        }
+        
+        return result.toString();
+    }
+
+    public static byte[][] runEndHeaderScript(byte[] headers, byte[] buffer, String script) {
+        try {
+            Map<String, Object> in = new HashMap<>();
+            in.put("headers", new String(headers, "ISO-8859-1"));
+            in.put("buffer", new String(buffer, "ISO-8859-1"));
+            Map<String, Object> out = new HashMap<>();
+            out.put("outHeaders", null);
+            out.put("outBuffer", null);
+
+            if (script == null || script.trim().isEmpty()) throw new IllegalArgumentException("The script is empty or null");
+            run(script, in, out);
+
+            byte[] outHeaders = out.get("outHeaders") == null ? "".getBytes() : out.get("outHeaders").toString().getBytes();
+            byte[] outPayload = out.get("outBuffer") == null ? "".getBytes() : out.get("outBuffer").toString().getBytes();
+            return new byte[][] { outHeaders, outPayload };
+        } catch (ScriptBudgetException e) {
+            throw e;
+        } catch (Exception e) {
+            return new byte[][] { headers, buffer };
+        }
+    }
+
+    public static List<String> runSplitHeaderScript(List<String> headerLines, byte[] headers, String script) {
+        try {
+            Map<String, Object> in = new HashMap<>();
+            in.put("headerLines", headerLines.toArray(new String[0]));
+            in.put("headerBlock", new String(headers, "ISO-8859-1"));
+            Map<String, Object> out = new HashMap<>();
+            out.put("outHeaderLines", null);
+
+            if (script == null || script.trim().isEmpty()) throw new IllegalArgumentException("The script is empty or null");
+            run(script, in, out);
+
+            List<String> outHeaderList = new ArrayList<>();
+            org.mozilla.javascript.NativeArray nativeArray = (org.mozilla.javascript.NativeArray) out.get("outHeaderLines");
+            for (int i = 0; i < nativeArray.getLength(); i++) {
+                Object val = nativeArray.get(i, nativeArray);
+                if (val instanceof org.mozilla.javascript.NativeJavaObject) {
+                    Object realObj = ((org.mozilla.javascript.NativeJavaObject) val).unwrap();
+                    outHeaderList.add(realObj != null ? realObj.toString() : null);
+                } else if (val != null) {
+                    outHeaderList.add(val.toString());
+                } else {
+                    outHeaderList.add(null);
+                }
+            }
+            return outHeaderList;
+        } catch (ScriptBudgetException e) {
+            throw e;
+        } catch (Exception e) {
+            return headerLines;
+        }
+    }
+
+    public static byte[][] runBodyLenScript(List<String> headerLines, byte[] body, byte[] buffer, String script) {
+        try {
+            Map<String, Object> in = new HashMap<>();
+            in.put("headerLines", headerLines.toArray(new String[0]));
+            in.put("body", new String(body, "ISO-8859-1"));
+            in.put("buffer", new String(buffer, "ISO-8859-1"));
+            Map<String, Object> out = new HashMap<>();
+            out.put("outBody", null);
+            out.put("outBuffer", null);
+
+            if (script == null || script.trim().isEmpty()) throw new IllegalArgumentException("The script is empty or null");
+            run(script, in, out);
+
+            byte[] outBody = out.get("outBody") == null ? "".getBytes() : out.get("outBody").toString().getBytes();
+            byte[] outBuffer = out.get("outBuffer") == null ? "".getBytes() : out.get("outBuffer").toString().getBytes();
+            return new byte[][] { outBody, outBuffer };
+        } catch (ScriptBudgetException e) {
+            throw e;
+        } catch (Exception e) {
+            return new byte[][] { body, buffer };
+        }
+    }
+
+    public static Object runJsBooleanRule(String js, String headers, String body) {
+        // Provide input variables 'headers' and 'body', expect 'result' or 'output' boolean as output
+        org.mozilla.javascript.Context ctx = enter();
+        try {
+            org.mozilla.javascript.Scriptable scope = newScope();
+            scope.put("headers", scope, headers);
+            scope.put("body", scope, body);
+            RULES.get(ctx, js).exec(ctx, scope);
+            Object result = org.mozilla.javascript.ScriptableObject.getProperty(scope, "result");
+            if (result == org.mozilla.javascript.Scriptable.NOT_FOUND) {
+                result = org.mozilla.javascript.ScriptableObject.getProperty(scope, "output");
+            }
+            if (result instanceof Boolean) return (Boolean) result;
+            if (result instanceof String) return Boolean.parseBoolean((String) result);
+            return false;
+        } catch (BudgetError e) {
+            throw e.toException();
+        } finally {
+            org.mozilla.javascript.Context.exit();
+        }
+    }
+
+    /**
+     * The enabled firewall rules of one proxy: bodies that {@link NativeRules} recognizes run as Java
+     * predicates, the others are resolved to compiled scripts once. {@link #runFirewallProgram} evaluates
+     * them together, entering a Context at most once per request and only when a script rule is reached.
+     */
+    public static final class FirewallProgram {
+        private final String[] sources;
+        // Java form of each rule, null for rules that run as scripts
+        private final List<Predicate<Object>> natives;
+        private final int nativeCount;
+        // Scripts for the optimization level they were compiled at; a null script is native or failed to compile
+        private volatile Script[] scripts;
+        private volatile int level;
+
+        private FirewallProgram(List<FirewallRule> rules) {
+            sources = new String[rules.size()];
+            natives = new ArrayList<>(rules.size());
+            int count = 0;
+            for (int i = 0; i < sources.length; i++) {
+                FirewallRule rule = rules.get(i);
+                sources[i] = rule.getJsCode();
+                Predicate<Object> nativeRule = NativeRules.compileFirewallRule(sources[i], rule.getSource() == FirewallRule.Source.HEADERS);
+                natives.add(nativeRule);
+                if (nativeRule != null) count++;
+            }
+            nativeCount = count;
+        }
+
+        public int size() {
+            return sources.length;
+        }
+
+        // Rules evaluated without the JS engine
+        public int getNativeCount() {
+            return nativeCount;
+        }
+
+        private Script[] scripts(Context ctx) {
+            Script[] resolved = scripts;
+            int current = ctx.getOptimizationLevel();
+            if (resolved != null && level == current) return resolved;
+            resolved = new Script[sources.length];
+            for (int i = 0; i < sources.length; i++) {
+                if (natives.get(i) != null) continue;
+                try {
+                    resolved[i] = FIREWALL_RULES.get(ctx, sources[i]);
+                } catch (Exception e) {
+                    // Reported once here instead of on every request; the rule never blocks
+                    System.err.println("Firewall rule evaluation error: " + e.getMessage());
+                }
+            }
+            level = current;
+            scripts = resolved;
+            return resolved;
+        }
+    }
+
+    public static FirewallProgram compileFirewallRules(List<FirewallRule> rules) {
+        return new FirewallProgram(rules);
+    }
+
+    /**
+     * Evaluates the rules of a program in order and returns the index of the first one that blocks, or -1.
+     * {@code inputs} is asked for the input of a rule just before it runs: a String is bound as
+     * {@code input}, a String[] as {@code headers}, and null skips the rule. Each script rule still gets its
+     * own scope, and a rule that throws does not block; the budget covers the whole evaluation.
+     */
+    public static int runFirewallProgram(FirewallProgram program, IntFunction<Object> inputs) {
+        Context ctx = null;
+        Script[] scripts = null;
+        try {
+            for (int i = 0; i < program.sources.length; i++) {
+                Predicate<Object> nativeRule = program.natives.get(i);
+                if (nativeRule == null && scripts != null && scripts[i] == null) continue;
+                Object input = inputs.apply(i);
+                if (input == null) continue;
+                if (nativeRule != null) {
+                    if (nativeRule.test(input)) return i;
+                    continue;
+                }
+                if (ctx == null) {
+                    ctx = enter();
+                    scripts = program.scripts(ctx);
+                    if (scripts[i] == null) continue;
+                }
+                Scriptable scope = newScope();
+                if (input instanceof String[]) {
+                    scope.put("headers", scope, Context.javaToJS(input, scope));
+                } else {
+                    scope.put("input", scope, input);
+                }
+                try {
+                    if (isBlocking(scripts[i].exec(ctx, scope))) return i;
+                } catch (Exception e) {
+                    // If evaluation fails, don't block the request
+                    System.err.println("Firewall rule evaluation error: " + e.getMessage());
+                }
+            }
+            return -1;
+        } catch (BudgetError e) {
+            throw e.toException();
+        } finally {
+            if (ctx != null) Context.exit();
+        }
+    }
+
+    private static boolean isBlocking(Object result) {
+        if (result instanceof Boolean) return (Boolean) result;
+        if (result instanceof String) return Boolean.parseBoolean((String) result);
+        if (result instanceof Number) return ((Number) result).intValue() != 0;
+        return false;
+    }
+
+    public static boolean runFirewallRule(String js, String input) {
+        org.mozilla.javascript.Context ctx = enter();
+        try {
+            org.mozilla.javascript.Scriptable scope = newScope();
+            // Set up the input variable
+            scope.put("input", scope, input);
+            
+            // Compiled wrapped in a function so the body can return its verdict
+            Object result = FIREWALL_RULES.get(ctx, js).exec(ctx, scope);
+            
+            // Direct return value
+            if (result instanceof Boolean) return (Boolean) result;
+            if (result instanceof String) return Boolean.parseBoolean((String) result);
+            if (result instanceof Number) return ((Number) result).intValue() != 0;
+            
+            return false;
+        } catch (BudgetError e) {
+            throw e.toException();
+        } catch (Exception e) {
+            // If evaluation fails, don't block the request
+            System.err.println("Firewall rule evaluation error: " + e.getMessage());
+            return false;
+        } finally {
+            org.mozilla.javascript.Context.exit();
+        }
+    }
+
+    public static boolean runFirewallRuleArray(String js, String[] headers) {
+        org.mozilla.javascript.Context ctx = enter();
+        try {
+            org.mozilla.javascript.Scriptable scope = newScope();
+            // Convert array to JS array
+            Object jsHeaders = Context.javaToJS(headers, scope);
+            scope.put("headers", scope, jsHeaders);
+            
+            // Compiled wrapped in a function so the body can return its verdict
+            Object result = FIREWALL_RULES.get(ctx, js).exec(ctx, scope);
+            
+            // Direct return value
+            if (result instanceof Boolean) return (Boolean) result;
+            if (result instanceof String) return Boolean.parseBoolean((String) result);
+            if (result instanceof Number) return ((Number) result).intValue() != 0;
+            
+            return false;
+        } catch (BudgetError e) {
+            throw e.toException();
+        } catch (Exception e) {
+            // If evaluation fails, don't block the request
+            System.err.println("Firewall rule array evaluation error: " + e.getMessage());
+            return false;
+        } finally {
+            org.mozilla.javascript.Context.exit();
+        }
+    }
+
+}
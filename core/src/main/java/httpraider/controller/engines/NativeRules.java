@@ -0,0 +1,1191 @@
+package httpraider.controller.engines;
+
+import httpraider.model.network.FirewallRule;
+
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiles the common shapes of firewall and load-balancing rule scripts to plain Java predicates:
+ * the helper functions of the {@link FirewallRule#defaultJsCode default firewall templates},
+ * "contains / starts with / equals" tests on the inputs, header-exists and header-count checks,
+ * length checks and regex tests, combined with {@code ! && ||} and {@code if (...) return ...;}.
+ * A compiled rule gives the same verdict Rhino would, including rules that throw (which never match).
+ * Anything outside these shapes is not compiled and keeps running as JS.
+ */
+public final class NativeRules {
+
+    private NativeRules() {}
+
+    /**
+     * A firewall rule body as a predicate over the rule input: the String bound to {@code input},
+     * or the String[] bound to {@code headers} when {@code headersInput} is set. Returns null when
+     * the body needs the JS engine.
+     */
+    public static Predicate<Object> compileFirewallRule(String js, boolean headersInput) {
+        if (js == null) return null;
+        Parser parser = Parser.of(js, headersInput ? Binding.HEADER_ARRAY : Binding.INPUT, true);
+        if (parser == null) return null;
+        Body body = parser.parseFirewallBody();
+        if (body == null) return null;
+        return input -> body.run(input, null);
+    }
+
+    /**
+     * A load-balancing JS rule as a predicate over the header block and body, or null when it needs the
+     * JS engine. Compiled rules are cached by source, like the scripts in {@link JSEngine}.
+     */
+    public static BiPredicate<String, String> loadBalancingRule(String js) {
+        if (js == null) return null;
+        BiPredicate<String, String> rule;
+        synchronized (LOAD_BALANCING_RULES) {
+            rule = LOAD_BALANCING_RULES.get(js);
+        }
+        if (rule == null) {
+            Parser parser = Parser.of(js, Binding.HEADERS_AND_BODY, false);
+            Body body = parser != null ? parser.parseAssignmentBody() : null;
+            rule = body != null ? body::run : NEEDS_JS;
+            synchronized (LOAD_BALANCING_RULES) {
+                LOAD_BALANCING_RULES.put(js, rule);
+            }
+        }
+        return rule != NEEDS_JS ? rule : null;
+    }
+
+    private static final int MAX_CACHED_RULES = 512;
+    private static final BiPredicate<String, String> NEEDS_JS = (headers, body) -> false;
+    private static final Map<String, BiPredicate<String, String>> LOAD_BALANCING_RULES = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, BiPredicate<String, String>> eldest) {
+            return size() > MAX_CACHED_RULES;
+        }
+    };
+
+    // ---------------------------------------------------------------------------------------------
+    // Evaluation
+
+    // Where the script would have thrown (e.g. a method call on a null input); the rule does not match
+    private static final class ScriptError extends RuntimeException {
+        ScriptError() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final ScriptError SCRIPT_ERROR = new ScriptError();
+
+    // a and b are the two input slots of the rule (see Binding)
+    private interface Expr {
+        boolean eval(Object a, Object b);
+    }
+
+    // if (cond) return value; -- cond is null for a plain return
+    private static final class Statement {
+        final Expr cond;
+        final Expr value;
+
+        Statement(Expr cond, Expr value) {
+            this.cond = cond;
+            this.value = value;
+        }
+    }
+
+    private static final class Body {
+        final Statement[] statements;
+
+        Body(List<Statement> statements) {
+            this.statements = statements.toArray(new Statement[0]);
+        }
+
+        boolean run(Object a, Object b) {
+            try {
+                for (Statement s : statements) {
+                    if (s.cond == null || s.cond.eval(a, b)) {
+                        return s.value.eval(a, b);
+                    }
+                }
+                return false;
+            } catch (ScriptError e) {
+                return false;
+            }
+        }
+    }
+
+    private static String string(Object value) {
+        if (value instanceof String) return (String) value;
+        throw SCRIPT_ERROR;
+    }
+
+    // Case mapping applied to a string before a test, as input.toLowerCase() / toUpperCase() would
+    private enum Case { NONE, LOWER, UPPER }
+
+    private static char map(char c, Case mode) {
+        switch (mode) {
+            case LOWER: return Character.toLowerCase(c);
+            case UPPER: return Character.toUpperCase(c);
+            default:    return c;
+        }
+    }
+
+    // Whether mapping s char by char gives the same string as JS toLowerCase/toUpperCase:
+    // true for Latin-1, apart from the sharp s that upper-cases to "SS"
+    private static boolean mapsCharByChar(String s, Case mode) {
+        if (mode == Case.NONE) return true;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c > 0xFF || (mode == Case.UPPER && c == '\u00DF')) return false;
+        }
+        return true;
+    }
+
+    private static String mapWhole(String s, Case mode) {
+        switch (mode) {
+            case LOWER: return s.toLowerCase(Locale.ROOT);
+            case UPPER: return s.toUpperCase(Locale.ROOT);
+            default:    return s;
+        }
+    }
+
+    private static boolean regionMatches(String s, int offset, String literal, Case mode) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (map(s.charAt(offset + i), mode) != literal.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private enum StringOp { INCLUDES, STARTS_WITH, ENDS_WITH, EQUALS, INDEX_OF }
+
+    // The result of s.op(literal), with s first mapped by mode; INDEX_OF returns the index, the others 1 or 0
+    private static int apply(String s, Case mode, StringOp op, String literal) {
+        if (!mapsCharByChar(s, mode)) {
+            s = mapWhole(s, mode);
+            mode = Case.NONE;
+        }
+        if (mode == Case.NONE) {
+            switch (op) {
+                case STARTS_WITH: return s.startsWith(literal) ? 1 : 0;
+                case ENDS_WITH:   return s.endsWith(literal) ? 1 : 0;
+                case EQUALS:      return s.equals(literal) ? 1 : 0;
+                case INDEX_OF:    return s.indexOf(literal);
+                default:          return s.contains(literal) ? 1 : 0;
+            }
+        }
+        int n = s.length();
+        int m = literal.length();
+        switch (op) {
+            case STARTS_WITH:
+                return m <= n && regionMatches(s, 0, literal, mode) ? 1 : 0;
+            case ENDS_WITH:
+                return m <= n && regionMatches(s, n - m, literal, mode) ? 1 : 0;
+            case EQUALS:
+                return m == n && regionMatches(s, 0, literal, mode) ? 1 : 0;
+            default:
+                int index = -1;
+                for (int i = 0; i + m <= n; i++) {
+                    if (regionMatches(s, i, literal, mode)) {
+                        index = i;
+                        break;
+                    }
+                }
+                return op == StringOp.INDEX_OF ? index : (index >= 0 ? 1 : 0);
+        }
+    }
+
+    // line.toLowerCase().startsWith(prefix) for a Java string line (default locale), prefix already lower case
+    private static boolean lowerStartsWith(String line, String prefix) {
+        String language = Locale.getDefault().getLanguage();
+        if (!"tr".equals(language) && !"az".equals(language)) {
+            int m = prefix.length();
+            int k = Math.min(line.length(), m);
+            boolean ascii = true;
+            for (int i = 0; i < k && ascii; i++) {
+                char c = line.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                } else if (Character.toLowerCase(c) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            if (ascii) return line.length() >= m;
+        }
+        return line.toLowerCase().startsWith(prefix);
+    }
+
+    private static int countHeaders(Object headers, String prefix) {
+        if (!(headers instanceof String[])) throw SCRIPT_ERROR;
+        int count = 0;
+        for (String line : (String[]) headers) {
+            if (lowerStartsWith(line, prefix)) count++;
+        }
+        return count;
+    }
+
+    private static boolean hasHeader(Object headers, String prefix) {
+        if (!(headers instanceof String[])) throw SCRIPT_ERROR;
+        for (String line : (String[]) headers) {
+            if (lowerStartsWith(line, prefix)) return true;
+        }
+        return false;
+    }
+
+    private static boolean compare(int left, String op, int right) {
+        switch (op) {
+            case "===": case "==": return left == right;
+            case "!==": case "!=": return left != right;
+            case ">":  return left > right;
+            case ">=": return left >= right;
+            case "<":  return left < right;
+            default:   return left <= right;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Tokens
+
+    private enum Kind { IDENT, STRING, NUMBER, REGEX, PUNCT, EOF }
+
+    private static final class Token {
+        final Kind kind;
+        final String text;
+        final String flags;
+        final boolean newlineBefore;
+
+        Token(Kind kind, String text, String flags, boolean newlineBefore) {
+            this.kind = kind;
+            this.text = text;
+            this.flags = flags;
+            this.newlineBefore = newlineBefore;
+        }
+
+        boolean is(String punct) {
+            return (kind == Kind.PUNCT || kind == Kind.IDENT) && text.equals(punct);
+        }
+
+        boolean sameAs(Token other) {
+            return kind == other.kind && text.equals(other.text) && Objects.equals(flags, other.flags);
+        }
+    }
+
+    private static final String[] PUNCTUATORS = {
+            "===", "!==", "==", "!=", ">=", "<=", "&&", "||",
+            "(", ")", "{", "}", "[", "]", ";", ",", ".", "!", "<", ">", "=", "+", "-", "*", "%", ":", "?"
+    };
+
+    /**
+     * The tokens of a small JS subset; null for anything the parser would reject anyway. A firewall body
+     * (functionBody) is compiled as {@code "(function() { " + body + " })()"}, so a line comment that runs
+     * to the end of it also comments out the closing: Rhino fails to compile it and the rule never blocks.
+     */
+    private static List<Token> tokenize(String src, boolean functionBody) {
+        List<Token> tokens = new ArrayList<>();
+        boolean newline = false;
+        int i = 0;
+        int n = src.length();
+        while (i < n) {
+            char c = src.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029') {
+                newline = true;
+                i++;
+            } else if (c == ' ' || c == '\t' || c == '\f' || c == '\u000B' || c == '\u00A0' || c == '\uFEFF') {
+                i++;
+            } else if (src.startsWith("//", i)) {
+                while (i < n && src.charAt(i) != '\n' && src.charAt(i) != '\r') i++;
+                if (i == n && functionBody) return null;
+            } else if (src.startsWith("/*", i)) {
+                int end = src.indexOf("*/", i + 2);
+                if (end < 0) return null;
+                String comment = src.substring(i, end);
+                if (comment.indexOf('\n') >= 0 || comment.indexOf('\r') >= 0) newline = true;
+                i = end + 2;
+            } else if (c == '/') {
+                // No division in the supported subset: a slash starts a regex literal
+                int start = ++i;
+                boolean inClass = false;
+                while (true) {
+                    if (i >= n) return null;
+                    char r = src.charAt(i);
+                    if (r == '\n' || r == '\r') return null;
+                    if (r == '\\') {
+                        i += 2;
+                        continue;
+                    }
+                    if (r == '[') inClass = true;
+                    else if (r == ']') inClass = false;
+                    else if (r == '/' && !inClass) break;
+                    i++;
+                }
+                String body = src.substring(start, i++);
+                int flagsStart = i;
+                while (i < n && Character.isLetter(src.charAt(i))) i++;
+                tokens.add(new Token(Kind.REGEX, body, src.substring(flagsStart, i), newline));
+                newline = false;
+            } else if (c == '\'' || c == '"') {
+                StringBuilder value = new StringBuilder();
+                i = readString(src, i, value);
+                if (i < 0) return null;
+                tokens.add(new Token(Kind.STRING, value.toString(), null, newline));
+                newline = false;
+            } else if (c >= '0' && c <= '9') {
+                int start = i;
+                while (i < n && src.charAt(i) >= '0' && src.charAt(i) <= '9') i++;
+                if (i < n && (Character.isLetterOrDigit(src.charAt(i)) || src.charAt(i) == '.')) return null;
+                if (i - start > 9 || (i - start > 1 && c == '0')) return null;
+                tokens.add(new Token(Kind.NUMBER, src.substring(start, i), null, newline));
+                newline = false;
+            } else if (isIdentStart(c)) {
+                int start = i;
+                while (i < n && (isIdentStart(src.charAt(i)) || (src.charAt(i) >= '0' && src.charAt(i) <= '9'))) i++;
+                tokens.add(new Token(Kind.IDENT, src.substring(start, i), null, newline));
+                newline = false;
+            } else {
+                String punct = null;
+                for (String p : PUNCTUATORS) {
+                    if (src.startsWith(p, i)) {
+                        punct = p;
+                        break;
+                    }
+                }
+                if (punct == null) return null;
+                tokens.add(new Token(Kind.PUNCT, punct, null, newline));
+                newline = false;
+                i += punct.length();
+            }
+        }
+        tokens.add(new Token(Kind.EOF, "", null, newline));
+        return tokens;
+    }
+
+    private static boolean isIdentStart(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_' || c == '$';
+    }
+
+    // Reads the string literal starting at i into value; returns the index after it, or -1
+    private static int readString(String src, int i, StringBuilder value) {
+        char quote = src.charAt(i++);
+        int n = src.length();
+        while (i < n) {
+            char c = src.charAt(i++);
+            if (c == quote) return i;
+            if (c == '\n' || c == '\r') return -1;
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (i >= n) return -1;
+            char e = src.charAt(i++);
+            switch (e) {
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'v': value.append('\u000B'); break;
+                case '0':
+                    if (i < n && Character.isDigit(src.charAt(i))) return -1;
+                    value.append('\0');
+                    break;
+                case 'x':
+                case 'u': {
+                    int len = e == 'x' ? 2 : 4;
+                    if (i + len > n) return -1;
+                    int code = 0;
+                    for (int k = 0; k < len; k++) {
+                        int digit = Character.digit(src.charAt(i + k), 16);
+                        if (digit < 0) return -1;
+                        code = code * 16 + digit;
+                    }
+                    value.append((char) code);
+                    i += len;
+                    break;
+                }
+                default:
+                    // Octal escapes and line continuations are left to the JS engine
+                    if ((e >= '1' && e <= '9') || e == '\n' || e == '\r' || e == '\u2028' || e == '\u2029') return -1;
+                    value.append(e);
+            }
+        }
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Template helpers
+
+    // Helper functions of the default templates, by name, as tokens from "function" to the closing brace
+    private static final Map<String, List<Token>> TEMPLATE_HELPERS = templateHelpers();
+    // Helpers that call another helper
+    private static final Map<String, String> HELPER_DEPENDENCIES = Map.of(
+            "hasHeader", "getHeaderValue",
+            "getMethod", "getRequestLine",
+            "getUrl", "getRequestLine");
+
+    private static Map<String, List<Token>> templateHelpers() {
+        Map<String, List<Token>> helpers = new HashMap<>();
+        for (FirewallRule.Source source : FirewallRule.Source.values()) {
+            List<Token> tokens = tokenize(FirewallRule.defaultJsCode(source), false);
+            if (tokens == null) continue;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.get(i).is("function") && tokens.get(i + 1).kind == Kind.IDENT) {
+                    int end = functionEnd(tokens, i);
+                    if (end > 0) {
+                        helpers.put(tokens.get(i + 1).text, tokens.subList(i, end));
+                        i = end - 1;
+                    }
+                }
+            }
+        }
+        return helpers;
+    }
+
+    // Index after the closing brace of the function declaration starting at i, or -1
+    private static int functionEnd(List<Token> tokens, int i) {
+        int depth = 0;
+        for (int k = i; k < tokens.size(); k++) {
+            Token t = tokens.get(k);
+            if (t.kind == Kind.EOF) return -1;
+            if (t.is("{")) {
+                depth++;
+            } else if (t.is("}")) {
+                if (--depth == 0) return k + 1;
+            }
+        }
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Parser
+
+    // What the rule's variables are bound to; slot a is the first predicate argument, slot b the second
+    private enum Binding {
+        // Firewall rule on the method, URL, version, body or full request: input (String) in slot a
+        INPUT,
+        // Firewall rule on the headers: headers (String[]) in slot a
+        HEADER_ARRAY,
+        // Load-balancing rule: headers (String) in slot a, body (String) in slot b
+        HEADERS_AND_BODY
+    }
+
+    // Thrown while parsing when the script leaves the supported subset
+    private static final class Unsupported extends Exception {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final class Parser {
+        private final List<Token> tokens;
+        private final Binding binding;
+        private final boolean helpersAllowed;
+        private final Set<String> definedHelpers = new HashSet<>();
+        private final Set<String> calledHelpers = new HashSet<>();
+        private int pos;
+
+        private Parser(List<Token> tokens, Binding binding, boolean helpersAllowed) {
+            this.tokens = tokens;
+            this.binding = binding;
+            this.helpersAllowed = helpersAllowed;
+        }
+
+        static Parser of(String js, Binding binding, boolean helpersAllowed) {
+            List<Token> tokens = tokenize(js, binding != Binding.HEADERS_AND_BODY);
+            return tokens != null ? new Parser(tokens, binding, helpersAllowed) : null;
+        }
+
+        private Token peek() {
+            return tokens.get(pos);
+        }
+
+        private Token peek(int ahead) {
+            return tokens.get(Math.min(pos + ahead, tokens.size() - 1));
+        }
+
+        private Token next() throws Unsupported {
+            Token t = tokens.get(pos);
+            if (t.kind == Kind.EOF) throw new Unsupported();
+            pos++;
+            return t;
+        }
+
+        private void expect(String text) throws Unsupported {
+            if (!next().is(text)) throw new Unsupported();
+        }
+
+        private String expectString() throws Unsupported {
+            Token t = next();
+            if (t.kind != Kind.STRING) throw new Unsupported();
+            return t.text;
+        }
+
+        // Function body of a firewall rule: helper declarations, if-returns and returns
+        Body parseFirewallBody() {
+            try {
+                List<Statement> statements = new ArrayList<>();
+                while (peek().kind != Kind.EOF) {
+                    Token t = peek();
+                    if (t.is(";")) {
+                        pos++;
+                    } else if (t.is("function")) {
+                        parseHelperDeclaration();
+                    } else if (t.is("if")) {
+                        pos++;
+                        expect("(");
+                        Expr cond = parseOr();
+                        expect(")");
+                        Expr value;
+                        if (peek().is("{")) {
+                            pos++;
+                            value = parseReturn();
+                            expect("}");
+                        } else {
+                            value = parseReturn();
+                        }
+                        statements.add(new Statement(cond, value));
+                    } else if (t.is("return")) {
+                        statements.add(new Statement(null, parseReturn()));
+                    } else {
+                        return null;
+                    }
+                }
+                for (String helper : calledHelpers) {
+                    if (!definedHelpers.contains(helper)) return null;
+                    String dependency = HELPER_DEPENDENCIES.get(helper);
+                    if (dependency != null && !definedHelpers.contains(dependency)) return null;
+                }
+                return new Body(statements);
+            } catch (Unsupported e) {
+                return null;
+            }
+        }
+
+        // A top-level load-balancing script: assignments to result (or output, read when result is never set)
+        Body parseAssignmentBody() {
+            try {
+                List<Expr> values = new ArrayList<>();
+                List<Boolean> toResult = new ArrayList<>();
+                while (peek().kind != Kind.EOF) {
+                    if (peek().is(";")) {
+                        pos++;
+                        continue;
+                    }
+                    if (peek().is("var")) pos++;
+                    Token name = next();
+                    if (!name.is("result") && !name.is("output")) return null;
+                    expect("=");
+                    values.add(parseOr());
+                    toResult.add(name.is("result"));
+                    endStatement();
+                }
+                if (values.isEmpty()) return null;
+                Expr[] exprs = values.toArray(new Expr[0]);
+                boolean[] isResult = new boolean[exprs.length];
+                boolean anyResult = false;
+                for (int k = 0; k < exprs.length; k++) {
+                    isResult[k] = toResult.get(k);
+                    anyResult |= isResult[k];
+                }
+                boolean readResult = anyResult;
+                // Every assignment runs in order (any of them may throw); the last one to the variable read wins
+                Expr verdict = (a, b) -> {
+                    boolean value = false;
+                    for (int k = 0; k < exprs.length; k++) {
+                        boolean v = exprs[k].eval(a, b);
+                        if (isResult[k] == readResult) value = v;
+                    }
+                    return value;
+                };
+                return new Body(Collections.singletonList(new Statement(null, verdict)));
+            } catch (Unsupported e) {
+                return null;
+            }
+        }
+
+        private void parseHelperDeclaration() throws Unsupported {
+            int end = functionEnd(tokens, pos);
+            if (end < 0 || peek(1).kind != Kind.IDENT) throw new Unsupported();
+            String name = peek(1).text;
+            List<Token> template = TEMPLATE_HELPERS.get(name);
+            if (!helpersAllowed || template == null || template.size() != end - pos) throw new Unsupported();
+            for (int i = 0; i < template.size(); i++) {
+                if (!template.get(i).sameAs(tokens.get(pos + i))) throw new Unsupported();
+            }
+            definedHelpers.add(name);
+            pos = end;
+        }
+
+        private Expr parseReturn() throws Unsupported {
+            expect("return");
+            Token t = peek();
+            if (t.is(";") || t.is("}") || t.kind == Kind.EOF || t.newlineBefore) {
+                // "return;" or a return cut off by automatic semicolon insertion: undefined
+                endStatement();
+                return (a, b) -> false;
+            }
+            Expr value = parseOr();
+            endStatement();
+            return value;
+        }
+
+        // A statement ends with a semicolon, or implicitly before a closing brace, the end or a new line
+        private void endStatement() throws Unsupported {
+            Token t = peek();
+            if (t.is(";")) {
+                pos++;
+            } else if (!t.is("}") && t.kind != Kind.EOF && !t.newlineBefore) {
+                throw new Unsupported();
+            }
+        }
+
+        private Expr parseOr() throws Unsupported {
+            Expr left = parseAnd();
+            while (peek().is("||")) {
+                pos++;
+                Expr l = left;
+                Expr r = parseAnd();
+                left = (a, b) -> l.eval(a, b) || r.eval(a, b);
+            }
+            return left;
+        }
+
+        private Expr parseAnd() throws Unsupported {
+            Expr left = parseUnary();
+            while (peek().is("&&")) {
+                pos++;
+                Expr l = left;
+                Expr r = parseUnary();
+                left = (a, b) -> l.eval(a, b) && r.eval(a, b);
+            }
+            return left;
+        }
+
+        private Expr parseUnary() throws Unsupported {
+            if (peek().is("!")) {
+                pos++;
+                // "!x > 1" compares the negation; only negations of complete tests are supported
+                Expr operand = parseUnaryOperand();
+                return (a, b) -> !operand.eval(a, b);
+            }
+            return parsePrimary(true);
+        }
+
+        private Expr parseUnaryOperand() throws Unsupported {
+            if (peek().is("!")) return parseUnary();
+            Expr operand = parsePrimary(false);
+            if (isComparison(peek())) throw new Unsupported();
+            return operand;
+        }
+
+        private Expr parsePrimary(boolean allowCompare) throws Unsupported {
+            Token t = next();
+            if (t.is("(")) {
+                Expr inner = parseOr();
+                expect(")");
+                if (isComparison(peek())) throw new Unsupported();
+                return inner;
+            }
+            if (t.kind == Kind.IDENT && t.text.equals("true")) return (a, b) -> true;
+            if (t.kind == Kind.IDENT && t.text.equals("false")) return (a, b) -> false;
+            if (t.kind == Kind.REGEX) return parseRegexTest(t);
+            if (t.kind != Kind.IDENT) throw new Unsupported();
+
+            int slot = slotOf(t.text);
+            if (slot >= 0) return parseVariableTest(t.text, slot, allowCompare);
+            if (helpersAllowed && TEMPLATE_HELPERS.containsKey(t.text)) return parseHelperCall(t.text, allowCompare);
+            throw new Unsupported();
+        }
+
+        // Slot of a bound variable, or -1
+        private int slotOf(String name) {
+            switch (binding) {
+                case INPUT:        return name.equals("input") ? 0 : -1;
+                case HEADER_ARRAY: return name.equals("headers") ? 0 : -1;
+                default:           return name.equals("headers") ? 0 : name.equals("body") ? 1 : -1;
+            }
+        }
+
+        private boolean isStringSlot(String name) {
+            return binding != Binding.HEADER_ARRAY && slotOf(name) >= 0;
+        }
+
+        // /re/.test(v), v optionally lower- or upper-cased
+        private Expr parseRegexTest(Token regex) throws Unsupported {
+            if (!regex.flags.isEmpty() && !regex.flags.equals("i")) throw new Unsupported();
+            Pattern pattern = RegexTranslator.translate(regex.text, regex.flags.equals("i"));
+            if (pattern == null) throw new Unsupported();
+            expect(".");
+            expect("test");
+            expect("(");
+            Token variable = next();
+            if (variable.kind != Kind.IDENT || !isStringSlot(variable.text)) throw new Unsupported();
+            int slot = slotOf(variable.text);
+            Case mode = parseCaseMapping();
+            expect(")");
+            return (a, b) -> {
+                String s = string(slot == 0 ? a : b);
+                if (mode != Case.NONE) s = mapWhole(s, mode);
+                return pattern.matcher(s).find();
+            };
+        }
+
+        private Case parseCaseMapping() throws Unsupported {
+            if (peek().is(".") && (peek(1).is("toLowerCase") || peek(1).is("toUpperCase")) && peek(2).is("(")) {
+                pos++;
+                Case mode = next().is("toLowerCase") ? Case.LOWER : Case.UPPER;
+                expect("(");
+                expect(")");
+                return mode;
+            }
+            return Case.NONE;
+        }
+
+        private Expr parseVariableTest(String name, int slot, boolean allowCompare) throws Unsupported {
+            if (peek().is(".") && peek(1).is("length")) {
+                pos += 2;
+                if (!allowCompare) throw new Unsupported();
+                String op = parseComparison();
+                int right = parseInteger();
+                return (a, b) -> {
+                    Object value = slot == 0 ? a : b;
+                    int length;
+                    if (value instanceof String) length = ((String) value).length();
+                    else if (value instanceof String[]) length = ((String[]) value).length;
+                    else throw SCRIPT_ERROR;
+                    return compare(length, op, right);
+                };
+            }
+            if (!isStringSlot(name)) throw new Unsupported();
+            Case mode = parseCaseMapping();
+
+            if (isComparison(peek())) {
+                if (!allowCompare) throw new Unsupported();
+                String op = next().text;
+                if (!op.equals("===") && !op.equals("==") && !op.equals("!==") && !op.equals("!=")) throw new Unsupported();
+                String literal = expectString();
+                boolean equal = op.startsWith("=");
+                return (a, b) -> (apply(string(slot == 0 ? a : b), mode, StringOp.EQUALS, literal) == 1) == equal;
+            }
+
+            expect(".");
+            Token method = next();
+            StringOp op;
+            if (method.is("includes")) op = StringOp.INCLUDES;
+            else if (method.is("startsWith")) op = StringOp.STARTS_WITH;
+            else if (method.is("endsWith")) op = StringOp.ENDS_WITH;
+            else if (method.is("indexOf")) op = StringOp.INDEX_OF;
+            else throw new Unsupported();
+            expect("(");
+            String literal = expectString();
+            expect(")");
+
+            if (op == StringOp.INDEX_OF) {
+                if (!allowCompare) throw new Unsupported();
+                String cmp = parseComparison();
+                int right = parseInteger();
+                return (a, b) -> compare(apply(string(slot == 0 ? a : b), mode, StringOp.INDEX_OF, literal), cmp, right);
+            }
+            return (a, b) -> apply(string(slot == 0 ? a : b), mode, op, literal) == 1;
+        }
+
+        private Expr parseHelperCall(String name, boolean allowCompare) throws Unsupported {
+            calledHelpers.add(name);
+            expect("(");
+            if (name.equals("isMethodInList")) {
+                expect("[");
+                List<String> methods = new ArrayList<>();
+                methods.add(expectString().toUpperCase(Locale.ROOT));
+                while (peek().is(",")) {
+                    pos++;
+                    methods.add(expectString().toUpperCase(Locale.ROOT));
+                }
+                expect("]");
+                expect(")");
+                requireBinding(Binding.INPUT);
+                String[] upper = methods.toArray(new String[0]);
+                return (a, b) -> {
+                    String s = string(a);
+                    for (String m : upper) {
+                        if (apply(s, Case.UPPER, StringOp.EQUALS, m) == 1) return true;
+                    }
+                    return false;
+                };
+            }
+            String arg = expectString();
+            expect(")");
+            switch (name) {
+                case "isMethod": {
+                    requireBinding(Binding.INPUT);
+                    String upper = arg.toUpperCase(Locale.ROOT);
+                    return (a, b) -> apply(string(a), Case.UPPER, StringOp.EQUALS, upper) == 1;
+                }
+                case "containsPath":
+                case "containsText":
+                    return lowerTest(StringOp.INCLUDES, arg);
+                case "startsWithPath":
+                    return lowerTest(StringOp.STARTS_WITH, arg);
+                case "endsWithExtension":
+                    return lowerTest(StringOp.ENDS_WITH, arg);
+                case "isVersion":
+                    requireBinding(Binding.INPUT);
+                    return (a, b) -> apply(string(a), Case.NONE, StringOp.EQUALS, arg) == 1;
+                case "matchesRegex": {
+                    requireBinding(Binding.INPUT);
+                    Pattern pattern = RegexTranslator.translate(arg, true);
+                    if (pattern == null) throw new Unsupported();
+                    return (a, b) -> pattern.matcher(string(a)).find();
+                }
+                case "hasHeader": {
+                    requireBinding(Binding.HEADER_ARRAY);
+                    String prefix = arg.toLowerCase(Locale.ROOT) + ":";
+                    return (a, b) -> hasHeader(a, prefix);
+                }
+                case "getHeaderValue": {
+                    requireBinding(Binding.HEADER_ARRAY);
+                    if (!allowCompare) throw new Unsupported();
+                    Token op = next();
+                    boolean notNull;
+                    if (op.is("!==") || op.is("!=")) notNull = true;
+                    else if (op.is("===") || op.is("==")) notNull = false;
+                    else throw new Unsupported();
+                    expect("null");
+                    String prefix = arg.toLowerCase(Locale.ROOT) + ":";
+                    return (a, b) -> hasHeader(a, prefix) == notNull;
+                }
+                case "countHeaders": {
+                    requireBinding(Binding.HEADER_ARRAY);
+                    if (!allowCompare) throw new Unsupported();
+                    String op = parseComparison();
+                    int right = parseInteger();
+                    String prefix = arg.toLowerCase(Locale.ROOT) + ":";
+                    return (a, b) -> compare(countHeaders(a, prefix), op, right);
+                }
+                default:
+                    throw new Unsupported();
+            }
+        }
+
+        // input.toLowerCase().op(arg.toLowerCase())
+        private Expr lowerTest(StringOp op, String arg) throws Unsupported {
+            requireBinding(Binding.INPUT);
+            String lower = arg.toLowerCase(Locale.ROOT);
+            return (a, b) -> apply(string(a), Case.LOWER, op, lower) == 1;
+        }
+
+        private void requireBinding(Binding required) throws Unsupported {
+            if (binding != required) throw new Unsupported();
+        }
+
+        private static boolean isComparison(Token t) {
+            return t.kind == Kind.PUNCT && (t.text.equals("===") || t.text.equals("==") || t.text.equals("!==")
+                    || t.text.equals("!=") || t.text.equals(">") || t.text.equals(">=")
+                    || t.text.equals("<") || t.text.equals("<="));
+        }
+
+        private String parseComparison() throws Unsupported {
+            Token t = next();
+            if (!isComparison(t)) throw new Unsupported();
+            return t.text;
+        }
+
+        private int parseInteger() throws Unsupported {
+            boolean negative = false;
+            if (peek().is("-")) {
+                pos++;
+                negative = true;
+            }
+            Token t = next();
+            if (t.kind != Kind.NUMBER) throw new Unsupported();
+            int value = Integer.parseInt(t.text);
+            return negative ? -value : value;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+    // Regular expressions
+
+    /**
+     * Translates the JS regex subset whose java.util.regex form matches exactly the same strings:
+     * printable ASCII patterns, classes, groups, lookaheads and alternation, with quantifiers only on
+     * single characters (Java recurses on repeated groups and can overflow the stack on large bodies).
+     * Returns null for anything else.
+     */
+    static final class RegexTranslator {
+        // JS whitespace and line terminators, as \s in Rhino
+        private static final String JS_SPACE = "\\t\\n\\x0B\\f\\r \\xA0\\u1680\\u2000-\\u200A\\u2028\\u2029\\u202F\\u205F\\u3000\\uFEFF";
+        private static final String WORD = "A-Za-z0-9_";
+        private static final String WORD_BOUNDARY = "(?:(?<=[" + WORD + "])(?![" + WORD + "])|(?<![" + WORD + "])(?=[" + WORD + "]))";
+        private static final String NOT_WORD_BOUNDARY = "(?:(?<=[" + WORD + "])(?=[" + WORD + "])|(?<![" + WORD + "])(?![" + WORD + "]))";
+
+        private final String src;
+        private final boolean ignoreCase;
+        private final StringBuilder out = new StringBuilder();
+        private int i;
+
+        private RegexTranslator(String src, boolean ignoreCase) {
+            this.src = src;
+            this.ignoreCase = ignoreCase;
+        }
+
+        static Pattern translate(String src, boolean ignoreCase) {
+            for (int k = 0; k < src.length(); k++) {
+                char c = src.charAt(k);
+                if (c < 0x20 || c > 0x7E) return null;
+            }
+            RegexTranslator translator = new RegexTranslator(src, ignoreCase);
+            if (!translator.translateAll()) return null;
+            try {
+                return Pattern.compile(translator.out.toString(), ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+            } catch (PatternSyntaxException e) {
+                return null;
+            }
+        }
+
+        private boolean translateAll() {
+            // 0: nothing to repeat, 1: a single character, 2: a group
+            int atom = 0;
+            Deque<Boolean> groups = new ArrayDeque<>();
+            while (i < src.length()) {
+                char c = src.charAt(i++);
+                switch (c) {
+                    case '\\': {
+                        int kind = escape();
+                        if (kind < 0) return false;
+                        atom = kind;
+                        break;
+                    }
+                    case '[':
+                        if (!charClass()) return false;
+                        atom = 1;
+                        break;
+                    case '(':
+                        if (src.startsWith("?:", i)) {
+                            out.append("(?:");
+                            groups.push(false);
+                            i += 2;
+                        } else if (src.startsWith("?=", i) || src.startsWith("?!", i)) {
+                            out.append("(?").append(src.charAt(i + 1));
+                            groups.push(true);
+                            i += 2;
+                        } else if (i < src.length() && src.charAt(i) == '?') {
+                            return false;
+                        } else {
+                            out.append('(');
+                            groups.push(false);
+                        }
+                        atom = 0;
+                        break;
+                    case ')':
+                        if (groups.isEmpty()) return false;
+                        groups.pop();
+                        out.append(')');
+                        atom = 2;
+                        break;
+                    case '|':
+                        out.append('|');
+                        atom = 0;
+                        break;
+                    case '^':
+                        out.append('^');
+                        atom = 0;
+                        break;
+                    case '$':
+                        out.append("\\z");
+                        atom = 0;
+                        break;
+                    case '.':
+                        out.append("[^\\n\\r\\u2028\\u2029]");
+                        atom = 1;
+                        break;
+                    case '*':
+                    case '+':
+                    case '?':
+                        if (atom != 1) return false;
+                        out.append(c);
+                        if (!quantifierEnd()) return false;
+                        atom = 0;
+                        break;
+                    case '{': {
+                        int close = src.indexOf('}', i);
+                        if (atom != 1 || close < 0) return false;
+                        String range = src.substring(i, close);
+                        if (!range.matches("\\d{1,4}(,\\d{0,4})?")) return false;
+                        out.append('{').append(range).append('}');
+                        i = close + 1;
+                        if (!quantifierEnd()) return false;
+                        atom = 0;
+                        break;
+                    }
+                    case '}':
+                    case ']':
+                        return false;
+                    default:
+                        literal(c);
+                        atom = 1;
+                }
+            }
+            return groups.isEmpty();
+        }
+
+        // Optional lazy marker; JS has no possessive quantifiers and rejects a quantifier on a quantifier
+        private boolean quantifierEnd() {
+            if (i < src.length() && src.charAt(i) == '?') {
+                out.append('?');
+                i++;
+            }
+            if (i < src.length()) {
+                char next = src.charAt(i);
+                return next != '*' && next != '+' && next != '?' && next != '{';
+            }
+            return true;
+        }
+
+        private void literal(char c) {
+            if (Character.isLetterOrDigit(c)) {
+                out.append(c);
+            } else {
+                out.append('\\').append(c);
+            }
+        }
+
+        // Escape after a backslash outside a class; returns the atom kind or -1
+        private int escape() {
+            if (i >= src.length()) return -1;
+            char e = src.charAt(i++);
+            switch (e) {
+                case 'd': out.append("[0-9]"); return 1;
+                case 'D': out.append("[^0-9]"); return 1;
+                case 'w': out.append('[').append(WORD).append(']'); return 1;
+                case 'W': out.append("[^").append(WORD).append(']'); return 1;
+                case 's': out.append('[').append(JS_SPACE).append(']'); return 1;
+                case 'S': out.append("[^").append(JS_SPACE).append(']'); return 1;
+                case 'b': out.append(WORD_BOUNDARY); return 0;
+                case 'B': out.append(NOT_WORD_BOUNDARY); return 0;
+                default:
+                    return charEscape(e) ? 1 : -1;
+            }
+        }
+
+        // Escapes that stand for one character, in or outside a class
+        private boolean charEscape(char e) {
+            switch (e) {
+                case 'n': out.append("\\n"); return true;
+                case 'r': out.append("\\r"); return true;
+                case 't': out.append("\\t"); return true;
+                case 'f': out.append("\\f"); return true;
+                case 'v': out.append("\\x0B"); return true;
+                case '0':
+                    if (i < src.length() && Character.isDigit(src.charAt(i))) return false;
+                    out.append("\\x00");
+                    return true;
+                case 'x':
+                case 'u': {
+                    int len = e == 'x' ? 2 : 4;
+                    if (i + len > src.length()) return false;
+                    int code = 0;
+                    for (int k = 0; k < len; k++) {
+                        int digit = Character.digit(src.charAt(i + k), 16);
+                        if (digit < 0) return false;
+                        code = code * 16 + digit;
+                    }
+                    // Case-insensitive matching of non-ASCII characters differs between the engines
+                    if (ignoreCase && code > 0x7F) return false;
+                    out.append(String.format("\\x{%X}", code));
+                    i += len;
+                    return true;
+                }
+                default:
+                    if (Character.isLetterOrDigit(e)) return false;
+                    out.append('\\').append(e);
+                    return true;
+            }
+        }
+
+        private boolean charClass() {
+            out.append('[');
+            if (i < src.length() && src.charAt(i) == '^') {
+                out.append('^');
+                i++;
+            }
+            if (i < src.length() && src.charAt(i) == ']') return false;
+            while (i < src.length()) {
+                char c = src.charAt(i++);
+                if (c == ']') {
+                    out.append(']');
+                    return true;
+                }
+                int low;
+                if (c == '\\') {
+                    if (i >= src.length()) return false;
+                    char e = src.charAt(i++);
+                    if (e == 'd' || e == 'w' || e == 's') {
+                        out.append(e == 'd' ? "0-9" : e == 'w' ? WORD : JS_SPACE);
+                        // A class escape cannot start a range
+                        if (i + 1 < src.length() && src.charAt(i) == '-' && src.charAt(i + 1) != ']') return false;
+                        continue;
+                    }
+                    if (e == 'b') {
+                        out.append("\\x08");
+                        low = 8;
+                    } else {
+                        int before = out.length();
+                        if (!charEscape(e)) return false;
+                        low = classCharValue(before);
+                    }
+                } else {
+                    literal(c);
+                    low = c;
+                }
+                if (i + 1 < src.length() && src.charAt(i) == '-' && src.charAt(i + 1) != ']') {
+                    i++;
+                    char h = src.charAt(i++);
+                    int high;
+                    out.append('-');
+                    if (h == '\\') {
+                        if (i >= src.length()) return false;
+                        char e = src.charAt(i++);
+                        if (e == 'd' || e == 'w' || e == 's' || e == 'D' || e == 'W' || e == 'S') return false;
+                        if (e == 'b') {
+                            out.append("\\x08");
+                            high = 8;
+                        } else {
+                            int before = out.length();
+                            if (!charEscape(e)) return false;
+                            high = classCharValue(before);
+                        }
+                    } else {
+                        literal(h);
+                        high = h;
+                    }
+                    if (low < 0 || high < 0 || low > high) return false;
+                    // Ranges mixing letters with other characters fold case differently
+                    if (ignoreCase && !sameFoldingRange(low, high)) return false;
+                }
+            }
+            return false;
+        }
+
+        // The character written at out[from..] by charEscape or literal
+        private int classCharValue(int from) {
+            String written = out.substring(from);
+            if (written.length() == 2 && written.charAt(0) == '\\' && !Character.isLetterOrDigit(written.charAt(1))) {
+                return written.charAt(1);
+            }
+            switch (written) {
+                case "\\n": return '\n';
+                case "\\r": return '\r';
+                case "\\t": return '\t';
+                case "\\f": return '\f';
+                case "\\x0B": return 0x0B;
+                case "\\x00": return 0;
+                default:
+                    if (written.startsWith("\\x{")) return Integer.parseInt(written.substring(3, written.length() - 1), 16);
+                    return -1;
+            }
+        }
+
+        private static boolean sameFoldingRange(int low, int high) {
+            if (low >= 'a' && high <= 'z') return true;
+            if (low >= 'A' && high <= 'Z') return true;
+            return high < 'A' || (low > 'Z' && high < 'a') || low > 'z';
+        }
+    }
+}
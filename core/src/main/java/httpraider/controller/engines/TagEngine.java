@@ -1,10 +1,10 @@
 package httpraider.controller.engines;
 
-import httpraider.controller.tools.CustomTagManager;
 import httpraider.model.CustomTagModel;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -12,6 +12,9 @@ public final class TagEngine {
 
     public static final int CORRECT = 0;
 
+    // User-defined tags, registered by the extension (CustomTagManager); none when embedded
+    private static volatile Supplier<List<CustomTagModel>> customTags = Collections::emptyList;
+
     private static final Pattern START  = Pattern.compile("<start_([0-9]+)>");
     private static final Pattern END    = Pattern.compile("<end_([0-9]+)>");
     private static final Pattern SIMPLE = Pattern.compile("<(int|hex)_([0-9]+)>");
@@ -60,6 +63,10 @@ public final class TagEngine {
         return CORRECT;
     }
 
+    public static void setCustomTagSource(Supplier<List<CustomTagModel>> source) {
+        customTags = source != null ? source : Collections::emptyList;
+    }
+
     public static byte[] resolve(byte[] data) {
         String src = new String(data, StandardCharsets.ISO_8859_1);
         if (validate(data) != CORRECT) return data;
@@ -71,7 +78,7 @@ public final class TagEngine {
         String out      = replaceAll(noBlocks, values);
 
         // ── NEW: custom-tag replacement pass ───────────────────────────
-        for (CustomTagModel def : CustomTagManager.getInstance().getTags()) {
+        for (CustomTagModel def : customTags.get()) {
             String raw = def.getName().trim();
             // strip angle-brackets if the user included them
             if (raw.startsWith("<")  && raw.endsWith(">")) {
@@ -85,7 +92,13 @@ public final class TagEngine {
             while (m.find()) {
                 String id    = m.group(1);
                 String block = contents.getOrDefault(id, "");
-                String repl  = JSEngine.runTagEngine(def.getScript(), block);
+                String repl;
+                try {
+                    repl = JSEngine.runTagEngine(def.getScript(), block);
+                } catch (JSEngine.ScriptBudgetException e) {
+                    // Same as a failing script: the tag resolves to nothing
+                    repl = "";
+                }
                 m.appendReplacement(sb, Matcher.quoteReplacement(repl));
             }
             m.appendTail(sb);
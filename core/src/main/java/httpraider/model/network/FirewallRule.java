@@ -0,0 +1,231 @@
+package httpraider.model.network;
+
+import java.io.Serializable;
+
+public class FirewallRule implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    public enum Source {
+        METHOD("Method"),
+        URL("URL"),
+        VERSION("Version"),
+        HEADERS("Headers"),
+        BODY("Body"),
+        FULL_REQUEST("Full Request");
+        
+        private final String displayName;
+        
+        Source(String displayName) {
+            this.displayName = displayName;
+        }
+        
+        public String getDisplayName() {
+            return displayName;
+        }
+        
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+    
+    private Source source;
+    private String jsCode;
+    private boolean closeConnection;
+    private boolean enabled;
+    
+    public FirewallRule() {
+        this.source = Source.FULL_REQUEST;
+        this.jsCode = "";  // Will be populated by UI with source-specific template
+        this.closeConnection = false;
+        this.enabled = true;
+    }
+    
+    public FirewallRule(Source source, String jsCode, boolean closeConnection) {
+        this.source = source;
+        this.jsCode = jsCode;
+        this.closeConnection = closeConnection;
+        this.enabled = true;
+    }
+    
+    public Source getSource() {
+        return source;
+    }
+    
+    public void setSource(Source source) {
+        this.source = source;
+    }
+    
+    public String getJsCode() {
+        return jsCode;
+    }
+    
+    public void setJsCode(String jsCode) {
+        this.jsCode = jsCode;
+    }
+    
+    public boolean isCloseConnection() {
+        return closeConnection;
+    }
+    
+    public void setCloseConnection(boolean closeConnection) {
+        this.closeConnection = closeConnection;
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * The starting code of a new rule for the given source: a few helper functions over the rule input.
+     * NativeRules runs rules built from these helpers in Java, so keep the two in sync when changing them.
+     */
+    public static String defaultJsCode(Source source) {
+        switch (source) {
+            case METHOD:
+                return """
+                    // Input variable: 'input' contains the HTTP method as a string (e.g., "GET", "POST", "TRACE")
+                    // Return: true to block the request, false to allow
+                    
+                    function isMethod(method) {
+                        return input.toUpperCase() === method.toUpperCase();
+                    }
+                    
+                    function isMethodInList(methodList) {
+                        for (var i = 0; i < methodList.length; i++) {
+                            if (input.toUpperCase() === methodList[i].toUpperCase()) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                    
+                    // Your code here
+                    return false;
+                    """;
+            
+            case URL:
+                return """
+                    // Input variable: 'input' contains the URL path as a string (e.g., "/api/users", "/admin/config.php")
+                    // Return: true to block the request, false to allow
+                    
+                    function containsPath(path) {
+                        return input.toLowerCase().includes(path.toLowerCase());
+                    }
+                    
+                    function startsWithPath(path) {
+                        return input.toLowerCase().startsWith(path.toLowerCase());
+                    }
+                    
+                    function endsWithExtension(extension) {
+                        return input.toLowerCase().endsWith(extension.toLowerCase());
+                    }
+                    
+                    // Your code here
+                    return false;
+                    """;
+            
+            case VERSION:
+                return """
+                    // Input variable: 'input' contains the HTTP version as a string (e.g., "HTTP/1.1", "HTTP/2")
+                    // Return: true to block the request, false to allow
+                    
+                    function isVersion(version) {
+                        return input === version;
+                    }
+                    
+                    // Your code here
+                    return false;
+                    """;
+            
+            case HEADERS:
+                return """
+                    // Input variable: 'headers' contains an array of header strings (without the request line)
+                    // Each header is a string like "Host: example.com" or "User-Agent: Mozilla/5.0"
+                    // Return: true to block the request, false to allow
+                    
+                    function getHeaderValue(headerName) {
+                        var searchName = headerName.toLowerCase() + ':';
+                        for (var i = 0; i < headers.length; i++) {
+                            var lowerHeader = headers[i].toLowerCase();
+                            if (lowerHeader.startsWith(searchName)) {
+                                return headers[i].substring(headerName.length + 1).trim();
+                            }
+                        }
+                        return null;
+                    }
+                    
+                    function hasHeader(headerName) {
+                        return getHeaderValue(headerName) !== null;
+                    }
+                    
+                    function countHeaders(headerName) {
+                        var count = 0;
+                        var searchName = headerName.toLowerCase() + ':';
+                        for (var i = 0; i < headers.length; i++) {
+                            if (headers[i].toLowerCase().startsWith(searchName)) {
+                                count++;
+                            }
+                        }
+                        return count;
+                    }
+                    
+                    // Your code here
+                    return false;
+                    """;
+            
+            case BODY:
+                return """
+                    // Input variable: 'input' contains the request body as a string
+                    // Return: true to block the request, false to allow
+                    
+                    function containsText(text) {
+                        return input.toLowerCase().includes(text.toLowerCase());
+                    }
+                    
+                    function matchesRegex(pattern) {
+                        try {
+                            var regex = new RegExp(pattern, 'i');
+                            return regex.test(input);
+                        } catch (e) {
+                            return false;
+                        }
+                    }
+                    
+                    // Your code here
+                    return false;
+                    """;
+            
+            case FULL_REQUEST:
+            default:
+                return """
+                    // Input variable: 'input' contains the full HTTP request as a string
+                    // Return: true to block the request, false to allow
+                    
+                    function getRequestLine() {
+                        var lines = input.split('\\n');
+                        return lines.length > 0 ? lines[0].trim() : '';
+                    }
+                    
+                    function getMethod() {
+                        var requestLine = getRequestLine();
+                        var parts = requestLine.split(' ');
+                        return parts.length > 0 ? parts[0] : '';
+                    }
+                    
+                    function getUrl() {
+                        var requestLine = getRequestLine();
+                        var parts = requestLine.split(' ');
+                        return parts.length > 1 ? parts[1] : '';
+                    }
+                    
+                    // Your code here
+                    return false;
+                    """;
+        }
+    }
+}
@@ -10,6 +10,10 @@ public class HttpParserModel implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    // Methods that mark the start of a request when resynchronizing after an incomplete body
+    public static final List<String> DEFAULT_REQUEST_METHODS =
+            List.of("GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH", "CONNECT", "TRACE");
+
     // --- Header line ending patterns ---
     private List<String> headerLineEndings;
 
@@ -36,6 +40,8 @@ public class HttpParserModel implements Serializable {
     private String urlDecodeTo;
     private ForcedHttpVersion forcedHttpVersion;
     private String customHttpVersion;
+    // Extra methods recognised as request starts, on top of DEFAULT_REQUEST_METHODS
+    private List<String> customRequestMethods;
 
     // --- JS code for each step ---
     private boolean useHeaderLinesJs;
@@ -86,6 +92,7 @@ public class HttpParserModel implements Serializable {
 
         forcedHttpVersion = ForcedHttpVersion.AUTO;
         customHttpVersion = "";
+        customRequestMethods = new ArrayList<>();
 
         useHeaderLinesJs = false;
         headerLinesScript = getDefaultHeaderLinesScript();
@@ -153,6 +160,11 @@ public class HttpParserModel implements Serializable {
     public String getCustomHttpVersion() { return customHttpVersion; }
     public void setCustomHttpVersion(String customHttpVersion) { this.customHttpVersion = customHttpVersion; }
 
+    public List<String> getCustomRequestMethods() { return customRequestMethods; }
+    public void setCustomRequestMethods(List<String> customRequestMethods) {
+        this.customRequestMethods = customRequestMethods != null ? new ArrayList<>(customRequestMethods) : new ArrayList<>();
+    }
+
     public boolean isUseHeaderLinesJs() { return useHeaderLinesJs; }
     public void setUseHeaderLinesJs(boolean useHeaderLinesJs) { this.useHeaderLinesJs = useHeaderLinesJs; }
 
@@ -0,0 +1,248 @@
+package httpraider.model.network;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.*;
+
+public class NetworkModel implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, ProxyModel> proxies;
+    private final Set<ConnectionModel> connections;
+
+    // --- Topology index, derived from connections (rebuilt lazily after deserialization) ---
+    // Undirected neighbours of every proxy, in connection order
+    private transient Map<String, Set<String>> adjacency;
+    // BFS from the client: hops to the client and the next proxy towards it
+    private transient Map<String, Integer> distances;
+    private transient Map<String, String> parents;
+    private transient String routingClientId;
+
+    public NetworkModel() {
+        proxies = new LinkedHashMap<>();
+        connections = new LinkedHashSet<>();
+        ProxyModel client = new ProxyModel(ProxyModel.CLIENT_ID, "Client", "");
+        client.setClient(true);
+        proxies.put(ProxyModel.CLIENT_ID, client);
+    }
+
+    public Collection<ProxyModel> getProxies() {
+        return proxies.values();
+    }
+
+    public ProxyModel getProxy(String id) {
+        return proxies.get(id);
+    }
+
+    public synchronized void addProxy(ProxyModel proxy) {
+        proxies.put(proxy.getId(), proxy);
+        if (adjacency != null) {
+            adjacency.putIfAbsent(proxy.getId(), new LinkedHashSet<>());
+        }
+        // A new client changes where every distance is measured from
+        if (proxy.isClient()) invalidateRouting();
+    }
+
+    public synchronized void removeProxy(String id) {
+        proxies.remove(id);
+        connections.removeIf(c -> c.hasProxy(id));
+        if (adjacency != null) {
+            Set<String> neighbours = adjacency.remove(id);
+            if (neighbours != null) {
+                for (String neighbour : neighbours) {
+                    Set<String> back = adjacency.get(neighbour);
+                    if (back != null) back.remove(id);
+                }
+            }
+        }
+        invalidateRouting();
+    }
+
+    public synchronized void addConnection(String fromId, String toId) {
+        if (!connections.add(new ConnectionModel(fromId, toId)) || adjacency == null) return;
+        adjacency.computeIfAbsent(fromId, k -> new LinkedHashSet<>()).add(toId);
+        adjacency.computeIfAbsent(toId, k -> new LinkedHashSet<>()).add(fromId);
+        // A new edge can only shorten distances: relax from whichever end is closer
+        if (distances != null) {
+            relax(fromId, toId);
+            relax(toId, fromId);
+        }
+    }
+
+    public synchronized void removeConnection(String fromId, String toId) {
+        if (!connections.remove(new ConnectionModel(fromId, toId)) || adjacency == null) return;
+        // The reverse connection keeps the proxies adjacent
+        if (connections.contains(new ConnectionModel(toId, fromId))) return;
+        unlink(fromId, toId);
+        // Removing an edge that is not in the BFS tree leaves every distance unchanged
+        if (distances != null && (toId.equals(parents.get(fromId)) || fromId.equals(parents.get(toId)))) {
+            invalidateRouting();
+        }
+    }
+
+    public synchronized void removeAllConnections(String proxyId) {
+        connections.removeIf(c -> c.hasProxy(proxyId));
+        adjacency = null;
+        invalidateRouting();
+    }
+
+    public synchronized void clearConnections() {
+        connections.clear();
+        adjacency = null;
+        invalidateRouting();
+    }
+
+    public Set<ConnectionModel> getConnections() {
+        return Collections.unmodifiableSet(connections);
+    }
+
+    // --- Topology queries ---
+
+    // Ids of the proxies connected to proxyId in either direction, O(degree)
+    public synchronized Set<String> getNeighbourIds(String proxyId) {
+        Set<String> neighbours = adjacency().get(proxyId);
+        return neighbours == null ? Collections.emptySet() : Collections.unmodifiableSet(new LinkedHashSet<>(neighbours));
+    }
+
+    // Proxies connected to proxyId in either direction, O(degree)
+    public synchronized List<ProxyModel> getDirectConnections(String proxyId) {
+        Set<String> neighbours = adjacency().get(proxyId);
+        if (neighbours == null) return new ArrayList<>();
+        List<ProxyModel> result = new ArrayList<>(neighbours.size());
+        for (String id : neighbours) {
+            ProxyModel p = proxies.get(id);
+            if (p != null) result.add(p);
+        }
+        return result;
+    }
+
+    public synchronized String getClientId() {
+        routing();
+        return routingClientId;
+    }
+
+    // Hops between the proxy and the client (0 for the client), -1 if it cannot reach the client
+    public synchronized int getDistanceToClient(String proxyId) {
+        Integer distance = routing().get(proxyId);
+        return distance == null ? -1 : distance;
+    }
+
+    // Next proxy on a shortest path towards the client, null for the client or unreachable proxies
+    public synchronized String getParentTowardsClient(String proxyId) {
+        routing();
+        return parents.get(proxyId);
+    }
+
+    /**
+     * Proxies strictly between the client and proxyId on a shortest path, ordered from the client;
+     * null when proxyId is the client or cannot reach it. O(path length).
+     */
+    public synchronized List<ProxyModel> getPathToClient(String proxyId) {
+        if (proxyId == null) return null;
+        Map<String, Integer> routing = routing();
+        if (routingClientId == null || proxyId.equals(routingClientId) || !routing.containsKey(proxyId)) return null;
+        List<ProxyModel> path = new ArrayList<>();
+        String curr = parents.get(proxyId);
+        while (curr != null && !curr.equals(routingClientId)) {
+            path.add(proxies.get(curr));
+            curr = parents.get(curr);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    // True when viaId lies strictly between targetId and the client on the shortest path
+    public synchronized boolean isOnPathToClient(String targetId, String viaId) {
+        if (targetId == null || viaId == null) return false;
+        Map<String, Integer> routing = routing();
+        if (routingClientId == null || targetId.equals(routingClientId) || !routing.containsKey(targetId)) return false;
+        String curr = parents.get(targetId);
+        while (curr != null && !curr.equals(routingClientId)) {
+            if (curr.equals(viaId)) return true;
+            curr = parents.get(curr);
+        }
+        return false;
+    }
+
+    private Map<String, Set<String>> adjacency() {
+        if (adjacency == null) {
+            adjacency = new HashMap<>();
+            for (String id : proxies.keySet()) {
+                adjacency.put(id, new LinkedHashSet<>());
+            }
+            for (ConnectionModel c : connections) {
+                adjacency.computeIfAbsent(c.getFromId(), k -> new LinkedHashSet<>()).add(c.getToId());
+                adjacency.computeIfAbsent(c.getToId(), k -> new LinkedHashSet<>()).add(c.getFromId());
+            }
+        }
+        return adjacency;
+    }
+
+    private void unlink(String a, String b) {
+        Set<String> fromA = adjacency.get(a);
+        if (fromA != null) fromA.remove(b);
+        Set<String> fromB = adjacency.get(b);
+        if (fromB != null) fromB.remove(a);
+    }
+
+    private void invalidateRouting() {
+        distances = null;
+        parents = null;
+        routingClientId = null;
+    }
+
+    // Distance table, recomputed with one BFS from the client when a change invalidated it
+    private Map<String, Integer> routing() {
+        if (distances != null && routingClientId != null) {
+            ProxyModel client = proxies.get(routingClientId);
+            if (client == null || !client.isClient()) invalidateRouting();
+        }
+        if (distances == null) {
+            distances = new HashMap<>();
+            parents = new HashMap<>();
+            routingClientId = null;
+            for (ProxyModel p : proxies.values()) {
+                if (p.isClient()) {
+                    routingClientId = p.getId();
+                    break;
+                }
+            }
+            if (routingClientId != null) {
+                distances.put(routingClientId, 0);
+                propagate(routingClientId);
+            }
+        }
+        return distances;
+    }
+
+    // Makes via -> target part of the tree when that shortens target's distance, then propagates
+    private void relax(String via, String target) {
+        Integer viaDistance = distances.get(via);
+        if (viaDistance == null) return;
+        Integer targetDistance = distances.get(target);
+        if (targetDistance != null && targetDistance <= viaDistance + 1) return;
+        distances.put(target, viaDistance + 1);
+        parents.put(target, via);
+        propagate(target);
+    }
+
+    private void propagate(String start) {
+        Map<String, Set<String>> adj = adjacency();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            int next = distances.get(current) + 1;
+            for (String neighbour : adj.getOrDefault(current, Collections.emptySet())) {
+                Integer known = distances.get(neighbour);
+                if (known == null || known > next) {
+                    distances.put(neighbour, next);
+                    parents.put(neighbour, current);
+                    queue.add(neighbour);
+                }
+            }
+        }
+    }
+}
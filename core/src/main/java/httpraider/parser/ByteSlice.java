@@ -0,0 +1,67 @@
+package httpraider.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Read-only (array, offset, length) view over a backing byte array.
+ * The parser works on slices of the original payload and only copies
+ * bytes out when a request is finally emitted.
+ */
+public final class ByteSlice {
+
+    public static final ByteSlice EMPTY = new ByteSlice(new byte[0], 0, 0);
+
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+
+    public ByteSlice(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > array.length) {
+            throw new IndexOutOfBoundsException("offset=" + offset + " length=" + length + " size=" + array.length);
+        }
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static ByteSlice of(byte[] array) {
+        return array.length == 0 ? EMPTY : new ByteSlice(array, 0, array.length);
+    }
+
+    public static ByteSlice range(byte[] array, int from, int to) {
+        return new ByteSlice(array, from, to - from);
+    }
+
+    public byte[] array() { return array; }
+    public int offset() { return offset; }
+    public int length() { return length; }
+    public int end() { return offset + length; }
+    public boolean isEmpty() { return length == 0; }
+
+    public byte get(int index) {
+        return array[offset + index];
+    }
+
+    public ByteSlice slice(int from, int to) {
+        return range(array, offset + from, offset + to);
+    }
+
+    public void copyTo(byte[] dst, int dstPos) {
+        System.arraycopy(array, offset, dst, dstPos, length);
+    }
+
+    public byte[] toByteArray() {
+        if (offset == 0 && length == array.length) return array.clone();
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    public String toLatin1String() {
+        return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public String toString() {
+        return toLatin1String();
+    }
+}
@@ -0,0 +1,248 @@
+package httpraider.parser;
+
+import httpraider.model.network.NetworkModel;
+import httpraider.model.network.ProxyModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates many payloads through the same modeled chain: each payload is routed from the client
+ * proxy exactly as {@link ParserChainRunner#parseFinalGroupsForPanel} does, and the groups shown for
+ * every target proxy are collected. Payloads run in parallel on a fixed pool that lives for the
+ * duration of the batch; hop parses go through the session {@link ParseCache}, so payloads sharing
+ * a prefix or reaching a hop with the same bytes are only parsed once. Each payload is also checked
+ * with a {@link DesyncDetector}, so the batch doubles as a desync oracle.
+ */
+public final class ChainBatchRunner {
+
+    public interface Listener {
+        // Called from a pool thread as soon as a payload has been simulated (by stream(), in index order)
+        void onPayloadDone(PayloadResult result, int completed, int total);
+    }
+
+    // Reads one payload of a streamed batch, on the pool thread that simulates it
+    public interface PayloadLoader {
+        byte[] load(int index) throws IOException;
+    }
+
+    // Payloads per thread that stream() lets run ahead of the next one to report
+    private static final int STREAM_WINDOW_PER_THREAD = 4;
+
+    /** Groups every target proxy shows for one payload, in target order. */
+    public static final class PayloadResult {
+        private final int index;
+        private final byte[] payload;
+        private final Map<String, List<List<ParsedRequest>>> groups;
+        private final DesyncDetector.Report desync;
+        private final String error;
+
+        PayloadResult(int index, byte[] payload, Map<String, List<List<ParsedRequest>>> groups,
+                      DesyncDetector.Report desync, String error) {
+            this.index = index;
+            this.payload = payload;
+            this.groups = groups;
+            this.desync = desync;
+            this.error = error;
+        }
+
+        public int getIndex() { return index; }
+        public byte[] getPayload() { return payload; }
+        public Map<String, List<List<ParsedRequest>>> getGroups() { return groups; }
+        public List<List<ParsedRequest>> getGroups(String proxyId) {
+            return groups.getOrDefault(proxyId, Collections.emptyList());
+        }
+        // Where a hop frames what its upstream forwarded differently; null when the simulation failed
+        public DesyncDetector.Report getDesync() { return desync; }
+        // Message of the exception that aborted this payload's simulation, null when it completed
+        public String getError() { return error; }
+    }
+
+    private ChainBatchRunner() {
+    }
+
+    public static int defaultThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static List<PayloadResult> run(NetworkModel network, ParseCache cache, List<byte[]> payloads,
+                                          Collection<ProxyModel> targets, Listener listener)
+            throws InterruptedException {
+        return run(network, cache, payloads, targets, defaultThreads(), listener);
+    }
+
+    /**
+     * Runs every payload through the chain and returns one result per payload, in input order.
+     * A failing payload (e.g. a throwing rule script) is reported in its result and does not stop the batch.
+     * Interrupting the calling thread cancels the payloads that have not started yet.
+     */
+    public static List<PayloadResult> run(NetworkModel network, ParseCache cache, List<byte[]> payloads,
+                                          Collection<ProxyModel> targets, int threads, Listener listener)
+            throws InterruptedException {
+        List<ProxyModel> targetList = new ArrayList<>(targets);
+        int total = payloads.size();
+        List<PayloadResult> results = new ArrayList<>(total);
+        if (total == 0) return results;
+
+        DesyncDetector detector = new DesyncDetector(network, cache);
+        AtomicInteger completed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, total)), r -> {
+            Thread thread = new Thread(r, "chain-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<PayloadResult>> futures = new ArrayList<>(total);
+            for (int i = 0; i < total; i++) {
+                int index = i;
+                byte[] payload = payloads.get(i);
+                futures.add(pool.submit(() -> {
+                    PayloadResult result = simulate(network, cache, detector, index, payload, targetList);
+                    if (listener != null) {
+                        listener.onPayloadDone(result, completed.incrementAndGet(), total);
+                    }
+                    return result;
+                }));
+            }
+            for (Future<PayloadResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    // simulate() catches runtime failures, so only errors get here
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Like {@link #run}, for corpora that do not fit in memory: each payload is loaded on the pool thread
+     * that simulates it and every result is handed to the listener in index order, then dropped.
+     * Only a few payloads per thread are loaded or waiting for an earlier one at any time.
+     * A payload that cannot be read is reported as a failed result. An exception thrown by the
+     * listener stops the batch and is rethrown here.
+     */
+    public static void stream(NetworkModel network, ParseCache cache, int total, PayloadLoader loader,
+                              Collection<ProxyModel> targets, int threads, Listener listener)
+            throws InterruptedException {
+        if (total == 0) return;
+        List<ProxyModel> targetList = new ArrayList<>(targets);
+        DesyncDetector detector = new DesyncDetector(network, cache);
+        int poolSize = Math.max(1, Math.min(threads, total));
+        InOrder inOrder = new InOrder(listener, total, new Semaphore(poolSize * STREAM_WINDOW_PER_THREAD));
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread thread = new Thread(r, "chain-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int i = 0; i < total && !inOrder.failed(); i++) {
+                inOrder.window.acquire();
+                int index = i;
+                pool.execute(() -> {
+                    try {
+                        byte[] payload;
+                        try {
+                            payload = loader.load(index);
+                        } catch (IOException e) {
+                            inOrder.done(new PayloadResult(index, new byte[0], Collections.emptyMap(), null,
+                                    "Cannot read payload: " + e.getMessage()));
+                            return;
+                        }
+                        inOrder.done(simulate(network, cache, detector, index, payload, targetList));
+                    } catch (RuntimeException | Error e) {
+                        inOrder.fail(e);
+                    }
+                });
+            }
+            inOrder.await();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // Hands results to the listener in index order; results that finish early wait in pending
+    private static final class InOrder {
+        private final Listener listener;
+        private final int total;
+        // One permit per payload loaded and not yet reported
+        final Semaphore window;
+        private final Map<Integer, PayloadResult> pending = new HashMap<>();
+        private int next;
+        private Throwable failure;
+
+        InOrder(Listener listener, int total, Semaphore window) {
+            this.listener = listener;
+            this.total = total;
+            this.window = window;
+        }
+
+        synchronized void done(PayloadResult result) {
+            if (failure != null) return;
+            pending.put(result.getIndex(), result);
+            try {
+                PayloadResult ready;
+                while ((ready = pending.remove(next)) != null) {
+                    next++;
+                    if (listener != null) listener.onPayloadDone(ready, next, total);
+                    window.release();
+                }
+            } catch (RuntimeException | Error e) {
+                fail(e);
+            }
+            notifyAll();
+        }
+
+        synchronized void fail(Throwable e) {
+            if (failure == null) failure = e;
+            pending.clear();
+            // Unblocks the submitting thread
+            window.release(total);
+            notifyAll();
+        }
+
+        synchronized boolean failed() {
+            return failure != null;
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (next < total && failure == null) wait();
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+        }
+    }
+
+    private static PayloadResult simulate(NetworkModel network, ParseCache cache, DesyncDetector detector,
+                                          int index, byte[] payload, List<ProxyModel> targets) {
+        Map<String, List<List<ParsedRequest>>> groups = new LinkedHashMap<>();
+        try {
+            // The pool already runs one payload per core, so the BFS waves run on this thread
+            Map<String, List<ParserChainRunner.Origin>> origins = new HashMap<>();
+            Map<String, List<byte[]>> proxyPayloads = ParserChainRunner.routeThroughChain(network, cache, payload, false, origins);
+            for (ProxyModel target : targets) {
+                groups.put(target.getId(), ParserChainRunner.finalGroupsForProxy(target, payload, proxyPayloads, cache));
+            }
+            // The detector compares the hops on the same routing
+            return new PayloadResult(index, payload, groups, detector.detect(payload, proxyPayloads, origins, false, null), null);
+        } catch (RuntimeException e) {
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            return new PayloadResult(index, payload, groups, null, message);
+        }
+    }
+}
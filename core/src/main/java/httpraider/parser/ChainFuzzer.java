@@ -0,0 +1,501 @@
+package httpraider.parser;
+
+import httpraider.model.network.NetworkModel;
+import httpraider.model.network.ProxyModel;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Network-free, coverage-guided fuzzer over the modeled proxies. Seeds are mutated at the byte level
+ * (bit flips, interesting bytes, HTTP tokens, line-ending swaps, range copies, splices) and every input
+ * is routed through the chain and framed by each hop of a {@link DesyncDetector}. Coverage is the sequence of parser stages each hop
+ * ran and whether each let parsing continue, plus the status of every entry and the kind of every
+ * divergence; inputs reaching new coverage join the corpus. Inputs that make connected hops disagree
+ * are kept once per divergence signature and optionally written to an output directory.
+ */
+public final class ChainFuzzer {
+
+    public interface Listener {
+        // Called from a worker thread the first time a divergence signature is seen
+        void onFinding(Finding finding);
+    }
+
+    public static final class Finding {
+        private final String signature;
+        private final byte[] input;
+        private final DesyncDetector.Divergence divergence;
+        private final long execution;
+        private final Path file;
+
+        Finding(String signature, byte[] input, DesyncDetector.Divergence divergence, long execution, Path file) {
+            this.signature = signature;
+            this.input = input;
+            this.divergence = divergence;
+            this.execution = execution;
+            this.file = file;
+        }
+
+        public String getSignature() { return signature; }
+        public byte[] getInput() { return input; }
+        public DesyncDetector.Divergence getDivergence() { return divergence; }
+        // Number of executions when the input was found
+        public long getExecution() { return execution; }
+        // Where the input was saved, null without an output directory or when writing failed
+        public Path getFile() { return file; }
+
+        @Override
+        public String toString() {
+            return divergence.toString();
+        }
+    }
+
+    public static final class Stats {
+        private final long executions;
+        private final long elapsedMillis;
+        private final int corpusSize;
+        private final int findings;
+        private final int coverage;
+        private final long failures;
+
+        Stats(long executions, long elapsedMillis, int corpusSize, int findings, int coverage, long failures) {
+            this.executions = executions;
+            this.elapsedMillis = elapsedMillis;
+            this.corpusSize = corpusSize;
+            this.findings = findings;
+            this.coverage = coverage;
+            this.failures = failures;
+        }
+
+        public long getExecutions() { return executions; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public int getCorpusSize() { return corpusSize; }
+        public int getFindings() { return findings; }
+        // Coverage map slots hit at least once
+        public int getCoverage() { return coverage; }
+        // Inputs whose simulation threw (e.g. a failing rule script)
+        public long getFailures() { return failures; }
+
+        public long getExecutionsPerSecond() {
+            return elapsedMillis > 0 ? executions * 1000 / elapsedMillis : executions;
+        }
+
+        @Override
+        public String toString() {
+            return executions + " execs (" + getExecutionsPerSecond() + "/s), corpus " + corpusSize
+                    + ", coverage " + coverage + ", findings " + findings;
+        }
+    }
+
+    private static final int MAP_SIZE = 1 << 16;
+    private static final int DEFAULT_MAX_INPUT_LENGTH = 4096;
+    // Distinct slots for entry statuses and divergences, away from the stage transitions
+    private static final int STATUS_SALT = 0x5bd1e995;
+    private static final int DIVERGENCE_SALT = 0x27d4eb2f;
+
+    private static final byte[] INTERESTING_BYTES = {
+            '\r', '\n', ' ', '\t', ':', ';', ',', '0', '9', 'a', 'F', '-', 0x00, 0x0b, 0x0c, 0x7f, (byte) 0x80, (byte) 0xff
+    };
+
+    // Tokens behind the request mutations in proxyFinder.mutations, usable without sending traffic
+    private static final String[] DICTIONARY = {
+            "\r\n", "\n", "\r", "\r\n\r\n", "\n\n", " ", "\t", ":", "\u0000",
+            "Content-Length: ", "Content-Length: 0\r\n", "Content-Length: 5\r\n", "Content-Length : 5\r\n",
+            "Content-Length:\r\n 5\r\n", "Content-Length: 05\r\n", "Content-Length: -1\r\n", "Content-Length: 5, 5\r\n",
+            "Transfer-Encoding: chunked\r\n", "Transfer-Encoding : chunked\r\n", "Transfer-Encoding:\tchunked\r\n",
+            "Transfer-Encoding: xchunked\r\n", "Transfer-Encoding: chunked, identity\r\n", "Transfer-Encoding:\r\n chunked\r\n",
+            "chunked", "identity", "0\r\n\r\n", "5\r\nhello\r\n", "5;ext=1\r\n", "0x5\r\n", "ffffffff\r\n",
+            "GET ", "POST ", "TRACE ", "G\u0000ET ", " HTTP/1.1", " HTTP/1.0", " HTTP/1.1.1", " HTTP/9.9",
+            "Host: ", "Connection: close\r\n", "Upgrade: websocket\r\n", "Expect: 100-continue\r\n",
+            "%0d%0a", "<script>", "X\u0000Y: 1\r\n", "X Y: 1\r\n", "\u0001",
+    };
+
+    private final DesyncDetector detector;
+    private final List<ProxyModel> hops;
+    private final ParserPlan[] plans;
+    private final byte[][] dictionary;
+    private final CopyOnWriteArrayList<byte[]> corpus = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Finding> findings = new ConcurrentHashMap<>();
+    private final List<Finding> findingOrder = Collections.synchronizedList(new ArrayList<>());
+    // Hit-count buckets seen so far, per coverage slot
+    private final byte[] seen = new byte[MAP_SIZE];
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private Path outputDirectory;
+    private Listener listener;
+    private int maxInputLength = DEFAULT_MAX_INPUT_LENGTH;
+    private long seed = System.nanoTime();
+    private volatile boolean stopped;
+    private volatile long startNanos;
+
+    public ChainFuzzer(NetworkModel network, List<byte[]> seeds) {
+        this(network, seeds, Collections.emptyList());
+    }
+
+    // extraTokens are added to the mutation dictionary (raw strings, ISO-8859-1)
+    public ChainFuzzer(NetworkModel network, List<byte[]> seeds, List<String> extraTokens) {
+        if (seeds.isEmpty()) {
+            throw new IllegalArgumentException("At least one seed input is required");
+        }
+        this.detector = new DesyncDetector(network, null);
+        this.hops = detector.getHops();
+        this.plans = new ParserPlan[hops.size()];
+        for (int i = 0; i < hops.size(); i++) {
+            plans[i] = ParserPlan.forModel(hops.get(i).getParserSettings());
+        }
+        List<byte[]> tokens = new ArrayList<>();
+        for (String token : DICTIONARY) tokens.add(token.getBytes(StandardCharsets.ISO_8859_1));
+        for (String token : extraTokens) {
+            if (!token.isEmpty()) tokens.add(token.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        this.dictionary = tokens.toArray(new byte[0][]);
+        for (byte[] input : seeds) {
+            corpus.add(input.clone());
+        }
+    }
+
+    public void setOutputDirectory(Path outputDirectory) { this.outputDirectory = outputDirectory; }
+    public void setListener(Listener listener) { this.listener = listener; }
+    public void setMaxInputLength(int maxInputLength) { this.maxInputLength = Math.max(16, maxInputLength); }
+    public void setSeed(long seed) { this.seed = seed; }
+
+    public List<ProxyModel> getHops() { return hops; }
+    public List<byte[]> getCorpus() { return Collections.unmodifiableList(corpus); }
+
+    public List<Finding> getFindings() {
+        synchronized (findingOrder) {
+            return new ArrayList<>(findingOrder);
+        }
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Fuzzes on the given number of threads until maxExecutions inputs were run or maxMillis elapsed
+     * (either may be 0 for no limit), or until {@link #stop()}. Returns the final statistics.
+     */
+    public Stats run(int threads, long maxExecutions, long maxMillis) throws InterruptedException {
+        if (hops.isEmpty()) {
+            // No pair of connected proxies to compare
+            return getStats();
+        }
+        stopped = false;
+        startNanos = System.nanoTime();
+        long deadline = maxMillis > 0 ? startNanos + maxMillis * 1_000_000L : Long.MAX_VALUE;
+        long executionLimit = maxExecutions > 0 ? executions.get() + maxExecutions : Long.MAX_VALUE;
+
+        int workers = Math.max(1, threads);
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "chain-fuzzer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                Worker worker = new Worker(new SplittableRandom(seed + i * 0x9E3779B97F4A7C15L));
+                futures.add(pool.submit(() -> worker.loop(executionLimit, deadline)));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            stopped = true;
+            pool.shutdownNow();
+        }
+        return getStats();
+    }
+
+    public Stats getStats() {
+        int coverage = 0;
+        synchronized (seen) {
+            for (byte b : seen) {
+                if (b != 0) coverage++;
+            }
+        }
+        long elapsed = startNanos == 0 ? 0 : (System.nanoTime() - startNanos) / 1_000_000;
+        return new Stats(executions.get(), elapsed, corpus.size(), findings.size(), coverage, failures.get());
+    }
+
+    private void recordFinding(byte[] input, DesyncDetector.Divergence divergence, long execution) {
+        String signature = divergence.getKind() + " " + divergence.getUpstreamId() + " -> " + divergence.getDownstreamId()
+                + " " + divergence.getUpstreamStatus() + "/" + divergence.getDownstreamStatus();
+        if (findings.containsKey(signature)) return;
+
+        Path file = null;
+        if (outputDirectory != null) {
+            try {
+                Files.createDirectories(outputDirectory);
+                // Named after the signature so concurrent workers and later runs never collide
+                file = outputDirectory.resolve("desync-" + divergence.getKind().name().toLowerCase(Locale.ROOT) + "-"
+                        + Integer.toHexString(signature.hashCode()) + ".http");
+                Files.write(file, input);
+            } catch (IOException e) {
+                file = null;
+            }
+        }
+        Finding finding = new Finding(signature, input, divergence, execution, file);
+        if (findings.putIfAbsent(signature, finding) != null) return;
+        findingOrder.add(finding);
+        if (listener != null) {
+            listener.onFinding(finding);
+        }
+    }
+
+    // AFL-style hit-count classes
+    private static int bucket(int count) {
+        if (count <= 3) return 1 << (count - 1);
+        if (count <= 7) return 8;
+        if (count <= 15) return 16;
+        if (count <= 31) return 32;
+        if (count <= 127) return 64;
+        return 128;
+    }
+
+    private static int scramble(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private final class Worker implements ParserStage.Hook {
+        private final SplittableRandom random;
+        private final int[] trace = new int[MAP_SIZE];
+        private final int[] touched = new int[MAP_SIZE];
+        private int touchedCount;
+        private byte[] buffer;
+        private int length;
+        private int hopSalt;
+        private int previous;
+
+        Worker(SplittableRandom random) {
+            this.random = random;
+            this.buffer = new byte[maxInputLength + 64];
+        }
+
+        void loop(long executionLimit, long deadline) {
+            long localRuns = 0;
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                // Reading the clock every input would cost more than some executions
+                if ((++localRuns & 255) == 0 && System.nanoTime() > deadline) break;
+                long execution = executions.incrementAndGet();
+                if (execution > executionLimit) break;
+                byte[] input = mutate(corpus.get(random.nextInt(corpus.size())));
+                try {
+                    execute(input, execution);
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    reset();
+                }
+            }
+        }
+
+        private void execute(byte[] input, long execution) {
+            // The hops are framed on this thread, in getHops() order, each on the bytes that reached it
+            DesyncDetector.Report report = detector.detect(input, false, this::frame);
+            for (DesyncDetector.Divergence divergence : report.getDivergences()) {
+                previous = 0;
+                edge(DIVERGENCE_SALT + divergence.getKind().ordinal() * 0x3F1
+                        + (divergence.getUpstreamId() + divergence.getDownstreamId()).hashCode());
+            }
+
+            if (hasNewCoverage()) {
+                corpus.add(input);
+            }
+            reset();
+            for (DesyncDetector.Divergence divergence : report.getDivergences()) {
+                recordFinding(input, divergence, execution);
+            }
+        }
+
+        private List<ParsedRequest> frame(int hop, byte[] data) {
+            hopSalt = scramble(hop + 1);
+            previous = hopSalt;
+            List<ParsedRequest> entries = ParserChainRunner.parseStream(plans[hop], data, true, this);
+            for (ParsedRequest entry : entries) {
+                int feature = entry.getStatus().ordinal() * 31 + STATUS_SALT;
+                String error = entry.getError();
+                if (error != null) {
+                    // The kind of error, not the value it quotes
+                    int colon = error.indexOf(':');
+                    feature += (colon > 0 ? error.substring(0, colon) : error).hashCode();
+                }
+                edge(feature);
+            }
+            return entries;
+        }
+
+        @Override
+        public void beforeStage(ParserStage stage) {
+        }
+
+        @Override
+        public void afterStage(ParserStage stage, boolean proceed) {
+            edge(System.identityHashCode(stage) * 2 + (proceed ? 1 : 0));
+        }
+
+        // Counts the transition from the previous location to this one, like AFL's edge coverage
+        private void edge(int feature) {
+            int location = scramble(feature ^ hopSalt);
+            int slot = (location ^ previous) & (MAP_SIZE - 1);
+            previous = location >>> 1;
+            if (trace[slot]++ == 0) {
+                touched[touchedCount++] = slot;
+            }
+        }
+
+        private boolean hasNewCoverage() {
+            boolean fresh = false;
+            for (int i = 0; i < touchedCount; i++) {
+                int slot = touched[i];
+                int bucket = bucket(trace[slot]);
+                if ((seen[slot] & bucket) != bucket) {
+                    fresh = true;
+                    break;
+                }
+            }
+            if (!fresh) return false;
+            // Re-checked under the lock: another worker may have just recorded the same buckets
+            synchronized (seen) {
+                fresh = false;
+                for (int i = 0; i < touchedCount; i++) {
+                    int slot = touched[i];
+                    int bucket = bucket(trace[slot]);
+                    if ((seen[slot] & bucket) != bucket) {
+                        seen[slot] |= (byte) bucket;
+                        fresh = true;
+                    }
+                }
+            }
+            return fresh;
+        }
+
+        private void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                trace[touched[i]] = 0;
+            }
+            touchedCount = 0;
+        }
+
+        // Stacks 1 to 16 random byte-level mutations on a copy of the base input
+        private byte[] mutate(byte[] base) {
+            length = Math.min(base.length, maxInputLength);
+            System.arraycopy(base, 0, buffer, 0, length);
+            int rounds = 1 << random.nextInt(5);
+            for (int r = 0; r < rounds; r++) {
+                if (length == 0) {
+                    insert(0, dictionary[random.nextInt(dictionary.length)]);
+                    continue;
+                }
+                switch (random.nextInt(10)) {
+                    case 0: {
+                        int pos = random.nextInt(length);
+                        buffer[pos] ^= (byte) (1 << random.nextInt(8));
+                        break;
+                    }
+                    case 1:
+                        buffer[random.nextInt(length)] = INTERESTING_BYTES[random.nextInt(INTERESTING_BYTES.length)];
+                        break;
+                    case 2:
+                        buffer[random.nextInt(length)] = (byte) random.nextInt(256);
+                        break;
+                    case 3: {
+                        int pos = random.nextInt(length);
+                        int count = 1 + random.nextInt(Math.min(16, length - pos));
+                        System.arraycopy(buffer, pos + count, buffer, pos, length - pos - count);
+                        length -= count;
+                        break;
+                    }
+                    case 4: {
+                        int from = random.nextInt(length);
+                        int count = 1 + random.nextInt(Math.min(32, length - from));
+                        insert(random.nextInt(length + 1), Arrays.copyOfRange(buffer, from, from + count));
+                        break;
+                    }
+                    case 5:
+                        insert(random.nextInt(length + 1), dictionary[random.nextInt(dictionary.length)]);
+                        break;
+                    case 6: {
+                        byte[] token = dictionary[random.nextInt(dictionary.length)];
+                        int pos = random.nextInt(length);
+                        int count = Math.min(token.length, length - pos);
+                        System.arraycopy(token, 0, buffer, pos, count);
+                        break;
+                    }
+                    case 7:
+                        insert(random.nextInt(length + 1),
+                                new byte[]{INTERESTING_BYTES[random.nextInt(INTERESTING_BYTES.length)]});
+                        break;
+                    case 8:
+                        splice(corpus.get(random.nextInt(corpus.size())));
+                        break;
+                    default:
+                        swapLineEnding();
+                        break;
+                }
+            }
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private void insert(int pos, byte[] bytes) {
+            int count = Math.min(bytes.length, maxInputLength - length);
+            if (count <= 0) return;
+            System.arraycopy(buffer, pos, buffer, pos + count, length - pos);
+            System.arraycopy(bytes, 0, buffer, pos, count);
+            length += count;
+        }
+
+        // Keeps a prefix of the current input and appends a suffix of another corpus entry
+        private void splice(byte[] other) {
+            if (other.length == 0) return;
+            int cut = random.nextInt(length + 1);
+            int from = random.nextInt(other.length);
+            int count = Math.min(other.length - from, maxInputLength - cut);
+            System.arraycopy(other, from, buffer, cut, count);
+            length = cut + count;
+        }
+
+        // Turns a CRLF into a bare LF or a bare LF into CRLF, starting from a random offset
+        private void swapLineEnding() {
+            int start = random.nextInt(length);
+            for (int i = 0; i < length; i++) {
+                int pos = (start + i) % length;
+                if (buffer[pos] != '\n') continue;
+                if (pos > 0 && buffer[pos - 1] == '\r') {
+                    System.arraycopy(buffer, pos, buffer, pos - 1, length - pos);
+                    length--;
+                } else {
+                    insert(pos, new byte[]{'\r'});
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package httpraider.parser;
+
+import httpraider.model.network.NetworkModel;
+import httpraider.model.network.ProxyModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Differential oracle over the modeled proxies: the input is routed through the chain as
+ * {@link ParserChainRunner#routeThroughChain} does, and each downstream hop's framing of the bytes
+ * that reached it is compared with the requests its upstream forwarded, so rewrites on the way
+ * (deleted or added headers, re-encoded bodies) are taken into account. Wherever the downstream
+ * hop ends a request at an offset the upstream did not (or rejects a request the upstream forwarded),
+ * a {@link Divergence} gives the byte positions, mapped back to the client input, and the likely cause.
+ * Pairs are the connections between non-client proxies, oriented away from the client; a pair is
+ * only compared when the downstream hop received the input through it.
+ * The topology is captured when the detector is created; one instance can check any number of inputs.
+ */
+public final class DesyncDetector {
+
+    public enum Kind {
+        // The hops end the header block at different offsets (line/header delimiters)
+        HEADER_DELIMITER,
+        // One hop unfolds obs-fold continuation lines and the other does not
+        HEADER_FOLDING,
+        // The hops frame the body with different mechanisms (Content-Length vs chunked vs none)
+        CL_TE,
+        // Same framing mechanism, different body length (duplicate or malformed length headers...)
+        BODY_LENGTH,
+        // One hop fails to parse what the other accepts
+        REJECTED,
+        // Same boundary, different outcome (firewall, incomplete...)
+        STATUS
+    }
+
+    private enum Framing { NONE, CONTENT_LENGTH, CHUNKED }
+
+    public static final class Divergence {
+        private final String upstreamId;
+        private final String downstreamId;
+        private final int start;
+        private final int position;
+        private final int upstreamEnd;
+        private final int downstreamEnd;
+        private final int resync;
+        private final Kind kind;
+        private final ParsedRequest.Status upstreamStatus;
+        private final ParsedRequest.Status downstreamStatus;
+
+        Divergence(String upstreamId, String downstreamId, int start, int position, int upstreamEnd, int downstreamEnd,
+                   int resync, Kind kind, ParsedRequest.Status upstreamStatus, ParsedRequest.Status downstreamStatus) {
+            this.upstreamId = upstreamId;
+            this.downstreamId = downstreamId;
+            this.start = start;
+            this.position = position;
+            this.upstreamEnd = upstreamEnd;
+            this.downstreamEnd = downstreamEnd;
+            this.resync = resync;
+            this.kind = kind;
+            this.upstreamStatus = upstreamStatus;
+            this.downstreamStatus = downstreamStatus;
+        }
+
+        public String getUpstreamId() { return upstreamId; }
+        public String getDownstreamId() { return downstreamId; }
+        // Offset of the request both hops started from
+        public int getStart() { return start; }
+        // First offset where the hops disagree: the earlier of the two request ends
+        public int getPosition() { return position; }
+        // Where each hop ended the request, -1 when it produced no entry there
+        public int getUpstreamEnd() { return upstreamEnd; }
+        public int getDownstreamEnd() { return downstreamEnd; }
+        // Next offset where both hops end a request again, -1 if they never agree again
+        public int getResync() { return resync; }
+        public Kind getKind() { return kind; }
+        public ParsedRequest.Status getUpstreamStatus() { return upstreamStatus; }
+        public ParsedRequest.Status getDownstreamStatus() { return downstreamStatus; }
+
+        @Override
+        public String toString() {
+            return kind + " " + upstreamId + " -> " + downstreamId + " at " + position
+                    + " (request at " + start + ": " + upstreamId + " ends " + upstreamEnd + " " + upstreamStatus
+                    + ", " + downstreamId + " ends " + downstreamEnd + " " + downstreamStatus + ")"
+                    + (resync >= 0 ? ", resync at " + resync : "");
+        }
+    }
+
+    public static final class Report {
+        private final byte[] input;
+        private final Map<String, List<ParsedRequest>> frames;
+        private final List<Divergence> divergences;
+
+        Report(byte[] input, Map<String, List<ParsedRequest>> frames, List<Divergence> divergences) {
+            this.input = input;
+            this.frames = frames;
+            this.divergences = divergences;
+        }
+
+        public byte[] getInput() { return input; }
+        // Entries each hop parsed from the bytes that reached it (their source), keyed by proxy id
+        public Map<String, List<ParsedRequest>> getFrames() { return frames; }
+        public List<Divergence> getDivergences() { return divergences; }
+        public boolean hasDesync() { return !divergences.isEmpty(); }
+
+        public List<Divergence> getDivergences(String proxyId) {
+            List<Divergence> result = new ArrayList<>();
+            for (Divergence d : divergences) {
+                if (d.upstreamId.equals(proxyId) || d.downstreamId.equals(proxyId)) result.add(d);
+            }
+            return result;
+        }
+    }
+
+    // Frames the bytes that reached a hop (index into getHops()); entries include incomplete requests
+    interface HopFramer {
+        List<ParsedRequest> frame(int hop, byte[] data);
+    }
+
+    private final NetworkModel network;
+    private final List<ProxyModel> hops = new ArrayList<>();
+    private final Map<String, Integer> hopIndex = new LinkedHashMap<>();
+    // Indexes into hops: {upstream, downstream}
+    private final List<int[]> pairs = new ArrayList<>();
+    private final ParseCache cache;
+
+    /**
+     * cache may be null: inputs that are all different (fuzzing) gain nothing from it, while
+     * repeated checks of the same payload against unchanged settings are served from it.
+     */
+    public DesyncDetector(NetworkModel network, ParseCache cache) {
+        this.network = network;
+        this.cache = cache;
+        for (ProxyModel proxy : network.getProxies()) {
+            if (proxy.isClient()) continue;
+            int distance = network.getDistanceToClient(proxy.getId());
+            for (String neighbourId : network.getNeighbourIds(proxy.getId())) {
+                ProxyModel neighbour = network.getProxy(neighbourId);
+                if (neighbour == null || neighbour.isClient()) continue;
+                int neighbourDistance = network.getDistanceToClient(neighbourId);
+                // Each connection once, from the hop closer to the client; unreachable hops have no direction
+                if (distance < 0 || neighbourDistance <= distance) continue;
+                int up = hopIndex.computeIfAbsent(proxy.getId(), k -> addHop(proxy));
+                int down = hopIndex.computeIfAbsent(neighbourId, k -> addHop(neighbour));
+                pairs.add(new int[]{up, down});
+            }
+        }
+    }
+
+    private int addHop(ProxyModel proxy) {
+        hops.add(proxy);
+        return hops.size() - 1;
+    }
+
+    public List<ProxyModel> getHops() {
+        return Collections.unmodifiableList(hops);
+    }
+
+    public Report detect(byte[] input) {
+        return detect(input, true);
+    }
+
+    /**
+     * Routes the input through the chain and compares each pair. With parallel the BFS waves and the
+     * hops are parsed concurrently; bulk callers that already run one input per thread pass false.
+     */
+    public Report detect(byte[] input, boolean parallel) {
+        return detect(input, parallel, null);
+    }
+
+    // framer null parses every hop with its settings (through the cache when there is one)
+    Report detect(byte[] input, boolean parallel, HopFramer framer) {
+        Map<String, List<ParserChainRunner.Origin>> origins = new HashMap<>();
+        // Routing frames the input of a hop that received one payload, and the hop keeps that frame
+        Map<String, Frame> routed = new ConcurrentHashMap<>();
+        Map<String, List<byte[]>> payloads = ParserChainRunner.routeThroughChain(network, cache, input, parallel, origins,
+                (proxy, data) -> {
+                    Integer hop = hopIndex.get(proxy.getId());
+                    List<ParsedRequest> entries = frame(proxy, hop != null ? hop : -1, data, framer);
+                    if (hop != null) routed.put(proxy.getId(), new Frame(data, entries));
+                    return entries;
+                });
+        return detect(input, payloads, origins, routed, parallel, framer);
+    }
+
+    /**
+     * Compares the hops given what routeThroughChain delivered for the input (payloads null when
+     * there is no client proxy, then every hop frames the input itself).
+     */
+    Report detect(byte[] input, Map<String, List<byte[]>> payloads, Map<String, List<ParserChainRunner.Origin>> origins,
+                  boolean parallel, HopFramer framer) {
+        return detect(input, payloads, origins, Collections.emptyMap(), parallel, framer);
+    }
+
+    private Report detect(byte[] input, Map<String, List<byte[]>> payloads, Map<String, List<ParserChainRunner.Origin>> origins,
+                          Map<String, Frame> routed, boolean parallel, HopFramer framer) {
+        Routing routing = new Routing(input, payloads, origins);
+        byte[][] hopInputs = new byte[hops.size()][];
+        List<List<ParsedRequest>> frames = new ArrayList<>(hops.size());
+        for (int i = 0; i < hops.size(); i++) {
+            hopInputs[i] = routing.input(hops.get(i).getId());
+            Frame frame = routed.get(hops.get(i).getId());
+            // Same array: the hop's input is the payload routing framed
+            frames.add(frame != null && frame.data == hopInputs[i] ? frame.entries : null);
+        }
+        frameAll(hopInputs, frames, parallel, framer);
+
+        List<Divergence> divergences = new ArrayList<>();
+        for (int[] pair : pairs) {
+            ProxyModel up = hops.get(pair[0]);
+            ProxyModel down = hops.get(pair[1]);
+            Boundaries forwarded = routing.forwarded(up.getId(), down.getId());
+            // The connection carried no accepted request for this input
+            if (forwarded == null) continue;
+            Boundaries received = Boundaries.of(frames.get(pair[1]), forwarded.ends[forwarded.size() - 1]);
+            compare(hopInputs[pair[1]], routing, up, forwarded, down, received, divergences);
+        }
+
+        Map<String, List<ParsedRequest>> byProxy = new LinkedHashMap<>();
+        for (int i = 0; i < hops.size(); i++) {
+            byProxy.put(hops.get(i).getId(), frames.get(i));
+        }
+        return new Report(input, byProxy, divergences);
+    }
+
+    // Frames the hops that have no frame yet (null in frames)
+    private void frameAll(byte[][] hopInputs, List<List<ParsedRequest>> frames, boolean parallel, HopFramer framer) {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = 0; i < hops.size(); i++) {
+            if (frames.get(i) == null) missing.add(i);
+        }
+        if (!parallel || missing.size() < 2) {
+            for (int hop : missing) {
+                frames.set(hop, frame(hops.get(hop), hop, hopInputs[hop], framer));
+            }
+            return;
+        }
+        List<Callable<List<ParsedRequest>>> tasks = new ArrayList<>(missing.size());
+        for (int hop : missing) {
+            tasks.add(() -> frame(hops.get(hop), hop, hopInputs[hop], framer));
+        }
+        List<Future<List<ParsedRequest>>> futures = ParserChainRunner.SIMULATION_POOL.invokeAll(tasks);
+        for (int k = 0; k < futures.size(); k++) {
+            try {
+                frames.set(missing.get(k), futures.get(k).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Desync detection interrupted", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // Every entry the proxy produces, incomplete ones included, so waiting for more bytes is visible too;
+    // hop is its index into hops, -1 for a proxy that is not one (never given to the framer)
+    private List<ParsedRequest> frame(ProxyModel proxy, int hop, byte[] data, HopFramer framer) {
+        if (framer != null && hop >= 0) {
+            return framer.frame(hop, data);
+        }
+        if (cache != null) {
+            return cache.parse(proxy.getParserSettings(), data, true);
+        }
+        return ParserChainRunner.parseStream(ParserPlan.forModel(proxy.getParserSettings()), data, true);
+    }
+
+    // A hop's entries for the bytes they were parsed from
+    private static final class Frame {
+        final byte[] data;
+        final List<ParsedRequest> entries;
+
+        Frame(byte[] data, List<ParsedRequest> entries) {
+            this.data = data;
+            this.entries = entries;
+        }
+    }
+
+    // Request boundaries in the downstream hop's input: one entry per forwarded request, or the hop's own entries
+    private static final class Boundaries {
+        final int[] starts;
+        final int[] ends;
+        final ParsedRequest.Status[] statuses;
+
+        Boundaries(int size) {
+            starts = new int[size];
+            ends = new int[size];
+            statuses = new ParsedRequest.Status[size];
+        }
+
+        // The entries starting before limit
+        static Boundaries of(List<ParsedRequest> entries, int limit) {
+            int count = 0;
+            while (count < entries.size() && entries.get(count).getStart() < limit) count++;
+            Boundaries boundaries = new Boundaries(count);
+            for (int i = 0; i < count; i++) {
+                ParsedRequest entry = entries.get(i);
+                boundaries.starts[i] = entry.getStart();
+                boundaries.ends[i] = entry.getEnd();
+                boundaries.statuses[i] = entry.getStatus();
+            }
+            return boundaries;
+        }
+
+        int size() {
+            return ends.length;
+        }
+    }
+
+    /**
+     * What routeThroughChain delivered to each hop, and the way back from an offset in a hop's
+     * input to the client input: through the payload it falls in, the upstream entry that payload
+     * was built from, and so on up to the client.
+     */
+    private static final class Routing {
+        private final byte[] input;
+        private final Map<String, List<byte[]>> payloads;
+        private final Map<String, List<ParserChainRunner.Origin>> origins;
+        private final Map<String, byte[]> inputs = new HashMap<>();
+        private final Map<String, int[]> offsets = new HashMap<>();
+
+        Routing(byte[] input, Map<String, List<byte[]>> payloads, Map<String, List<ParserChainRunner.Origin>> origins) {
+            this.input = input;
+            this.payloads = payloads;
+            this.origins = origins;
+        }
+
+        // The payloads that reached the proxy, read as one connection
+        byte[] input(String proxyId) {
+            if (payloads == null) return input;
+            List<byte[]> received = payloads.get(proxyId);
+            if (received == null || received.isEmpty()) return new byte[0];
+            return inputs.computeIfAbsent(proxyId, k -> ParserChainRunner.concatenate(received));
+        }
+
+        // Offset of each payload in input(proxyId), plus the total length
+        int[] offsets(String proxyId) {
+            return offsets.computeIfAbsent(proxyId, k -> {
+                List<byte[]> received = payloads.getOrDefault(proxyId, Collections.emptyList());
+                int[] result = new int[received.size() + 1];
+                for (int i = 0; i < received.size(); i++) {
+                    result[i + 1] = result[i] + received.get(i).length;
+                }
+                return result;
+            });
+        }
+
+        /**
+         * The requests up forwarded to down, up to the first one up did not accept: what follows an
+         * error or a blocked request only reaches down as the marker the model tags it with.
+         * Null when down's input did not come from up or starts with such a request.
+         */
+        Boundaries forwarded(String upId, String downId) {
+            if (payloads == null) return null;
+            List<ParserChainRunner.Origin> received = origins.get(downId);
+            if (received == null || received.isEmpty() || !received.get(0).proxyId.equals(upId)) return null;
+            int count = 0;
+            while (count < received.size() && accepted(received.get(count).entry.getStatus())) count++;
+            if (count == 0) return null;
+            int[] pieces = offsets(downId);
+            Boundaries boundaries = new Boundaries(count);
+            for (int i = 0; i < count; i++) {
+                boundaries.starts[i] = pieces[i];
+                boundaries.ends[i] = pieces[i + 1];
+                boundaries.statuses[i] = received.get(i).entry.getStatus();
+            }
+            return boundaries;
+        }
+
+        /**
+         * Maps an offset of proxyId's input to the client input. A request end (isEnd) that falls on
+         * the boundary of two forwarded requests belongs to the first, a start to the second. Inside a
+         * rewritten request offsets are taken relative to its end and clamped to the upstream entry.
+         */
+        int toInput(String proxyId, int pos, boolean isEnd) {
+            if (pos < 0) return pos;
+            List<ParserChainRunner.Origin> received = origins != null ? origins.get(proxyId) : null;
+            while (received != null && !received.isEmpty()) {
+                int[] pieces = offsets(proxyId);
+                int k = 0;
+                while (k + 1 < received.size() && (isEnd ? pieces[k + 1] < pos : pieces[k + 1] <= pos)) k++;
+                ParserChainRunner.Origin origin = received.get(k);
+                int within = pos - pieces[k];
+                int base = offsets(origin.proxyId)[origin.payloadIndex];
+                if (origin.entry == null) {
+                    pos = base + within;
+                } else {
+                    // Counted back from the end, so body offsets stay exact when the header block was rewritten
+                    int fromEnd = origin.entry.getEnd() - (pieces[k + 1] - pieces[k] - within);
+                    pos = base + Math.max(origin.entry.getStart(), Math.min(origin.entry.getEnd(), fromEnd));
+                }
+                proxyId = origin.proxyId;
+                received = origins.get(proxyId);
+            }
+            return pos;
+        }
+    }
+
+    /**
+     * Merges the two sorted boundary lists, both in offsets of the downstream hop's input (data);
+     * every run of unmatched ends between two common ones is one divergence.
+     */
+    private static void compare(byte[] data, Routing routing, ProxyModel up, Boundaries a,
+                                ProxyModel down, Boundaries b, List<Divergence> out) {
+        int i = 0, j = 0;
+        int sync = 0;
+        while (i < a.size() || j < b.size()) {
+            int ea = i < a.size() ? a.ends[i] : Integer.MAX_VALUE;
+            int eb = j < b.size() ? b.ends[j] : Integer.MAX_VALUE;
+
+            if (ea == eb) {
+                if (!sameOutcome(a.statuses[i], b.statuses[j])) {
+                    int start = Math.min(a.starts[i], b.starts[j]);
+                    out.add(divergence(routing, up, down, start, start, ea, eb, ea,
+                            statusKind(a.statuses[i], b.statuses[j]), a.statuses[i], b.statuses[j]));
+                }
+                sync = ea;
+                i++;
+                j++;
+                continue;
+            }
+
+            ParsedRequest.Status sa = i < a.size() ? a.statuses[i] : null;
+            ParsedRequest.Status sb = j < b.size() ? b.statuses[j] : null;
+            int start = sa == null ? b.starts[j] : sb == null ? a.starts[i] : Math.min(a.starts[i], b.starts[j]);
+            start = Math.max(start, sync);
+            Kind kind = classify(data, start, up, sa, down, sb);
+            int upstreamEnd = sa != null ? ea : -1;
+            int downstreamEnd = sb != null ? eb : -1;
+            // Skip ahead until both hops end a request at the same offset again
+            while (ea != eb) {
+                if (ea < eb) i++;
+                else j++;
+                ea = i < a.size() ? a.ends[i] : Integer.MAX_VALUE;
+                eb = j < b.size() ? b.ends[j] : Integer.MAX_VALUE;
+            }
+            int resync = ea == Integer.MAX_VALUE ? -1 : ea;
+            int position = upstreamEnd < 0 ? downstreamEnd : downstreamEnd < 0 ? upstreamEnd : Math.min(upstreamEnd, downstreamEnd);
+            out.add(divergence(routing, up, down, start, position, upstreamEnd, downstreamEnd, resync, kind, sa, sb));
+            if (resync < 0) break;
+            sync = resync;
+            i++;
+            j++;
+        }
+    }
+
+    // Offsets are in the downstream hop's input; the divergence reports them in the client input
+    private static Divergence divergence(Routing routing, ProxyModel up, ProxyModel down, int start, int position,
+                                         int upstreamEnd, int downstreamEnd, int resync, Kind kind,
+                                         ParsedRequest.Status upstreamStatus, ParsedRequest.Status downstreamStatus) {
+        String downId = down.getId();
+        return new Divergence(up.getId(), downId, routing.toInput(downId, start, false),
+                routing.toInput(downId, position, true), routing.toInput(downId, upstreamEnd, true),
+                routing.toInput(downId, downstreamEnd, true), routing.toInput(downId, resync, true),
+                kind, upstreamStatus, downstreamStatus);
+    }
+
+    private static boolean sameOutcome(ParsedRequest.Status a, ParsedRequest.Status b) {
+        return accepted(a) ? accepted(b) : a == b;
+    }
+
+    private static boolean accepted(ParsedRequest.Status status) {
+        return status == ParsedRequest.Status.COMPLETE || status == ParsedRequest.Status.UNTERMINATED_HEADERS;
+    }
+
+    private static Kind statusKind(ParsedRequest.Status a, ParsedRequest.Status b) {
+        return a == ParsedRequest.Status.ERROR || b == ParsedRequest.Status.ERROR ? Kind.REJECTED : Kind.STATUS;
+    }
+
+    // Re-runs the header stages of both hops on the bytes where they part ways to tell why
+    private static Kind classify(byte[] data, int start, ProxyModel up, ParsedRequest.Status sa,
+                                 ProxyModel down, ParsedRequest.Status sb) {
+        if (sa == null || sb == null || sa == ParsedRequest.Status.ERROR || sb == ParsedRequest.Status.ERROR) {
+            return Kind.REJECTED;
+        }
+        ParserPlan planA = ParserPlan.forModel(up.getParserSettings());
+        ParserPlan planB = ParserPlan.forModel(down.getParserSettings());
+        RequestStep stepA = RequestStep.parse(planA, data, start, data.length, false, false);
+        RequestStep stepB = RequestStep.parse(planB, data, start, data.length, false, false);
+
+        if (stepA.getHeaderEnd() != stepB.getHeaderEnd()) {
+            return Kind.HEADER_DELIMITER;
+        }
+        if (stepA.lengthHeaderLines != null && stepB.lengthHeaderLines != null
+                && stepA.lengthHeaderLines.size() != stepB.lengthHeaderLines.size()
+                && hasContinuationLine(data, start, stepA.getHeaderEnd())) {
+            return Kind.HEADER_FOLDING;
+        }
+        if (framing(planA, stepA) != framing(planB, stepB)) {
+            return Kind.CL_TE;
+        }
+        return Kind.BODY_LENGTH;
+    }
+
+    // Which of the hop's body length rules decided the framing (same precedence as ParserUtils.getMessageBodyByHeaderRules)
+    private static Framing framing(ParserPlan plan, RequestStep step) {
+        if (step.headers == null || !plan.hasBodyLenRules()) return Framing.NONE;
+        HeaderIndex headers = step.headers;
+        for (ParserPlan.BodyLenRule rule : plan.getBodyLenRules()) {
+            for (int i = 0; i < headers.size(); i++) {
+                if (rule.isChunked()) {
+                    if (headers.trimmedLine(i).equals(rule.getTrimmedPattern())) return Framing.CHUNKED;
+                } else if (headers.line(i).startsWith(rule.getPattern())) {
+                    return Framing.CONTENT_LENGTH;
+                }
+            }
+        }
+        return Framing.NONE;
+    }
+
+    // A header line (after the request line) starting with SP or HTAB
+    private static boolean hasContinuationLine(byte[] input, int start, int headerEnd) {
+        int limit = Math.min(headerEnd, input.length);
+        boolean firstLine = true;
+        for (int p = start; p + 1 < limit; p++) {
+            if (input[p] == '\n') {
+                byte next = input[p + 1];
+                if (!firstLine && (next == ' ' || next == '\t')) return true;
+                firstLine = false;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,61 @@
+package httpraider.parser;
+
+import java.util.Arrays;
+
+/**
+ * A single contiguous edit of a payload: at {@code offset}, {@code removedLength} bytes of the
+ * old payload were replaced by {@code insertedLength} new bytes. Bytes before the offset are
+ * unchanged, which is what lets a re-parse keep the requests that end before it.
+ */
+public final class EditDelta {
+
+    private final int offset;
+    private final int removedLength;
+    private final int insertedLength;
+
+    public EditDelta(int offset, int removedLength, int insertedLength) {
+        if (offset < 0 || removedLength < 0 || insertedLength < 0) {
+            throw new IllegalArgumentException("Negative edit: " + offset + ", " + removedLength + ", " + insertedLength);
+        }
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedLength = insertedLength;
+    }
+
+    public static EditDelta insertion(int offset, int length) {
+        return new EditDelta(offset, 0, length);
+    }
+
+    public static EditDelta removal(int offset, int length) {
+        return new EditDelta(offset, length, 0);
+    }
+
+    /**
+     * Smallest single edit turning before into after (common prefix and suffix excluded),
+     * or null when both are identical.
+     */
+    public static EditDelta between(byte[] before, byte[] after) {
+        int prefix = Arrays.mismatch(before, after);
+        if (prefix == -1) return null;
+        int max = Math.min(before.length, after.length) - prefix;
+        int suffix = 0;
+        while (suffix < max && before[before.length - 1 - suffix] == after[after.length - 1 - suffix]) {
+            suffix++;
+        }
+        return new EditDelta(prefix, before.length - prefix - suffix, after.length - prefix - suffix);
+    }
+
+    public int getOffset() { return offset; }
+    public int getRemovedLength() { return removedLength; }
+    public int getInsertedLength() { return insertedLength; }
+
+    // Change in payload length
+    public int getShift() {
+        return insertedLength - removedLength;
+    }
+
+    @Override
+    public String toString() {
+        return "EditDelta{offset=" + offset + ", removed=" + removedLength + ", inserted=" + insertedLength + "}";
+    }
+}
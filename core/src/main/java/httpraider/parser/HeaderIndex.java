@@ -0,0 +1,152 @@
+package httpraider.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tokenized view of one request's header block, built once and shared by the
+ * message-length, firewall and load-balancing stages: per-line colon offsets,
+ * hashes of the lowercased header names and the request-line parts.
+ * Derived strings (trimmed/lowercased lines, names, values) are computed on first use.
+ */
+public final class HeaderIndex {
+
+    private final String[] lines;
+    // Offset of the first ':' in each line, -1 if none
+    private final int[] colon;
+    // Hash of the trimmed, lowercased name of each line (0 when the line has no name)
+    private final int[] nameHash;
+    private final String headersBlock;
+    private final String body;
+
+    private String[] trimmedLines;
+    private String[] lowerLines;
+    private String[] requestLineParts;
+
+    private HeaderIndex(String[] lines, String headersBlock, String body) {
+        this.lines = lines;
+        this.headersBlock = headersBlock;
+        this.body = body;
+        colon = new int[lines.length];
+        nameHash = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int idx = line.indexOf(':');
+            colon[i] = idx;
+            nameHash[i] = idx > 0 ? lowerHash(line, 0, idx) : 0;
+        }
+    }
+
+    // Index over the parser's header lines (each line keeps its original ending)
+    public static HeaderIndex of(List<String> headerLines) {
+        return new HeaderIndex(headerLines.toArray(new String[0]), null, null);
+    }
+
+    /**
+     * Index over a complete request as the routing rules see it: the header block ends at the
+     * first CRLFCRLF and is split on CRLF; everything after it is the body.
+     */
+    public static HeaderIndex ofRequest(byte[] request) {
+        String requestStr = new String(request, StandardCharsets.ISO_8859_1);
+        String[] headerBody = requestStr.split("\r\n\r\n", 2);
+        String headersBlock = headerBody.length > 0 ? headerBody[0] : "";
+        String body = headerBody.length > 1 ? headerBody[1] : "";
+        return new HeaderIndex(headersBlock.split("\r\n"), headersBlock, body);
+    }
+
+    // Hash of the lowercased name, ignoring surrounding whitespace
+    public static int nameHash(String name) {
+        return lowerHash(name, 0, name.length());
+    }
+
+    private static int lowerHash(String s, int from, int to) {
+        while (from < to && s.charAt(from) <= ' ') from++;
+        while (to > from && s.charAt(to - 1) <= ' ') to--;
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    public int size() {
+        return lines.length;
+    }
+
+    public String line(int i) {
+        return lines[i];
+    }
+
+    public String trimmedLine(int i) {
+        if (trimmedLines == null) {
+            trimmedLines = new String[lines.length];
+        }
+        if (trimmedLines[i] == null) {
+            trimmedLines[i] = lines[i].trim();
+        }
+        return trimmedLines[i];
+    }
+
+    public String lowerLine(int i) {
+        if (lowerLines == null) {
+            lowerLines = new String[lines.length];
+        }
+        if (lowerLines[i] == null) {
+            lowerLines[i] = lines[i].toLowerCase();
+        }
+        return lowerLines[i];
+    }
+
+    public boolean hasName(int i) {
+        return colon[i] > 0;
+    }
+
+    public String name(int i) {
+        return lines[i].substring(0, colon[i]).trim();
+    }
+
+    public String value(int i) {
+        return lines[i].substring(colon[i] + 1).trim();
+    }
+
+    public int nameHashAt(int i) {
+        return nameHash[i];
+    }
+
+    /**
+     * True when the line starts with {@code name + ":"}, ignoring case (the name itself
+     * must not contain ':'). Uses the name hash to reject most lines without touching the text.
+     */
+    public boolean startsWithName(int i, String lowerName, int lowerNameHash) {
+        return nameHash[i] == lowerNameHash
+                && colon[i] == lowerName.length()
+                && lines[i].regionMatches(true, 0, lowerName, 0, lowerName.length());
+    }
+
+    public String requestLine() {
+        return lines.length > 0 ? lines[0] : null;
+    }
+
+    // Request line split on single spaces (String.split semantics)
+    public String[] requestLineParts() {
+        if (requestLineParts == null) {
+            requestLineParts = lines.length > 0 ? lines[0].split(" ") : new String[0];
+        }
+        return requestLineParts;
+    }
+
+    public List<String> lines() {
+        return Arrays.asList(lines);
+    }
+
+    // Header block without the CRLFCRLF delimiter; only set for indexes built with ofRequest
+    public String headersBlock() {
+        return headersBlock;
+    }
+
+    // Body following the header block; only set for indexes built with ofRequest
+    public String body() {
+        return body;
+    }
+}
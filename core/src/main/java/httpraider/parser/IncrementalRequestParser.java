@@ -0,0 +1,208 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+
+import java.util.Arrays;
+
+/**
+ * Push-style request parser: bytes are fed as they arrive and every completed
+ * request is reported to a {@link Listener}. Only the bytes of the request currently
+ * being assembled are buffered, so arbitrarily long streams parse in constant memory.
+ * All {@link HttpParserModel} rules apply exactly as in the whole-buffer parser
+ * (folding, delete/add headers, chunked endings, JS hooks, output encoding, firewall);
+ * after {@link #finish()} the emitted requests are those of a whole-buffer parse of the stream.
+ * Not thread-safe; use one instance per stream.
+ */
+public final class IncrementalRequestParser {
+
+    public enum State {
+        // Waiting for the header/body delimiter of the next request
+        AWAITING_HEADERS,
+        // Headers received, waiting for the rest of the body
+        AWAITING_BODY,
+        // A firewall rule closed the connection; further input is ignored
+        CLOSED,
+        // The stream could not be parsed with the current settings; further input is ignored
+        FAILED
+    }
+
+    public interface Listener {
+        // A request was parsed and passed the firewall rules
+        void onRequest(byte[] request);
+
+        // A request was parsed but a firewall rule blocked it
+        default void onBlocked(byte[] request, String triggeredSource, boolean closeConnection) {}
+
+        // Parsing stopped; unparsed holds the bytes starting at the offending request
+        default void onError(String message, byte[] unparsed) {}
+
+        // finish() was called while a request was still being assembled
+        default void onIncomplete(State state, byte[] pending, int missingBytes) {}
+    }
+
+    private static final int INITIAL_CAPACITY = 8192;
+
+    private final ParserPlan plan;
+    private final Listener listener;
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int start;
+    private int end;
+
+    private State state = State.AWAITING_HEADERS;
+    // Buffer offset up to which no header/body delimiter was found for the pending request
+    private int headerScanned;
+    // Body bytes still missing when known (Content-Length), used to skip pointless re-parses
+    private int missingBytes;
+    // Chunk-size line where the scan for the end of a pending chunked body resumes, -1 when none
+    private int chunkedResume = -1;
+    // finish() was called: a header end at the end of the buffer can no longer be extended
+    private boolean inputEnded;
+    private long consumed;
+    private int requestCount;
+
+    public IncrementalRequestParser(HttpParserModel model, Listener listener) {
+        this(ParserPlan.forModel(model), listener);
+    }
+
+    public IncrementalRequestParser(ParserPlan plan, Listener listener) {
+        this.plan = plan;
+        this.listener = listener;
+    }
+
+    public void feed(byte[] chunk) {
+        feed(chunk, 0, chunk.length);
+    }
+
+    public void feed(byte[] chunk, int offset, int length) {
+        if (isTerminated() || length == 0) return;
+        append(chunk, offset, length);
+
+        if (state == State.AWAITING_BODY && missingBytes > 0) {
+            missingBytes -= length;
+            if (missingBytes > 0) return;
+        }
+        if (state == State.AWAITING_BODY && chunkedResume >= 0) {
+            // Only the new chunks are scanned; the request is re-parsed once its last chunk is in
+            chunkedResume = ParserUtils.resumeChunkedScan(buffer, chunkedResume, end, plan.getChunkedLineEnding());
+            if (chunkedResume >= 0) return;
+        }
+        drain();
+    }
+
+    /**
+     * Signals the end of the stream. The pending bytes get the whole-buffer parser's end-of-input
+     * handling: a header end held back for a possibly longer delimiter is final, and a chunked body
+     * that can no longer complete (cut short or malformed) is taken as far as it goes.
+     * What still cannot form a request is reported through {@link Listener#onIncomplete}.
+     */
+    public void finish() {
+        if (isTerminated() || end == start) return;
+        inputEnded = true;
+        drain();
+        if (isTerminated() || end == start) return;
+        listener.onIncomplete(state, Arrays.copyOfRange(buffer, start, end), Math.max(missingBytes, 0));
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    // Bytes of the pending request currently held in memory
+    public int getBufferedBytes() {
+        return end - start;
+    }
+
+    // Total bytes consumed by emitted requests since the parser was created
+    public long getConsumedBytes() {
+        return consumed;
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    private boolean isTerminated() {
+        return state == State.CLOSED || state == State.FAILED;
+    }
+
+    private void drain() {
+        while (start < end) {
+            if (state == State.AWAITING_HEADERS && !headerEndAvailable()) return;
+
+            // Until the input ends, a body that does not complete yet may still be completed by later bytes
+            RequestStep step = RequestStep.parse(plan, buffer, start, end, true, !inputEnded);
+            switch (step.outcome) {
+                case HEADERS_INCOMPLETE:
+                    state = State.AWAITING_HEADERS;
+                    headerScanned = end;
+                    return;
+                case BODY_INCOMPLETE:
+                    state = State.AWAITING_BODY;
+                    missingBytes = step.missingBytes;
+                    // No known length means a chunked body starting right after the headers
+                    chunkedResume = missingBytes > 0 ? -1
+                            : ParserUtils.resumeChunkedScan(buffer, step.getHeaderEnd(), end, plan.getChunkedLineEnding());
+                    return;
+                case ERROR:
+                    state = State.FAILED;
+                    listener.onError(step.error, Arrays.copyOfRange(buffer, start, end));
+                    return;
+                case REQUEST:
+                default:
+                    int next = step.remaining.offset();
+                    consumed += next - start;
+                    start = next;
+                    headerScanned = start;
+                    missingBytes = 0;
+                    chunkedResume = -1;
+                    state = State.AWAITING_HEADERS;
+                    requestCount++;
+                    if (step.firewall.blocked) {
+                        listener.onBlocked(step.request, step.firewall.triggeredSource, step.firewall.closeConnection);
+                        if (step.firewall.closeConnection) {
+                            state = State.CLOSED;
+                            return;
+                        }
+                    } else {
+                        listener.onRequest(step.request);
+                    }
+            }
+        }
+    }
+
+    // Any delimiter not found before headerScanned must end in the newly appended bytes.
+    // A delimiter that a longer one could still replace once more bytes arrive (e.g. \r\n\r
+    // before the \n of \r\n\r\n) is held back until those bytes or finish() settle it.
+    private boolean headerEndAvailable() {
+        if (plan.getHeaderLineEndings().length == 0) return true;
+        MultiPatternScanner scanner = plan.getHeaderEndScanner();
+        int from = Math.max(start, headerScanned - scanner.getMaxPatternLength() + 1);
+        long match = scanner.find(buffer, from, end);
+        if (match >= 0) {
+            return inputEnded || !scanner.canBeOvertaken(buffer, from, end, match);
+        }
+        headerScanned = end;
+        return false;
+    }
+
+    private void append(byte[] chunk, int offset, int length) {
+        if (end + length > buffer.length) {
+            int pending = end - start;
+            if (pending + length <= buffer.length && start > 0) {
+                // Compact: drop the bytes of the requests already emitted
+                System.arraycopy(buffer, start, buffer, 0, pending);
+            } else {
+                byte[] grown = new byte[Math.max(buffer.length * 2, pending + length)];
+                System.arraycopy(buffer, start, grown, 0, pending);
+                buffer = grown;
+            }
+            headerScanned -= start;
+            if (chunkedResume >= 0) chunkedResume -= start;
+            start = 0;
+            end = pending;
+        }
+        System.arraycopy(chunk, offset, buffer, end, length);
+        end += length;
+    }
+}
@@ -0,0 +1,218 @@
+package httpraider.parser;
+
+import httpraider.model.network.LoadBalancingRule;
+import httpraider.model.network.ProxyModel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * Runs a captured byte stream from a file through a chain of proxies without loading it:
+ * the file is mapped window by window and fed in small chunks to one {@link IncrementalRequestParser}
+ * per hop; every request a hop accepts is fed to the next one. Memory use is bounded by the
+ * chunk size plus the request each hop is currently assembling.
+ * Client proxies in the chain do not parse and are skipped. When a hop has enabled load-balancing
+ * rules, a request only reaches the next hop if a rule forwards it there.
+ * A hop that fails to parse reports the error once its input ends, since the error spans everything it
+ * received from that request on; once the first hop has stopped, the rest of the file is not read.
+ * Boundaries can be pulled with the iterator or pushed to a consumer with {@link #run(Consumer)}.
+ */
+public final class MappedChainStream implements Iterator<RequestBoundary>, Closeable {
+
+    // Mapping window; stays well below the 2 GB limit of a single MappedByteBuffer
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final List<Hop> hops = new ArrayList<>();
+    private final ArrayDeque<RequestBoundary> pending = new ArrayDeque<>();
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private boolean finished;
+
+    public MappedChainStream(Path file, List<ProxyModel> chain) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        fileSize = channel.size();
+        for (ProxyModel proxy : chain) {
+            if (proxy.isClient()) continue;
+            hops.add(new Hop(proxy, hops.size()));
+        }
+        for (int i = 0; i + 1 < hops.size(); i++) {
+            hops.get(i).next = hops.get(i + 1);
+        }
+    }
+
+    // Bytes of the file fed to the first hop so far
+    public long getPosition() {
+        return position;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (pending.isEmpty() && !finished) {
+            try {
+                pump();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read the capture file", e);
+            }
+        }
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public RequestBoundary next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return pending.poll();
+    }
+
+    /**
+     * Streams the whole file, handing every boundary to the sink as soon as it is known.
+     * Returns the number of boundaries produced.
+     */
+    public long run(Consumer<RequestBoundary> sink) {
+        long count = 0;
+        while (hasNext()) {
+            sink.accept(pending.poll());
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    // Feeds the next chunk of the file to the first hop, or finishes every hop at the end of the file
+    // or once the first hop stopped parsing (nothing after that point reaches any hop)
+    private void pump() throws IOException {
+        if (hops.isEmpty() || position >= fileSize || hops.get(0).isTerminated()) {
+            for (Hop hop : hops) {
+                // The rest of the capture still reached the first hop; it is just left unparsed
+                hop.finish(hop.index == 0 ? fileSize : hop.received);
+            }
+            finished = true;
+            return;
+        }
+        if (window == null || position >= windowStart + window.capacity()) {
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, fileSize - windowStart));
+        }
+        int offset = (int) (position - windowStart);
+        int length = Math.min(CHUNK_SIZE, window.capacity() - offset);
+        window.get(offset, chunk, 0, length);
+        position += length;
+        hops.get(0).feed(chunk, length);
+    }
+
+    private final class Hop implements IncrementalRequestParser.Listener {
+        private final ProxyModel proxy;
+        private final int index;
+        private final ParserPlan plan;
+        private final IncrementalRequestParser parser;
+        private final List<LoadBalancingRule> rules;
+        private final boolean hasEnabledRules;
+        private Hop next;
+        private long emitted;
+        // Stream offset where the request currently being assembled starts
+        private long requestStart;
+        // Bytes fed to this hop so far
+        private long received;
+        // Parse error, reported once the end of the hop's stream is known
+        private String error;
+
+        Hop(ProxyModel proxy, int index) {
+            this.proxy = proxy;
+            this.index = index;
+            this.plan = ParserPlan.forModel(proxy.getParserSettings());
+            this.parser = new IncrementalRequestParser(plan, this);
+            this.rules = plan.getLoadBalancingRules();
+            boolean enabled = false;
+            for (LoadBalancingRule rule : rules) {
+                if (rule.isEnabled()) {
+                    enabled = true;
+                    break;
+                }
+            }
+            this.hasEnabledRules = enabled;
+        }
+
+        @Override
+        public void onRequest(byte[] request) {
+            long end = parser.getConsumedBytes();
+            emit(end, ParsedRequest.Status.COMPLETE, request.length, 0, null, false);
+            if (next != null && (!hasEnabledRules
+                    || ParserChainRunner.matchesForwardingRule(rules, request, next.proxy.getId()))) {
+                next.feed(request, request.length);
+            }
+        }
+
+        @Override
+        public void onBlocked(byte[] request, String triggeredSource, boolean closeConnection) {
+            emit(parser.getConsumedBytes(), ParsedRequest.Status.BLOCKED, request.length, 0, triggeredSource, closeConnection);
+        }
+
+        @Override
+        public void onError(String message, byte[] unparsed) {
+            // Like the whole-buffer parse, the error covers everything from the failed request to the end of
+            // the stream, and later input is not parsed; unparsed only holds the bytes buffered so far
+            error = message;
+        }
+
+        @Override
+        public void onIncomplete(IncrementalRequestParser.State state, byte[] unparsed, int missingBytes) {
+            if (state == IncrementalRequestParser.State.AWAITING_BODY) {
+                emit(requestStart + unparsed.length, ParsedRequest.Status.BODY_INCOMPLETE, -1, missingBytes, null, false);
+                return;
+            }
+            // Without a header end the whole-buffer parse still tries the tail, and reports it as an error if that fails
+            List<ParsedRequest> tail = ParserChainRunner.parseStream(plan, unparsed, true);
+            ParsedRequest.Status status = tail.isEmpty() ? ParsedRequest.Status.HEADERS_INCOMPLETE : tail.get(0).getStatus();
+            emit(requestStart + unparsed.length, status, -1, 0, tail.isEmpty() ? null : tail.get(0).getError(), false);
+        }
+
+        void feed(byte[] data, int length) {
+            received += length;
+            parser.feed(data, 0, length);
+        }
+
+        boolean isTerminated() {
+            IncrementalRequestParser.State state = parser.getState();
+            return state == IncrementalRequestParser.State.FAILED || state == IncrementalRequestParser.State.CLOSED;
+        }
+
+        // End of this hop's stream, at streamEnd
+        void finish(long streamEnd) {
+            parser.finish();
+            if (error != null) {
+                emit(streamEnd, ParsedRequest.Status.ERROR, -1, 0, error, false);
+            }
+        }
+
+        private void emit(long end, ParsedRequest.Status status, int parsedLength, int missingBytes,
+                          String detail, boolean connectionClosed) {
+            pending.add(new RequestBoundary(proxy.getId(), index, emitted++, requestStart, end, status,
+                    parsedLength, missingBytes, detail, connectionClosed));
+            requestStart = end;
+        }
+    }
+}
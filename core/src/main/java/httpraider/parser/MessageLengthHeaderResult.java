@@ -0,0 +1,42 @@
+package httpraider.parser;
+
+import java.util.List;
+
+public class MessageLengthHeaderResult {
+    private final List<String> headerLines;
+    private final ByteSlice body;
+    private final ByteSlice remaining;
+    private final String error;
+    private final int incompleteBodyBytes;
+    private final String chunkedIncompleteTag;
+    // False when a chunked body stopped before its last chunk (more bytes may complete it)
+    private final boolean bodyComplete;
+
+    public MessageLengthHeaderResult(List<String> headerLines, ByteSlice body, ByteSlice remaining, String error, int incompleteBodyBytes, String chunkedIncompleteTag, boolean bodyComplete) {
+        this.headerLines = headerLines;
+        this.body = body;
+        this.remaining = remaining;
+        this.error = error;
+        this.incompleteBodyBytes = incompleteBodyBytes;
+        this.chunkedIncompleteTag = chunkedIncompleteTag;
+        this.bodyComplete = bodyComplete;
+    }
+
+    public MessageLengthHeaderResult(List<String> headerLines, ByteSlice body, ByteSlice remaining, String error, int incompleteBodyBytes, String chunkedIncompleteTag) {
+        this(headerLines, body, remaining, error, incompleteBodyBytes, chunkedIncompleteTag, true);
+    }
+
+    public MessageLengthHeaderResult(List<String> headerLines, byte[] body, byte[] remaining, String error, int incompleteBodyBytes, String chunkedIncompleteTag) {
+        this(headerLines, ByteSlice.of(body), ByteSlice.of(remaining), error, incompleteBodyBytes, chunkedIncompleteTag);
+    }
+
+    public List<String> getHeaderLines() { return headerLines; }
+    public byte[] getBody() { return body.toByteArray(); }
+    public byte[] getRemaining() { return remaining.toByteArray(); }
+    public ByteSlice getBodySlice() { return body; }
+    public ByteSlice getRemainingSlice() { return remaining; }
+    public String getError() { return error; }
+    public int getIncompleteBodyBytes() { return incompleteBodyBytes; }
+    public String getChunkedIncompleteTag() { return chunkedIncompleteTag; }
+    public boolean isBodyComplete() { return bodyComplete; }
+}
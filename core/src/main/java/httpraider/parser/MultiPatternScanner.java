@@ -0,0 +1,179 @@
+package httpraider.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a fixed set of byte patterns.
+ * Finds, in a single pass, the leftmost match of any pattern; when several
+ * patterns start at the same offset the one with the lowest index wins.
+ * That is the same answer as running indexOf once per pattern and keeping
+ * the smallest index, or as a regex alternation {@code (?:p0|p1|...)}.
+ */
+public final class MultiPatternScanner {
+
+    private static final int ALPHABET = 256;
+
+    private final int patternCount;
+    private final byte[][] patterns;
+    private final int[] lengths;
+    private final int maxLength;
+    // Index of the first empty pattern (matches at every offset), or -1
+    private final int emptyPattern;
+
+    // goTo[state * 256 + b] -> next state (full DFA, failure links already folded in)
+    private final int[] goTo;
+    // Patterns recognised when entering a state, including those reached via failure links
+    private final int[][] outputs;
+
+    public MultiPatternScanner(byte[][] patterns) {
+        patternCount = patterns.length;
+        this.patterns = patterns;
+        lengths = new int[patternCount];
+        int max = 0;
+        int empty = -1;
+        int totalLength = 0;
+        for (int i = 0; i < patternCount; i++) {
+            lengths[i] = patterns[i].length;
+            max = Math.max(max, lengths[i]);
+            totalLength += lengths[i];
+            if (lengths[i] == 0 && empty == -1) empty = i;
+        }
+        maxLength = max;
+        emptyPattern = empty;
+
+        // Trie
+        int capacity = totalLength + 1;
+        int[] trie = new int[capacity * ALPHABET];
+        Arrays.fill(trie, -1);
+        List<List<Integer>> out = new ArrayList<>();
+        out.add(new ArrayList<>());
+        int states = 1;
+        for (int i = 0; i < patternCount; i++) {
+            if (lengths[i] == 0) continue;
+            int state = 0;
+            for (byte b : patterns[i]) {
+                int idx = state * ALPHABET + (b & 0xFF);
+                if (trie[idx] == -1) {
+                    trie[idx] = states++;
+                    out.add(new ArrayList<>());
+                }
+                state = trie[idx];
+            }
+            out.get(state).add(i);
+        }
+
+        // Failure links (BFS), turning the trie into a complete DFA
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int b = 0; b < ALPHABET; b++) {
+            int next = trie[b];
+            if (next == -1) {
+                trie[b] = 0;
+            } else {
+                fail[next] = 0;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            out.get(state).addAll(out.get(fail[state]));
+            for (int b = 0; b < ALPHABET; b++) {
+                int idx = state * ALPHABET + b;
+                int next = trie[idx];
+                if (next == -1) {
+                    trie[idx] = trie[fail[state] * ALPHABET + b];
+                } else {
+                    fail[next] = trie[fail[state] * ALPHABET + b];
+                    queue.add(next);
+                }
+            }
+        }
+
+        goTo = Arrays.copyOf(trie, states * ALPHABET);
+        outputs = new int[states][];
+        for (int s = 0; s < states; s++) {
+            List<Integer> o = out.get(s);
+            outputs[s] = new int[o.size()];
+            for (int k = 0; k < o.size(); k++) outputs[s][k] = o.get(k);
+        }
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    public int getPatternLength(int pattern) {
+        return lengths[pattern];
+    }
+
+    public int getMaxPatternLength() {
+        return maxLength;
+    }
+
+    /**
+     * Returns the absolute offset just past the leftmost match in data[from, to), or -1.
+     */
+    public int findEnd(byte[] data, int from, int to) {
+        long match = find(data, from, to);
+        if (match < 0) return -1;
+        return matchStart(match) + lengths[matchPattern(match)];
+    }
+
+    /**
+     * Leftmost match in data[from, to), packed as (start << 32 | pattern), or -1 if none.
+     * Use {@link #matchStart(long)} and {@link #matchPattern(long)} to unpack.
+     */
+    public long find(byte[] data, int from, int to) {
+        if (patternCount == 0 || from > to) return -1;
+        int bestStart = -1;
+        int bestPattern = -1;
+        if (emptyPattern != -1) {
+            bestStart = from;
+            bestPattern = emptyPattern;
+        }
+
+        int state = 0;
+        for (int i = from; i < to; i++) {
+            // Nothing starting at or before bestStart can still end past this point
+            if (bestStart != -1 && i >= bestStart + maxLength) break;
+            state = goTo[state * ALPHABET + (data[i] & 0xFF)];
+            for (int p : outputs[state]) {
+                int start = i - lengths[p] + 1;
+                if (bestStart == -1 || start < bestStart || (start == bestStart && p < bestPattern)) {
+                    bestStart = start;
+                    bestPattern = p;
+                }
+            }
+        }
+        if (bestStart == -1) return -1;
+        return ((long) bestStart << 32) | bestPattern;
+    }
+
+    /**
+     * True when bytes appended after {@code to} could still produce a match that beats
+     * {@code match} (an earlier start, or the same start with a lower pattern index):
+     * some such pattern starts in data[from, to) and data up to {@code to} is a proper prefix of it.
+     */
+    public boolean canBeOvertaken(byte[] data, int from, int to, long match) {
+        int bestStart = matchStart(match);
+        int bestPattern = matchPattern(match);
+        for (int s = Math.max(from, to - maxLength + 1); s <= bestStart && s < to; s++) {
+            for (int p = 0; p < patternCount; p++) {
+                if (s == bestStart && p >= bestPattern) break;
+                if (lengths[p] > to - s && Arrays.equals(data, s, to, patterns[p], 0, to - s)) return true;
+            }
+        }
+        return false;
+    }
+
+    public static int matchStart(long match) {
+        return (int) (match >>> 32);
+    }
+
+    public static int matchPattern(long match) {
+        return (int) match;
+    }
+}
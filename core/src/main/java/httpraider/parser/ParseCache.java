@@ -0,0 +1,213 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memoizes what a proxy's parser makes of a given input, so repeated chain simulations
+ * (one per proxy shown in a stream, every Test click) only parse each hop once.
+ * Entries are keyed by a SHA-256 digest of the input plus the {@link ParserPlan#getRevision()}
+ * of the proxy's settings, so saving the parser settings naturally misses the old entries.
+ * Least recently used entries are evicted once the retained bytes exceed the budget.
+ * On a miss, the latest input parsed with the same settings is compared with the new one and
+ * only the requests around the changed bytes are parsed again (edits in the editor usually
+ * touch one request of a pipelined payload). That base is the latest cached entry of those
+ * settings, so it counts against the budget and goes when the entry is evicted.
+ * Thread-safe; one instance per session.
+ */
+public final class ParseCache {
+
+    public static final long DEFAULT_BYTE_BUDGET = 64L * 1024 * 1024;
+
+    // Rough per-entry and per-request bookkeeping cost, on top of the retained byte arrays
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int REQUEST_OVERHEAD = 64;
+    // Settings revisions whose latest cached parse is remembered as a base for incremental re-parses
+    private static final int MAX_LATEST = 32;
+
+    private final long byteBudget;
+    private final LinkedHashMap<Key, CachedParse> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Key of the entry to re-parse from; only used while that entry is still cached
+    private final LinkedHashMap<LatestKey, Key> latest = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<LatestKey, Key> eldest) {
+            return size() > MAX_LATEST;
+        }
+    };
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long incrementalParses;
+
+    public ParseCache() {
+        this(DEFAULT_BYTE_BUDGET);
+    }
+
+    public ParseCache(long byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * Same result as {@code ParserChainRunner.parseRequestsForProxy(model, data)} (includeIncomplete)
+     * or its forwarding variant, computed once per input and settings revision.
+     * The returned list is shared and unmodifiable.
+     */
+    public List<ParsedRequest> parse(HttpParserModel model, byte[] data, boolean includeIncomplete) {
+        ParserPlan plan = ParserPlan.forModel(model);
+        Key key = new Key(digest(data), plan.getRevision(), includeIncomplete);
+
+        LatestKey latestKey = new LatestKey(plan.getRevision(), includeIncomplete);
+        CachedParse base;
+        synchronized (this) {
+            CachedParse cached = entries.get(key);
+            if (cached != null) {
+                hits++;
+                return cached.requests;
+            }
+            misses++;
+            Key baseKey = latest.get(latestKey);
+            base = baseKey != null ? entries.get(baseKey) : null;
+        }
+
+        // Parse outside the lock: hops of the same wave are simulated concurrently
+        List<ParsedRequest> parsed;
+        if (base != null) {
+            // Requests before the edit are kept, and the ones after it once parsing lines up with them again
+            parsed = ParserChainRunner.reparseStream(plan, base.requests, data, EditDelta.between(base.data, data), includeIncomplete);
+        } else {
+            parsed = ParserChainRunner.parseStream(plan, data, includeIncomplete);
+        }
+        List<ParsedRequest> requests = Collections.unmodifiableList(parsed);
+        long weight = weigh(data, requests);
+
+        synchronized (this) {
+            if (base != null) incrementalParses++;
+            // An input over the budget is not cached, and the previous base stays the latest one
+            if (weight <= byteBudget) {
+                if (!entries.containsKey(key)) {
+                    entries.put(key, new CachedParse(data, requests, weight));
+                    usedBytes += weight;
+                }
+                latest.put(latestKey, key);
+                evict();
+            }
+        }
+        return requests;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        latest.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() { return usedBytes; }
+    public synchronized int getEntryCount() { return entries.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    // Misses served by re-parsing only the part around the changed bytes
+    public synchronized long getIncrementalParses() { return incrementalParses; }
+    public long getByteBudget() { return byteBudget; }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, CachedParse>> it = entries.entrySet().iterator();
+        while (usedBytes > byteBudget && it.hasNext()) {
+            usedBytes -= it.next().getValue().weight;
+            it.remove();
+        }
+    }
+
+    // Parsed requests keep a reference to the input, plus their own bytes when rewritten
+    private static long weigh(byte[] data, List<ParsedRequest> requests) {
+        long weight = ENTRY_OVERHEAD + data.length;
+        for (ParsedRequest request : requests) {
+            weight += REQUEST_OVERHEAD;
+            if (request.isRewritten()) {
+                weight += request.getContent().length();
+            }
+        }
+        return weight;
+    }
+
+    private static byte[] digest(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class CachedParse {
+        // The parsed input, already retained by the requests and counted in the weight
+        final byte[] data;
+        final List<ParsedRequest> requests;
+        final long weight;
+
+        CachedParse(byte[] data, List<ParsedRequest> requests, long weight) {
+            this.data = data;
+            this.requests = requests;
+            this.weight = weight;
+        }
+    }
+
+    private static final class LatestKey {
+        private final long revision;
+        private final boolean includeIncomplete;
+
+        LatestKey(long revision, boolean includeIncomplete) {
+            this.revision = revision;
+            this.includeIncomplete = includeIncomplete;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof LatestKey)) return false;
+            LatestKey other = (LatestKey) o;
+            return revision == other.revision && includeIncomplete == other.includeIncomplete;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(revision) + (includeIncomplete ? 1 : 0);
+        }
+    }
+
+    private static final class Key {
+        private final byte[] digest;
+        private final long revision;
+        private final boolean includeIncomplete;
+        private final int hash;
+
+        Key(byte[] digest, long revision, boolean includeIncomplete) {
+            this.digest = digest;
+            this.revision = revision;
+            this.includeIncomplete = includeIncomplete;
+            this.hash = 31 * (31 * Arrays.hashCode(digest) + Long.hashCode(revision)) + (includeIncomplete ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return revision == other.revision
+                    && includeIncomplete == other.includeIncomplete
+                    && Arrays.equals(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
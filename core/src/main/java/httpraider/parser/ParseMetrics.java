@@ -0,0 +1,157 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-proxy timing and byte counts of every {@link ParserStage}, plus the forwarding rules
+ * evaluated when a hop routes its requests ({@link #ROUTING}). Collection is off by default:
+ * while it is, parses run without a hook and routing is not timed, so the only cost is one
+ * volatile read per parsed stream. Once enabled, every parse of a model (panels, chain simulation,
+ * batches) is recorded into that model's metrics; parses answered by the {@link ParseCache} are not.
+ * Safe to update from the simulation pool threads.
+ */
+public final class ParseMetrics implements ParserStage.Hook {
+
+    public static final String ROUTING = "Routing";
+
+    private static final Map<HttpParserModel, ParseMetrics> BY_MODEL = Collections.synchronizedMap(new WeakHashMap<>());
+    private static volatile boolean enabled;
+
+    /** Aggregated runs of one stage. */
+    public static final class StageStats {
+        private final String name;
+        private final int order;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder stops = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private StageStats(String name, int order) {
+            this.name = name;
+            this.order = order;
+        }
+
+        private void record(long nanos, long size, boolean proceed) {
+            calls.increment();
+            if (!proceed) stops.increment();
+            totalNanos.add(nanos);
+            bytes.add(size);
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+
+        public String getName() { return name; }
+        public long getCalls() { return calls.sum(); }
+        // Runs that ended parsing of the request (error, incomplete input, firewall block);
+        // for ROUTING, requests no forwarding rule matched
+        public long getStops() { return stops.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public long getMaxNanos() { return maxNanos.get(); }
+        // Size of the request as each run left it, summed
+        public long getBytes() { return bytes.sum(); }
+
+        public long getMeanNanos() {
+            long count = getCalls();
+            return count == 0 ? 0 : getTotalNanos() / count;
+        }
+    }
+
+    private final Map<String, StageStats> stages = new ConcurrentHashMap<>();
+    private final AtomicInteger nextOrder = new AtomicInteger();
+    private final ThreadLocal<long[]> stageStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    // Metrics of a model, created on first use; available whether or not collection is enabled
+    public static ParseMetrics forModel(HttpParserModel model) {
+        synchronized (BY_MODEL) {
+            return BY_MODEL.computeIfAbsent(model, m -> new ParseMetrics());
+        }
+    }
+
+    // Where parses of the model should report to, null while collection is disabled
+    static ParseMetrics active(HttpParserModel model) {
+        return enabled ? forModel(model) : null;
+    }
+
+    public static void resetAll() {
+        synchronized (BY_MODEL) {
+            for (ParseMetrics metrics : BY_MODEL.values()) {
+                metrics.reset();
+            }
+        }
+    }
+
+    @Override
+    public void beforeStage(ParserStage stage) {
+        stageStart.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    public void afterStage(ParserStage stage, boolean proceed) {
+        record(stage.getName(), System.nanoTime() - stageStart.get()[0], 0, proceed);
+    }
+
+    @Override
+    public void afterStage(ParserStage stage, RequestStep step, boolean proceed) {
+        long elapsed = System.nanoTime() - stageStart.get()[0];
+        record(stage.getName(), elapsed, step.getCurrentSize(), proceed);
+    }
+
+    public void record(String stageName, long nanos, long bytes, boolean proceed) {
+        StageStats stats = stages.get(stageName);
+        if (stats == null) {
+            stats = stages.computeIfAbsent(stageName, name -> new StageStats(name, nextOrder.getAndIncrement()));
+        }
+        stats.record(nanos, bytes, proceed);
+    }
+
+    // Stages in the order they first ran, i.e. pipeline order followed by routing
+    public List<StageStats> getStages() {
+        List<StageStats> list = new ArrayList<>(stages.values());
+        list.sort(Comparator.comparingInt(s -> s.order));
+        return list;
+    }
+
+    public StageStats getStage(String stageName) {
+        return stages.get(stageName);
+    }
+
+    public void reset() {
+        stages.clear();
+        nextOrder.set(0);
+    }
+
+    // Plain-text table, one line per stage
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-22s %10s %8s %12s %12s %12s %14s%n",
+                "Stage", "Calls", "Stops", "Total ms", "Mean us", "Max us", "Bytes"));
+        for (StageStats stats : getStages()) {
+            sb.append(String.format("%-22s %10d %8d %12.3f %12.2f %12.2f %14d%n",
+                    stats.getName(), stats.getCalls(), stats.getStops(), stats.getTotalNanos() / 1e6,
+                    stats.getMeanNanos() / 1e3, stats.getMaxNanos() / 1e3, stats.getBytes()));
+        }
+        return sb.toString();
+    }
+}
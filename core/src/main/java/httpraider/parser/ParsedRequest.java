@@ -0,0 +1,182 @@
+package httpraider.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One entry of a parsed stream: the parsed request (or the bytes it failed on),
+ * where it came from in the source buffer, and why parsing ended the way it did.
+ * The legacy textual markers ({@code <parsing_error:...>}, {@code <incomplete_request...>},
+ * {@code <WAF_RULE...>}) are only built on demand by {@link #toTaggedBytes()}.
+ */
+public final class ParsedRequest {
+
+    public enum Status {
+        // Parsed and accepted
+        COMPLETE,
+        // Parsed, but the header block ran to the end of the input without a delimiter
+        UNTERMINATED_HEADERS,
+        // Header/body delimiter never found
+        HEADERS_INCOMPLETE,
+        // Headers parsed, body shorter than announced
+        BODY_INCOMPLETE,
+        // Parsed and blocked by a firewall rule
+        BLOCKED,
+        // Could not be parsed with the current settings
+        ERROR
+    }
+
+    private final Status status;
+    private final byte[] source;
+    private final int start;
+    private final int end;
+    // Parsed request bytes; null when the content is source[start, end) unchanged
+    private final byte[] request;
+    private final int missingBytes;
+    private final String error;
+    private final String firewallSource;
+    private final boolean connectionClosed;
+    // The body ran into the end of the input before its terminator (chunked), so more input could extend it
+    private final boolean bodyTruncated;
+
+    private byte[] tagged;
+
+    private ParsedRequest(Status status, byte[] source, int start, int end, byte[] request,
+                          int missingBytes, String error, String firewallSource, boolean connectionClosed) {
+        this(status, source, start, end, request, missingBytes, error, firewallSource, connectionClosed, false);
+    }
+
+    private ParsedRequest(Status status, byte[] source, int start, int end, byte[] request, int missingBytes,
+                          String error, String firewallSource, boolean connectionClosed, boolean bodyTruncated) {
+        this.status = status;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.request = request;
+        this.missingBytes = missingBytes;
+        this.error = error;
+        this.firewallSource = firewallSource;
+        this.connectionClosed = connectionClosed;
+        this.bodyTruncated = bodyTruncated;
+    }
+
+    // Bytes that were not parsed at all (e.g. what the client proxy sends as-is)
+    public static ParsedRequest unparsed(byte[] data) {
+        return new ParsedRequest(Status.COMPLETE, data, 0, data.length, null, 0, null, null, false);
+    }
+
+    static ParsedRequest complete(byte[] source, int start, int end, byte[] request) {
+        return new ParsedRequest(Status.COMPLETE, source, start, end, request, 0, null, null, false);
+    }
+
+    static ParsedRequest unterminated(byte[] source, int start, int end, byte[] request) {
+        return new ParsedRequest(Status.UNTERMINATED_HEADERS, source, start, end, request, 0, null, null, false);
+    }
+
+    static ParsedRequest headersIncomplete(byte[] source, int start, int end) {
+        return new ParsedRequest(Status.HEADERS_INCOMPLETE, source, start, end, null, 0, null, null, false);
+    }
+
+    static ParsedRequest bodyIncomplete(byte[] source, int start, int end, byte[] partialRequest, int missingBytes) {
+        return new ParsedRequest(Status.BODY_INCOMPLETE, source, start, end, partialRequest, missingBytes, null, null, false);
+    }
+
+    static ParsedRequest blocked(byte[] source, int start, int end, byte[] request, String firewallSource, boolean connectionClosed) {
+        return new ParsedRequest(Status.BLOCKED, source, start, end, request, 0, null, firewallSource, connectionClosed);
+    }
+
+    static ParsedRequest error(byte[] source, int start, int end, String error) {
+        return new ParsedRequest(Status.ERROR, source, start, end, null, 0, error, null, false);
+    }
+
+    // Same entry over another buffer holding identical bytes in [start + shift, end + shift)
+    ParsedRequest rebase(byte[] newSource, int shift) {
+        if (newSource == source && shift == 0) return this;
+        return new ParsedRequest(status, newSource, start + shift, end + shift, request, missingBytes, error,
+                firewallSource, connectionClosed, bodyTruncated);
+    }
+
+    ParsedRequest withTruncatedBody() {
+        return new ParsedRequest(status, source, start, end, request, missingBytes, error, firewallSource,
+                connectionClosed, true);
+    }
+
+    boolean isBodyTruncated() {
+        return bodyTruncated;
+    }
+
+    public Status getStatus() { return status; }
+    public byte[] getSource() { return source; }
+    public int getStart() { return start; }
+    public int getEnd() { return end; }
+    public int getMissingBytes() { return missingBytes; }
+    public String getError() { return error; }
+    public boolean isBlocked() { return status == Status.BLOCKED; }
+    public String getFirewallSource() { return firewallSource; }
+    public boolean isConnectionClosed() { return connectionClosed; }
+
+    // Whether the parsed bytes differ from the source range (header rules, rewrites, re-encoding...)
+    public boolean isRewritten() {
+        return request != null;
+    }
+
+    // The parsed request without any status marker
+    public ByteSlice getContent() {
+        return request != null ? ByteSlice.of(request) : ByteSlice.range(source, start, end);
+    }
+
+    // The parsed request without any status marker, as a standalone array
+    public byte[] getBytes() {
+        if (request != null) return request;
+        if (start == 0 && end == source.length) return source;
+        return getContent().toByteArray();
+    }
+
+    /**
+     * Renders the entry the way the parser panels display it, with the status markers.
+     * Built on first use and cached.
+     */
+    public byte[] toTaggedBytes() {
+        if (tagged == null) {
+            tagged = buildTagged();
+        }
+        return tagged;
+    }
+
+    private byte[] buildTagged() {
+        switch (status) {
+            case UNTERMINATED_HEADERS:
+                return concat(getContent(), "<incomplete_request>");
+            case HEADERS_INCOMPLETE:
+                return concat("<incomplete_request:incomplete headers>", getContent());
+            case BODY_INCOMPLETE:
+                return concat("<incomplete_request:" + missingBytes + " body bytes missing>", getContent());
+            case BLOCKED:
+                String wafTag = "<WAF_RULE: the request was not forwarded as it hit a rule for \"" + firewallSource + "\">";
+                if (connectionClosed) {
+                    wafTag += "<CONNECTION_CLOSED_BY_WAF>";
+                }
+                return concat(getContent(), wafTag);
+            case ERROR:
+                return concat("<parsing_error:\"" + error + "\">", getContent());
+            case COMPLETE:
+            default:
+                return getBytes();
+        }
+    }
+
+    private static byte[] concat(String tag, ByteSlice content) {
+        byte[] tagBytes = tag.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] result = new byte[tagBytes.length + content.length()];
+        System.arraycopy(tagBytes, 0, result, 0, tagBytes.length);
+        content.copyTo(result, tagBytes.length);
+        return result;
+    }
+
+    private static byte[] concat(ByteSlice content, String tag) {
+        byte[] tagBytes = tag.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] result = new byte[content.length() + tagBytes.length];
+        content.copyTo(result, 0);
+        System.arraycopy(tagBytes, 0, result, content.length(), tagBytes.length);
+        return result;
+    }
+}
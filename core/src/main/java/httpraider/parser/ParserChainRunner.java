@@ -0,0 +1,938 @@
+package httpraider.parser;
+
+import com.google.gson.Gson;
+import httpraider.controller.engines.JSEngine;
+import httpraider.controller.engines.NativeRules;
+import httpraider.model.network.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+
+public class ParserChainRunner {
+
+    public static List<List<ParsedRequest>> parseOnlyCurrentProxyForPanel(ProxyModel currentProxy, byte[] payload) {
+        List<List<ParsedRequest>> groups = new ArrayList<>();
+        
+        // Client proxy should never parse - just return the raw payload
+        if (currentProxy.isClient()) {
+            List<ParsedRequest> rawRequest = new ArrayList<>();
+            rawRequest.add(ParsedRequest.unparsed(payload));
+            groups.add(rawRequest);
+        } else {
+            List<ParsedRequest> requests = parseRequestsForProxy(currentProxy.getParserSettings(), payload);
+            if (!requests.isEmpty()) {
+                groups.add(requests);
+            }
+        }
+        return groups;
+    }
+
+    public static List<List<ParsedRequest>> parseFinalGroupsForPanel(
+            ProxyModel currentProxy,
+            byte[] payload,
+            NetworkModel network,
+            ParseCache cache
+    ) {
+        // Hop results memoized for the session (cache may be null); use parseFinalGroupsForPanels for several proxies
+        Map<String, List<byte[]>> proxyPayloads = routeThroughChain(network, cache, payload, true);
+        return finalGroupsForProxy(currentProxy, payload, proxyPayloads, cache);
+    }
+
+    /**
+     * Groups shown for each of the given proxies, the same as calling parseFinalGroupsForPanel for each,
+     * but the payload is routed through the chain once for all of them. Keyed by the given proxies, in order.
+     */
+    public static Map<ProxyModel, List<List<ParsedRequest>>> parseFinalGroupsForPanels(
+            Collection<ProxyModel> proxies,
+            byte[] payload,
+            NetworkModel network,
+            ParseCache cache
+    ) {
+        Map<ProxyModel, List<List<ParsedRequest>>> groups = new LinkedHashMap<>();
+        if (proxies.isEmpty()) return groups;
+        Map<String, List<byte[]>> proxyPayloads = routeThroughChain(network, cache, payload, true);
+        for (ProxyModel proxy : proxies) {
+            groups.put(proxy, finalGroupsForProxy(proxy, payload, proxyPayloads, cache));
+        }
+        return groups;
+    }
+
+    /**
+     * Runs the payload through the chain from the client proxy (BFS over the forwarding graph) and
+     * returns, per proxy id, the requests that reached that proxy. Returns null when the model has no
+     * client proxy. With parallelWaves the proxies of each BFS wave are simulated on SIMULATION_POOL;
+     * batch callers that already run one payload per thread pass false.
+     */
+    static Map<String, List<byte[]>> routeThroughChain(NetworkModel network, ParseCache cache, byte[] payload,
+                                                       boolean parallelWaves) {
+        return routeThroughChain(network, cache, payload, parallelWaves, null);
+    }
+
+    /**
+     * Same, also filling origins (when not null) with where every payload that reached a proxy came from,
+     * in the same order as that proxy's payloads. The client's own payload has no origin.
+     */
+    static Map<String, List<byte[]>> routeThroughChain(NetworkModel network, ParseCache cache, byte[] payload,
+                                                       boolean parallelWaves, Map<String, List<Origin>> origins) {
+        return routeThroughChain(network, cache, payload, parallelWaves, origins, null);
+    }
+
+    /**
+     * Same, parsing the payload of a proxy that received only one with parser when not null: routing forwards
+     * the entries it returns except the incomplete ones, so a caller that frames every hop's input anyway
+     * (the payloads that reached it, read as one connection) parses it once.
+     */
+    static Map<String, List<byte[]>> routeThroughChain(NetworkModel network, ParseCache cache, byte[] payload,
+                                                       boolean parallelWaves, Map<String, List<Origin>> origins,
+                                                       PayloadParser parser) {
+        // Find the client proxy to start from
+        ProxyModel clientProxy = null;
+        for (ProxyModel proxy : network.getProxies()) {
+            if (proxy.isClient()) {
+                clientProxy = proxy;
+                break;
+            }
+        }
+        if (clientProxy == null) {
+            return null;
+        }
+
+        // BFS to process all paths from client
+        // Map: proxyId -> list of byte arrays (requests) that reached this proxy
+        Map<String, List<byte[]>> proxyPayloads = new HashMap<>();
+        proxyPayloads.put(clientProxy.getId(), Arrays.asList(payload));
+        
+        // Queue for BFS: contains proxy IDs to process
+        Queue<String> toProcess = new LinkedList<>();
+        toProcess.add(clientProxy.getId());
+        Set<String> processed = new HashSet<>();
+        
+        while (!toProcess.isEmpty()) {
+            // Every queued proxy already holds its final payloads (nothing is added to a proxy once it
+            // is queued), so the whole wave is simulated in parallel and then replayed in queue order
+            List<String> wave = new ArrayList<>(toProcess);
+            Map<String, HopSimulation> simulations = simulateWave(wave, processed, proxyPayloads, network, cache, parser, parallelWaves);
+
+            for (int w = 0; w < wave.size(); w++) {
+                String proxyId = toProcess.poll();
+                if (processed.contains(proxyId)) continue;
+                processed.add(proxyId);
+
+                HopSimulation simulation = simulations.get(proxyId);
+                if (simulation == null) continue;
+                List<ProxyModel> forwardConnections = simulation.forwardConnections;
+
+                // Process each payload through this proxy
+                for (int p = 0; p < simulation.payloads.size(); p++) {
+                    PayloadSimulation payloadResult = simulation.payloads.get(p);
+                    List<byte[]> allRequests = payloadResult.requests;
+
+                    if (forwardConnections.size() == 1 && !simulation.hasEnabledRules) {
+                        // Single forward connection and no rules: forward everything
+                        ProxyModel nextProxy = forwardConnections.get(0);
+                        // Only add if not already processed or queued to prevent cycles
+                        if (!processed.contains(nextProxy.getId()) && !toProcess.contains(nextProxy.getId())) {
+                            proxyPayloads.computeIfAbsent(nextProxy.getId(), k -> new ArrayList<>())
+                                        .addAll(allRequests);
+                            recordOrigins(origins, nextProxy.getId(), proxyId, p, payloadResult, 0, allRequests.size());
+                            toProcess.add(nextProxy.getId());
+                        }
+                    } else if (simulation.hasEnabledRules) {
+                        // Has rules: each request goes to the target of the first matching rule, if any
+                        for (int r = 0; r < allRequests.size(); r++) {
+                            String targetProxyId = payloadResult.targets[r];
+                            // If no rule matched, don't forward (when rules are enabled)
+                            if (targetProxyId == null) continue;
+                            // Only add if not already processed or queued to prevent cycles
+                            if (!processed.contains(targetProxyId) && !toProcess.contains(targetProxyId)) {
+                                proxyPayloads.computeIfAbsent(targetProxyId, k -> new ArrayList<>())
+                                            .add(allRequests.get(r));
+                                recordOrigins(origins, targetProxyId, proxyId, p, payloadResult, r, r + 1);
+                                toProcess.add(targetProxyId);
+                            }
+                        }
+                    } else if (forwardConnections.size() > 1) {
+                        // Multiple connections but no rules: this is likely a configuration error
+                        // Forward to first connection only to avoid duplication
+                        ProxyModel nextProxy = forwardConnections.get(0);
+                        // Only add if not already processed or queued to prevent cycles
+                        if (!processed.contains(nextProxy.getId()) && !toProcess.contains(nextProxy.getId())) {
+                            proxyPayloads.computeIfAbsent(nextProxy.getId(), k -> new ArrayList<>())
+                                        .addAll(allRequests);
+                            recordOrigins(origins, nextProxy.getId(), proxyId, p, payloadResult, 0, allRequests.size());
+                            toProcess.add(nextProxy.getId());
+                        }
+                    }
+                }
+            }
+        }
+        return proxyPayloads;
+    }
+
+    private static void recordOrigins(Map<String, List<Origin>> origins, String targetProxyId, String proxyId,
+                                      int payloadIndex, PayloadSimulation payloadResult, int from, int to) {
+        if (origins == null) return;
+        List<Origin> target = origins.computeIfAbsent(targetProxyId, k -> new ArrayList<>());
+        for (int r = from; r < to; r++) {
+            target.add(new Origin(proxyId, payloadIndex, payloadResult.entries != null ? payloadResult.entries.get(r) : null));
+        }
+    }
+
+    // The payloads that reached a non-client proxy, read as one connection
+    static byte[] concatenate(List<byte[]> payloads) {
+        if (payloads.size() == 1) return payloads.get(0);
+        int totalSize = 0;
+        for (byte[] payload : payloads) {
+            totalSize += payload.length;
+        }
+        byte[] concatenatedData = new byte[totalSize];
+        int offset = 0;
+        for (byte[] payload : payloads) {
+            System.arraycopy(payload, 0, concatenatedData, offset, payload.length);
+            offset += payload.length;
+        }
+        return concatenatedData;
+    }
+
+    /**
+     * Groups shown for a proxy once the chain was simulated with {@link #routeThroughChain}:
+     * the raw payloads for the client, otherwise everything that reached the proxy parsed as one stream.
+     * Without a client proxy (proxyPayloads null) the payload is parsed directly.
+     */
+    static List<List<ParsedRequest>> finalGroupsForProxy(ProxyModel currentProxy, byte[] payload,
+                                                         Map<String, List<byte[]>> proxyPayloads, ParseCache cache) {
+        if (proxyPayloads == null) {
+            // No client proxy found, parse directly
+            List<List<ParsedRequest>> groups = new ArrayList<>();
+            List<ParsedRequest> requests = parseRequestsForProxy(cache, currentProxy.getParserSettings(), payload, true);
+            if (!requests.isEmpty()) {
+                groups.add(requests);
+            }
+            return groups;
+        }
+
+        // Get the payloads that reached the target proxy
+        List<byte[]> targetPayloads = proxyPayloads.getOrDefault(currentProxy.getId(), new ArrayList<>());
+        
+        // Parse the final requests for display (unless it's the client proxy)
+        List<List<ParsedRequest>> finalGroups = new ArrayList<>();
+        if (currentProxy.isClient()) {
+            // Client proxy should never parse - just return the raw payloads
+            for (byte[] data : targetPayloads) {
+                List<ParsedRequest> rawGroup = new ArrayList<>();
+                rawGroup.add(ParsedRequest.unparsed(data));
+                finalGroups.add(rawGroup);
+            }
+        } else {
+            // Non-client proxies: concatenate all payloads to allow cross-pipeline completion
+            if (!targetPayloads.isEmpty()) {
+                // Concatenate all payloads into one continuous stream
+                byte[] concatenatedData = concatenate(targetPayloads);
+
+                // Parse the concatenated data as one continuous stream
+                List<ParsedRequest> requests = parseRequestsForProxy(cache, currentProxy.getParserSettings(), concatenatedData, false);
+                if (!requests.isEmpty()) {
+                    finalGroups.add(requests);
+                }
+            }
+        }
+        
+        return finalGroups;
+    }
+
+
+
+    // What one proxy does with the payloads that reached it, computed off the UI thread
+    private static final class HopSimulation {
+        final List<ProxyModel> forwardConnections;
+        final boolean hasEnabledRules;
+        final List<PayloadSimulation> payloads = new ArrayList<>();
+
+        HopSimulation(List<ProxyModel> forwardConnections, boolean hasEnabledRules) {
+            this.forwardConnections = forwardConnections;
+            this.hasEnabledRules = hasEnabledRules;
+        }
+    }
+
+    private static final class PayloadSimulation {
+        final List<byte[]> requests;
+        // Entries the requests were built from, null when the payload is forwarded unparsed (client)
+        final List<ParsedRequest> entries;
+        // Target proxy of the first matching load-balancing rule per request (null: not forwarded);
+        // only set when the proxy has enabled rules
+        final String[] targets;
+
+        PayloadSimulation(List<byte[]> requests, List<ParsedRequest> entries, String[] targets) {
+            this.requests = requests;
+            this.entries = entries;
+            this.targets = targets;
+        }
+    }
+
+    /**
+     * Where one payload that reached a proxy came from: the proxy that forwarded it, which of that
+     * proxy's payloads it was parsed from, and the entry it was built from (offsets into that payload);
+     * entry is null when the payload was forwarded unparsed, as the client does.
+     */
+    static final class Origin {
+        final String proxyId;
+        final int payloadIndex;
+        final ParsedRequest entry;
+
+        Origin(String proxyId, int payloadIndex, ParsedRequest entry) {
+            this.proxyId = proxyId;
+            this.payloadIndex = payloadIndex;
+            this.entry = entry;
+        }
+    }
+
+    // Parses a payload that reached a proxy, incomplete entries included (see parseStream with includeIncomplete)
+    interface PayloadParser {
+        List<ParsedRequest> parse(ProxyModel proxy, byte[] data);
+    }
+
+    static final ForkJoinPool SIMULATION_POOL = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * Parses and routes every payload of every proxy of a BFS wave, on SIMULATION_POOL when parallel.
+     * Graph lookups happen on the calling thread; tasks only parse and evaluate rules,
+     * and results are collected in submission order so the merge is deterministic.
+     */
+    private static Map<String, HopSimulation> simulateWave(List<String> wave, Set<String> processed,
+                                                           Map<String, List<byte[]>> proxyPayloads,
+                                                           NetworkModel network, ParseCache cache,
+                                                           PayloadParser parser, boolean parallel) {
+        Map<String, HopSimulation> simulations = new HashMap<>();
+        List<Callable<PayloadSimulation>> tasks = new ArrayList<>();
+        List<HopSimulation> taskOwners = new ArrayList<>();
+
+        for (String proxyId : wave) {
+            if (processed.contains(proxyId) || simulations.containsKey(proxyId)) continue;
+
+            ProxyModel proxy = network.getProxy(proxyId);
+            if (proxy == null) continue;
+
+            List<byte[]> payloadsForThisProxy = proxyPayloads.get(proxyId);
+            if (payloadsForThisProxy == null || payloadsForThisProxy.isEmpty()) continue;
+
+            // Get forward connections (excluding client)
+            List<ProxyModel> forwardConnections = network.getDirectConnections(proxyId)
+                .stream()
+                .filter(p -> !p.isClient())
+                .collect(Collectors.toList());
+
+            if (forwardConnections.isEmpty()) continue;
+            // Connections are undirected: the way back to proxies already simulated leads nowhere,
+            // and when that is the only way out, nothing this proxy parses would be forwarded
+            boolean deadEnd = true;
+            for (ProxyModel next : forwardConnections) {
+                if (!processed.contains(next.getId())) {
+                    deadEnd = false;
+                    break;
+                }
+            }
+            if (deadEnd) continue;
+
+            // Check if proxy has enabled rules
+            List<LoadBalancingRule> rules = ParserPlan.forModel(proxy.getParserSettings()).getLoadBalancingRules();
+            boolean hasEnabledRules = false;
+            for (LoadBalancingRule rule : rules) {
+                if (rule.isEnabled()) {
+                    hasEnabledRules = true;
+                    break;
+                }
+            }
+
+            HopSimulation simulation = new HopSimulation(forwardConnections, hasEnabledRules);
+            simulations.put(proxyId, simulation);
+            boolean routeByRules = hasEnabledRules;
+            // Several payloads are parsed one by one here, which is not what the proxy's input reads as
+            PayloadParser payloadParser = payloadsForThisProxy.size() == 1 ? parser : null;
+            for (byte[] data : payloadsForThisProxy) {
+                tasks.add(() -> simulatePayload(cache, payloadParser, proxy, data, routeByRules ? rules : null, forwardConnections));
+                taskOwners.add(simulation);
+            }
+        }
+
+        List<PayloadSimulation> results = new ArrayList<>(tasks.size());
+        if (!parallel || tasks.size() == 1) {
+            for (Callable<PayloadSimulation> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        } else if (!tasks.isEmpty()) {
+            for (Future<PayloadSimulation> future : SIMULATION_POOL.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Chain simulation interrupted", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+                    if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        for (int i = 0; i < results.size(); i++) {
+            taskOwners.get(i).payloads.add(results.get(i));
+        }
+        return simulations;
+    }
+
+    private static PayloadSimulation simulatePayload(ParseCache cache, PayloadParser parser, ProxyModel proxy, byte[] data,
+                                                     List<LoadBalancingRule> rules, List<ProxyModel> forwardConnections) {
+        List<byte[]> allRequests;
+        List<ParsedRequest> entries = null;
+        // Client doesn't parse - it just forwards the raw payload
+        if (proxy.isClient()) {
+            allRequests = Arrays.asList(data);
+        } else {
+            // Parse requests but DON'T forward incomplete for intermediate proxies
+            entries = parser != null ? withoutIncomplete(parser.parse(proxy, data))
+                    : parseRequestsForProxy(cache, proxy.getParserSettings(), data, false);
+            allRequests = toTaggedBytes(entries);
+        }
+        if (rules == null) {
+            return new PayloadSimulation(allRequests, entries, null);
+        }
+
+        ParseMetrics metrics = proxy.isClient() ? null : ParseMetrics.active(proxy.getParserSettings());
+        String[] targets = new String[allRequests.size()];
+        for (int r = 0; r < allRequests.size(); r++) {
+            long started = metrics != null ? System.nanoTime() : 0;
+            // Tokenized once, shared by every rule evaluated for this request
+            HeaderIndex index = HeaderIndex.ofRequest(allRequests.get(r));
+            for (LoadBalancingRule rule : rules) {
+                if (!rule.isEnabled()) continue;
+                String targetProxyId = rule.getForwardToProxyId();
+                if (targetProxyId == null) continue;
+
+                // Check if target is in forward connections
+                boolean connected = false;
+                for (ProxyModel p : forwardConnections) {
+                    if (p.getId().equals(targetProxyId)) {
+                        connected = true;
+                        break;
+                    }
+                }
+                if (connected && ruleMatchesRequest(rule, index)) {
+                    targets[r] = targetProxyId;
+                    break; // First matching rule wins
+                }
+            }
+            if (metrics != null) {
+                metrics.record(ParseMetrics.ROUTING, System.nanoTime() - started, allRequests.get(r).length, targets[r] != null);
+            }
+        }
+        return new PayloadSimulation(allRequests, entries, targets);
+    }
+
+    // The entries of a parse with includeIncomplete that a parse without it returns
+    private static List<ParsedRequest> withoutIncomplete(List<ParsedRequest> entries) {
+        List<ParsedRequest> result = new ArrayList<>(entries.size());
+        for (ParsedRequest entry : entries) {
+            ParsedRequest.Status status = entry.getStatus();
+            if (status != ParsedRequest.Status.HEADERS_INCOMPLETE && status != ParsedRequest.Status.BODY_INCOMPLETE) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Opens a capture file for streaming through the given chain (client first); see {@link MappedChainStream}.
+     * The caller must close the returned stream.
+     */
+    public static MappedChainStream streamFile(Path capture, List<ProxyModel> chain) throws IOException {
+        return new MappedChainStream(capture, chain);
+    }
+
+    /**
+     * Streams a capture file through the chain and writes one JSON line per request boundary to output.
+     * Returns the number of boundaries written.
+     */
+    public static long streamFileBoundaries(Path capture, List<ProxyModel> chain, Path output) throws IOException {
+        Gson gson = new Gson();
+        try (MappedChainStream stream = new MappedChainStream(capture, chain);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            long count = 0;
+            while (stream.hasNext()) {
+                writer.write(gson.toJson(stream.next()));
+                writer.newLine();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    public static List<byte[]> parseRequestsForProxyRaw(HttpParserModel model, byte[] data) {
+        return toTaggedBytes(parseRequestsForProxy(model, data, true));
+    }
+
+    private static List<byte[]> toTaggedBytes(List<ParsedRequest> parsed) {
+        List<byte[]> results = new ArrayList<>(parsed.size());
+        for (ParsedRequest request : parsed) {
+            results.add(request.toTaggedBytes());
+        }
+        return results;
+    }
+
+    public static List<ParsedRequest> parseRequestsForProxy(HttpParserModel model, byte[] data) {
+        return parseRequestsForProxy(model, data, true);
+    }
+
+    // Same as parseRequestsForProxy, reporting every stage run to the hook (null for none)
+    public static List<ParsedRequest> parseRequestsForProxy(HttpParserModel model, byte[] data, ParserStage.Hook hook) {
+        return parseStream(ParserPlan.forModel(model), data, StreamMode.TEST, hook);
+    }
+
+    // Internal method with option to include incomplete requests (for testing) or exclude them (for forwarding)
+    private static List<ParsedRequest> parseRequestsForProxy(HttpParserModel model, byte[] data, boolean includeIncomplete) {
+        return parseStream(ParserPlan.forModel(model), data, includeIncomplete ? StreamMode.TEST : StreamMode.FORWARD, null);
+    }
+
+    // Goes through the session cache when there is one
+    private static List<ParsedRequest> parseRequestsForProxy(ParseCache cache, HttpParserModel model, byte[] data, boolean includeIncomplete) {
+        if (cache == null) {
+            return parseRequestsForProxy(model, data, includeIncomplete);
+        }
+        return cache.parse(model, data, includeIncomplete);
+    }
+
+    static List<ParsedRequest> parseStream(ParserPlan plan, byte[] data, boolean includeIncomplete) {
+        return parseStream(plan, data, includeIncomplete, null);
+    }
+
+    static List<ParsedRequest> parseStream(ParserPlan plan, byte[] data, boolean includeIncomplete, ParserStage.Hook hook) {
+        return parseStream(plan, data, includeIncomplete ? StreamMode.TEST : StreamMode.FORWARD, hook);
+    }
+
+    /**
+     * Re-parses a payload after an edit, given the entries parsed from the payload before the edit
+     * (same settings, includeIncomplete). Requests that end before the edit are kept as they were and
+     * parsing resumes where the last of them ends; once it reaches a request start that the previous parse
+     * also had past the edit, the remaining entries are taken over, moved by the edit's shift.
+     * A null delta means the payload did not change.
+     */
+    public static List<ParsedRequest> reparseRequestsForProxy(HttpParserModel model, List<ParsedRequest> previous,
+                                                              byte[] data, EditDelta delta) {
+        return reparseStream(ParserPlan.forModel(model), previous, data, delta, true);
+    }
+
+    // Remembers when a chunked body was cut short by the end of the input, which makes the entry depend on later bytes
+    private static ParsedRequest bodyState(RequestStep step, ParsedRequest request) {
+        return step.lenResult.isBodyComplete() ? request : request.withTruncatedBody();
+    }
+
+    static List<ParsedRequest> reparseStream(ParserPlan plan, List<ParsedRequest> previous, byte[] data,
+                                             EditDelta delta, boolean includeIncomplete) {
+        List<ParsedRequest> results = new ArrayList<>();
+        if (delta == null) {
+            for (ParsedRequest request : previous) {
+                results.add(request.rebase(data, 0));
+            }
+            return results;
+        }
+        int resumeAt = 0;
+        // The message-length script sees every byte after the headers, so no request is independent of an edit
+        if (!plan.isUseMessageLengthJs()) {
+            for (ParsedRequest request : previous) {
+                // Only requests that ended strictly before the edit and let parsing continue after them
+                // (a request ending at the edit offset may have been cut short by the end of the data)
+                boolean continued = !request.isBodyTruncated()
+                        && (request.getStatus() == ParsedRequest.Status.COMPLETE
+                            || (request.getStatus() == ParsedRequest.Status.BLOCKED && !request.isConnectionClosed()));
+                if (!continued || request.getStart() != resumeAt || request.getEnd() >= delta.getOffset()) break;
+                results.add(request.rebase(data, 0));
+                resumeAt = request.getEnd();
+            }
+        }
+        return parseStream(plan, data, resumeAt, results, includeIncomplete ? StreamMode.TEST : StreamMode.FORWARD, null,
+                new Resync(previous, delta));
+    }
+
+    /**
+     * The entries of the parse before an edit that start in the unchanged bytes after it. Parsing from a
+     * position only depends on the bytes from there to the end, so when the new parse reaches the start of
+     * one of them (moved by the shift), it and every later entry come out the same as before.
+     */
+    private static final class Resync {
+        private final List<ParsedRequest> previous;
+        // First position in the new payload after the edited bytes
+        private final int editEnd;
+        private final int shift;
+
+        Resync(List<ParsedRequest> previous, EditDelta delta) {
+            this.previous = previous;
+            this.editEnd = delta.getOffset() + delta.getInsertedLength();
+            this.shift = delta.getShift();
+        }
+
+        // Index of the previous entry starting where the new parse is about to start, or -1
+        int indexAt(int pos) {
+            if (pos < editEnd) return -1;
+            int oldPos = pos - shift;
+            int low = 0;
+            int high = previous.size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int start = previous.get(mid).getStart();
+                if (start < oldPos) low = mid + 1;
+                else if (start > oldPos) high = mid - 1;
+                else return mid;
+            }
+            return -1;
+        }
+
+        void appendFrom(int index, byte[] data, List<ParsedRequest> results) {
+            for (int i = index; i < previous.size(); i++) {
+                results.add(previous.get(i).rebase(data, shift));
+            }
+        }
+    }
+
+    public static List<byte[]> parseValidRequestsForProxyRaw(HttpParserModel model, byte[] data) {
+        List<ParsedRequest> parsed = parseStream(ParserPlan.forModel(model), data, StreamMode.VALID, null);
+        List<byte[]> valid = new ArrayList<>(parsed.size());
+        for (ParsedRequest request : parsed) {
+            // Don't add blocked requests to valid list
+            if (request.getStatus() == ParsedRequest.Status.COMPLETE) {
+                valid.add(request.getBytes());
+            }
+        }
+        return valid;
+    }
+
+    private enum StreamMode {
+        // Everything, including incomplete requests and errors (parser panels)
+        TEST(false, true),
+        // Like TEST, without incomplete requests (what a proxy forwards)
+        FORWARD(false, false),
+        // Only the prefix of fully delimited requests: unterminated headers, incomplete bodies
+        // and parse errors all end the stream without an entry
+        VALID(true, false);
+
+        final boolean requireHeaderEnd;
+        final boolean includeIncomplete;
+
+        StreamMode(boolean requireHeaderEnd, boolean includeIncomplete) {
+            this.requireHeaderEnd = requireHeaderEnd;
+            this.includeIncomplete = includeIncomplete;
+        }
+    }
+
+    // The single loop behind every whole-buffer parse
+    private static List<ParsedRequest> parseStream(ParserPlan plan, byte[] data, StreamMode mode, ParserStage.Hook hook) {
+        return parseStream(plan, data, 0, new ArrayList<>(), mode, hook);
+    }
+
+    // Parses data[from, end) and appends the entries to results (which already covers data[0, from))
+    private static List<ParsedRequest> parseStream(ParserPlan plan, byte[] data, int from, List<ParsedRequest> results,
+                                                   StreamMode mode, ParserStage.Hook hook) {
+        return parseStream(plan, data, from, results, mode, hook, null);
+    }
+
+    // Same, taking over the entries of a previous parse once it reaches one of them (see Resync)
+    private static List<ParsedRequest> parseStream(ParserPlan plan, byte[] data, int from, List<ParsedRequest> results,
+                                                   StreamMode mode, ParserStage.Hook hook, Resync resync) {
+        // Single backing buffer: every step works on offsets into data, bytes are only copied when a request is emitted
+        int pos = from;
+        final int end = data.length;
+        if (hook == null) {
+            hook = plan.activeMetrics();
+        }
+
+        while (pos < end) {
+            if (resync != null) {
+                int index = resync.indexAt(pos);
+                if (index >= 0) {
+                    resync.appendFrom(index, data, results);
+                    break;
+                }
+            }
+            RequestStep step = RequestStep.parse(plan, data, pos, end, mode.requireHeaderEnd, false, hook);
+
+            if (mode == StreamMode.VALID && step.outcome != RequestStep.Outcome.REQUEST) {
+                break;
+            }
+
+            if (step.outcome == RequestStep.Outcome.ERROR) {
+                results.add(ParsedRequest.error(data, pos, end, step.error));
+                break;
+            }
+
+            if (step.outcome == RequestStep.Outcome.HEADERS_INCOMPLETE) {
+                // Headers are incomplete
+                if (mode.includeIncomplete) {
+                    results.add(ParsedRequest.headersIncomplete(data, pos, end));
+                }
+                // Stop processing this stream - the next data concatenation should complete it
+                break;
+            }
+
+            if (step.outcome == RequestStep.Outcome.BODY_INCOMPLETE) {
+                if (mode.includeIncomplete) {
+                    // Header block as parsed followed by the partial body
+                    StringBuilder headerBlock = new StringBuilder();
+                    for (String line : step.headerLines) {
+                        headerBlock.append(line);
+                    }
+                    byte[] headerBytes = headerBlock.toString().getBytes(StandardCharsets.ISO_8859_1);
+                    ByteSlice partialBody = step.body;
+                    byte[] partialRequest = new byte[headerBytes.length + partialBody.length()];
+                    System.arraycopy(headerBytes, 0, partialRequest, 0, headerBytes.length);
+                    partialBody.copyTo(partialRequest, headerBytes.length);
+                    results.add(ParsedRequest.bodyIncomplete(data, pos, step.remaining.offset(), partialRequest, step.missingBytes));
+                }
+
+                // Try to find more complete requests after it
+                ByteSlice skipData = step.remaining;
+
+                if (!skipData.isEmpty()) {
+                    // Earliest "<method> " token in the remaining bytes, over the proxy's known methods
+                    long match = plan.getRequestStartScanner().find(data, skipData.offset(), skipData.end());
+                    if (match >= 0) {
+                        // Found the next request start, skip to it
+                        pos = MultiPatternScanner.matchStart(match);
+                        continue;
+                    }
+                }
+
+                // No more data to process
+                break;
+            }
+
+            byte[] rawRequest = step.request;
+            ByteSlice afterBody = step.remaining;
+
+            // Check firewall rules before adding the request
+            RequestStep.FirewallCheckResult firewallResult = step.firewall;
+            if (firewallResult.blocked) {
+                results.add(bodyState(step, ParsedRequest.blocked(data, pos, afterBody.offset(), rawRequest,
+                        firewallResult.triggeredSource, firewallResult.closeConnection)));
+                
+                // If connection should be closed, stop processing further requests
+                if (firewallResult.closeConnection) {
+                    break;
+                }
+                // Continue processing next request if connection not closed
+                pos = afterBody.offset();
+                if (!afterBody.isEmpty()) {
+                    continue;
+                } else {
+                    break;
+                }
+            }
+
+            if (!afterBody.isEmpty()) {
+                results.add(bodyState(step, ParsedRequest.complete(data, pos, afterBody.offset(), rawRequest)));
+                pos = afterBody.offset();
+                continue;
+            }
+
+            if (!step.headerTerminated) {
+                results.add(ParsedRequest.unterminated(data, pos, afterBody.offset(), rawRequest));
+            } else {
+                results.add(bodyState(step, ParsedRequest.complete(data, pos, afterBody.offset(), rawRequest)));
+            }
+            break;
+        }
+        return results;
+    }
+
+    static boolean matchesForwardingRule(List<LoadBalancingRule> rules, byte[] request, String targetProxyId) {
+        if (rules == null || rules.isEmpty()) return false;
+        HeaderIndex index = null;
+        for (LoadBalancingRule rule : rules) {
+            if (!rule.isEnabled()) continue;
+            if (rule.getForwardToProxyId() == null) continue;
+            if (!rule.getForwardToProxyId().equals(targetProxyId)) continue;
+            if (index == null) index = HeaderIndex.ofRequest(request);
+            if (ruleMatchesRequest(rule, index)) return true;
+        }
+        return false;
+    }
+
+
+    private static final int HOST_HASH = HeaderIndex.nameHash("host");
+    private static final int COOKIE_HASH = HeaderIndex.nameHash("cookie");
+
+    // index is built with HeaderIndex.ofRequest: CRLF-separated header block and body
+    private static boolean ruleMatchesRequest(httpraider.model.network.LoadBalancingRule rule, HeaderIndex index) {
+        String body = index.body();
+
+        switch (rule.getRuleType()) {
+            case URL:
+                String url = extractUrlFromRequestLine(index);
+                if (url == null) return false;
+                String urlPattern = rule.getPattern();
+                if (urlPattern == null) return false;
+                MatchMode matchOpt = rule.getMatchOption();
+                if (matchOpt == null) matchOpt = MatchMode.EXACT;
+                switch (matchOpt) {
+                    case PREFIX: return url.startsWith(urlPattern);
+                    case SUFFIX: return url.endsWith(urlPattern);
+                    case EXACT:  return url.equals(urlPattern);
+                    case ANY_MATCH: return url.contains(urlPattern);
+                    default:     return false;
+                }
+            case HEADERS:
+                String headerPattern = rule.getPattern();
+                HeaderField field = rule.getHeaderField();
+                if (field == HeaderField.NAME_VALUE) {
+                    String namePattern = rule.getHeaderNamePattern();
+                    String valuePattern = rule.getHeaderValuePattern();
+                    MatchMode nameMode = rule.getHeaderNameMatchMode();
+                    MatchMode valueMode = rule.getHeaderValueMatchMode();
+                    for (int i = 0; i < index.size(); i++) {
+                        if (index.hasName(i)) {
+                            String name = index.name(i);
+                            String value = index.value(i);
+                            boolean nameMatch = false, valueMatch = false;
+                            if (namePattern != null && nameMode != null) {
+                                switch (nameMode) {
+                                    case PREFIX:    nameMatch = name.startsWith(namePattern); break;
+                                    case SUFFIX:    nameMatch = name.endsWith(namePattern); break;
+                                    case EXACT:     nameMatch = name.equals(namePattern); break;
+                                    case ANY_MATCH: nameMatch = name.contains(namePattern); break;
+                                }
+                            }
+                            if (valuePattern != null && valueMode != null) {
+                                switch (valueMode) {
+                                    case PREFIX:    valueMatch = value.startsWith(valuePattern); break;
+                                    case SUFFIX:    valueMatch = value.endsWith(valuePattern); break;
+                                    case EXACT:     valueMatch = value.equals(valuePattern); break;
+                                    case ANY_MATCH: valueMatch = value.contains(valuePattern); break;
+                                }
+                            }
+                            if (nameMatch && valueMatch) return true;
+                        }
+                    }
+                    return false;
+                } else {
+                    MatchMode mode = rule.getMatchMode();
+                    for (int i = 0; i < index.size(); i++) {
+                        String testStr = null;
+                        if (field == HeaderField.NAME && index.hasName(i)) testStr = index.name(i);
+                        else if (field == HeaderField.VALUE && index.hasName(i)) testStr = index.value(i);
+                        else if (field == HeaderField.HEADER_LINE) testStr = index.line(i);
+                        if (testStr != null) {
+                            switch (mode) {
+                                case PREFIX:    if (testStr.startsWith(headerPattern)) return true; break;
+                                case SUFFIX:    if (testStr.endsWith(headerPattern))   return true; break;
+                                case EXACT:     if (testStr.equals(headerPattern))      return true; break;
+                                case ANY_MATCH: if (testStr.contains(headerPattern))    return true; break;
+                            }
+                        }
+                    }
+                    return false;
+                }
+            case HOST:
+                for (int i = 0; i < index.size(); i++) {
+                    if (index.startsWithName(i, "host", HOST_HASH)) {
+                        String hostValue = index.line(i).substring(5).trim();
+                        String pattern = rule.getHostPattern();
+                        MatchMode m = rule.getHostMatchMode();
+                        if (pattern == null || m == null) continue;
+                        switch (m) {
+                            case PREFIX:    if (hostValue.startsWith(pattern)) return true; break;
+                            case SUFFIX:    if (hostValue.endsWith(pattern))   return true; break;
+                            case EXACT:     if (hostValue.equals(pattern))      return true; break;
+                            case ANY_MATCH: if (hostValue.contains(pattern))    return true; break;
+                        }
+                    }
+                }
+                return false;
+            case COOKIES:
+                for (int i = 0; i < index.size(); i++) {
+                    if (index.startsWithName(i, "cookie", COOKIE_HASH)) {
+                        String cookieStr = index.line(i).substring(7).trim();
+                        String[] cookies = cookieStr.split(";");
+                        for (String cookie : cookies) {
+                            String[] kv = cookie.trim().split("=", 2);
+                            String cname = kv.length > 0 ? kv[0].trim() : "";
+                            String cval = kv.length > 1 ? kv[1].trim() : "";
+                            boolean nameMatch = false, valueMatch = false;
+                            String namePattern = rule.getCookieNamePattern();
+                            String valuePattern = rule.getCookieValuePattern();
+                            MatchMode nameMode = rule.getCookieNameMatchMode();
+                            MatchMode valueMode = rule.getCookieValueMatchMode();
+                            if (namePattern != null && nameMode != null) {
+                                switch (nameMode) {
+                                    case PREFIX:    nameMatch = cname.startsWith(namePattern); break;
+                                    case SUFFIX:    nameMatch = cname.endsWith(namePattern); break;
+                                    case EXACT:     nameMatch = cname.equals(namePattern); break;
+                                    case ANY_MATCH: nameMatch = cname.contains(namePattern); break;
+                                }
+                            }
+                            if (valuePattern != null && valueMode != null) {
+                                switch (valueMode) {
+                                    case PREFIX:    valueMatch = cval.startsWith(valuePattern); break;
+                                    case SUFFIX:    valueMatch = cval.endsWith(valuePattern); break;
+                                    case EXACT:     valueMatch = cval.equals(valuePattern); break;
+                                    case ANY_MATCH: valueMatch = cval.contains(valuePattern); break;
+                                }
+                            }
+                            if (nameMatch && valueMatch) return true;
+                        }
+                    }
+                }
+                return false;
+            case METHOD:
+                if (index.size() == 0) return false;
+                String[] methodParts = index.requestLineParts();
+                if (methodParts.length == 0) return false;
+                String method = methodParts[0];
+                String mPattern = rule.getPattern();
+                return mPattern != null && method.equalsIgnoreCase(mPattern);
+            case BODY:
+                String bodyPattern = rule.getPattern();
+                return bodyPattern != null && body.matches(bodyPattern);
+            case CUSTOM:
+                return evaluateJsRule(rule, index.headersBlock(), body);
+            default:
+                return false;
+        }
+    }
+
+
+    private static String extractUrlFromRequestLine(HeaderIndex index) {
+        if (index.size() == 0) return null;
+        String[] reqParts = index.requestLineParts();
+        return reqParts.length > 1 ? reqParts[1] : null;
+    }
+
+    private static boolean evaluateJsRule(httpraider.model.network.LoadBalancingRule rule, String headersBlock, String body) {
+        String jsCode = rule.getJsCode();
+        if (jsCode == null || jsCode.trim().isEmpty()) return false;
+        // Common rule shapes run as Java; see NativeRules
+        BiPredicate<String, String> nativeRule = NativeRules.loadBalancingRule(jsCode);
+        if (nativeRule != null) return nativeRule.test(headersBlock, body);
+        try {
+            Object res = JSEngine.runJsBooleanRule(jsCode, headersBlock, body);
+            if (res instanceof Boolean) return (Boolean) res;
+            if (res instanceof String) return Boolean.parseBoolean((String) res);
+            return false;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+
+}
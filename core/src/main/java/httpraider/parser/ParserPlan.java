@@ -0,0 +1,317 @@
+package httpraider.parser;
+
+import httpraider.controller.engines.JSEngine;
+import httpraider.model.network.FirewallRule;
+import httpraider.model.network.HttpParserModel;
+import httpraider.model.network.LoadBalancingRule;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable, precompiled form of an {@link HttpParserModel}.
+ * Everything that only depends on the configuration (decoded escape sequences,
+ * header-end combinations, the header-line pattern, trimmed body-length rules...)
+ * is computed once here instead of on every parse call.
+ * Plans are cached per model instance; call {@link #invalidate(HttpParserModel)}
+ * after the model has been modified. A plan copies what it needs and keeps no reference
+ * to its model, so the weakly keyed cache lets both go once the model is unreachable.
+ */
+public final class ParserPlan {
+
+    private static final Map<HttpParserModel, ParserPlan> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+    private static final AtomicLong REVISIONS = new AtomicLong();
+
+    private final long revision;
+    // Where parses with this plan report to while collection is enabled
+    private final ParseMetrics metrics;
+
+    // --- Header lines ---
+    private final String[] headerLineEndings;
+    private final byte[][] headerLineEndingBytes;
+    private final MultiPatternScanner headerEndScanner;
+    private final MultiPatternScanner headerLineScanner;
+    private final Pattern headerLinePattern;
+    private final String bestHeaderLineEnding;
+    private final boolean allowHeaderFolding;
+    private final List<String> deleteHeaderRules;
+    private final List<String> addHeaderRules;
+
+    // --- Request line ---
+    private final String[] requestLineDelimiters;
+    private final String rewriteFromMethod;
+    private final String rewriteToMethod;
+    private final boolean urlDecode;
+    private final int urlDecodeFrom;
+    private final int urlDecodeTo;
+    private final String forcedHttpVersion;
+    // Matches "<method> " for every known method; finds where the next request starts
+    private final MultiPatternScanner requestStartScanner;
+
+    // --- Message length ---
+    private final BodyLenRule[] bodyLenRules;
+    private final boolean hasBodyLenRules;
+    private final byte[] chunkedLineEnding;
+    private final HttpParserModel.MessageLenBodyEncoding outputBodyEncoding;
+
+    // --- Scripts ---
+    private final boolean useHeaderLinesJs;
+    private final String headerLinesScript;
+    private final boolean useRequestLineJs;
+    private final String requestLineScript;
+    private final boolean useMessageLengthJs;
+    private final String messageLengthScript;
+
+    // --- Rules ---
+    private final List<FirewallRule> firewallRules;
+    // Enabled firewall rules and their bodies, evaluated as one program per request
+    private final FirewallRule[] enabledFirewallRules;
+    private final JSEngine.FirewallProgram firewallProgram;
+    private final List<LoadBalancingRule> loadBalancingRules;
+
+    // --- Pipeline: only the stages this configuration needs, in execution order ---
+    private final ParserStage[] stages;
+
+    private ParserPlan(HttpParserModel model) {
+        this.revision = REVISIONS.incrementAndGet();
+        this.metrics = ParseMetrics.forModel(model);
+
+        List<String> endings = model.getHeaderLineEndings() != null ? model.getHeaderLineEndings() : Collections.emptyList();
+        headerLineEndings = new String[endings.size()];
+        headerLineEndingBytes = new byte[endings.size()][];
+        for (int i = 0; i < endings.size(); i++) {
+            headerLineEndingBytes[i] = ParserUtils.decodeEscapedSequence(endings.get(i));
+            headerLineEndings[i] = ParserUtils.decodeEscapedSequenceStr(endings.get(i));
+        }
+
+        // Every (i, j) pair of endings, in the order they are tried when looking for the header/body delimiter
+        byte[][] headerEndSequences = new byte[headerLineEndingBytes.length * headerLineEndingBytes.length][];
+        int k = 0;
+        for (byte[] seq1 : headerLineEndingBytes) {
+            for (byte[] seq2 : headerLineEndingBytes) {
+                byte[] combined = new byte[seq1.length + seq2.length];
+                System.arraycopy(seq1, 0, combined, 0, seq1.length);
+                System.arraycopy(seq2, 0, combined, seq1.length, seq2.length);
+                headerEndSequences[k++] = combined;
+            }
+        }
+        headerEndScanner = new MultiPatternScanner(headerEndSequences);
+
+        // The automaton splits header lines; only an empty ending (which matches everywhere)
+        // needs the original regex, whose empty-match stepping it does not reproduce
+        boolean hasEmptyEnding = false;
+        for (String ending : headerLineEndings) {
+            if (ending.isEmpty()) hasEmptyEnding = true;
+        }
+        headerLineScanner = headerLineEndings.length == 0 || hasEmptyEnding ? null : new MultiPatternScanner(headerLineEndingBytes);
+        if (headerLineEndings.length == 0 || !hasEmptyEnding) {
+            headerLinePattern = null;
+        } else {
+            StringBuilder patternBuilder = new StringBuilder();
+            for (int i = 0; i < headerLineEndings.length; i++) {
+                if (i > 0) patternBuilder.append("|");
+                patternBuilder.append(Pattern.quote(headerLineEndings[i]));
+            }
+            headerLinePattern = Pattern.compile("(.*?(?:" + patternBuilder + "))", Pattern.DOTALL);
+        }
+        bestHeaderLineEnding = pickBestHeaderLineEnding(headerLineEndings);
+        allowHeaderFolding = model.isAllowHeaderFolding();
+        deleteHeaderRules = nonEmpty(model.getDeleteHeaderRules());
+        addHeaderRules = nonEmpty(model.getAddHeaderRules());
+
+        List<String> delimiters = model.getRequestLineDelimiters() != null ? model.getRequestLineDelimiters() : Collections.emptyList();
+        requestLineDelimiters = new String[delimiters.size()];
+        for (int i = 0; i < delimiters.size(); i++) {
+            requestLineDelimiters[i] = ParserUtils.decodeEscapedSequenceStr(delimiters.get(i));
+        }
+
+        String from = model.getFromMethod();
+        String to = model.getToMethod();
+        if (model.isRewriteMethodEnabled() && from != null && !from.isEmpty() && to != null && !to.isEmpty()) {
+            rewriteFromMethod = from;
+            rewriteToMethod = to;
+        } else {
+            rewriteFromMethod = null;
+            rewriteToMethod = null;
+        }
+
+        Set<String> methods = new LinkedHashSet<>(HttpParserModel.DEFAULT_REQUEST_METHODS);
+        if (model.getCustomRequestMethods() != null) {
+            for (String method : model.getCustomRequestMethods()) {
+                if (method != null && !method.trim().isEmpty()) methods.add(method.trim());
+            }
+        }
+        byte[][] methodTokens = new byte[methods.size()][];
+        int m = 0;
+        for (String method : methods) {
+            methodTokens[m++] = (method + " ").getBytes(StandardCharsets.ISO_8859_1);
+        }
+        requestStartScanner = new MultiPatternScanner(methodTokens);
+
+        int decodeFrom = -1, decodeTo = -1;
+        boolean decode = false;
+        if (model.isDecodeUrlBeforeForwarding() && model.getUrlDecodeFrom() != null && model.getUrlDecodeTo() != null) {
+            try {
+                decodeFrom = Integer.parseInt(model.getUrlDecodeFrom().replace("%", ""), 16);
+                decodeTo = Integer.parseInt(model.getUrlDecodeTo().replace("%", ""), 16);
+                decode = true;
+            } catch (NumberFormatException ignored) {}
+        }
+        urlDecode = decode;
+        urlDecodeFrom = decodeFrom;
+        urlDecodeTo = decodeTo;
+
+        String version = null;
+        if (model.getForcedHttpVersion() != null) {
+            switch (model.getForcedHttpVersion()) {
+                case HTTP_1_0: version = "HTTP/1.0"; break;
+                case HTTP_1_1: version = "HTTP/1.1"; break;
+                case AUTO:
+                    String customVersion = model.getCustomHttpVersion();
+                    if (customVersion != null && !customVersion.isEmpty()) {
+                        version = customVersion;
+                    }
+                    break;
+            }
+        }
+        forcedHttpVersion = version;
+
+        List<HttpParserModel.BodyLenHeaderRule> rules = model.getBodyLenHeaderRules();
+        hasBodyLenRules = rules != null && !rules.isEmpty();
+        List<BodyLenRule> compiledRules = new ArrayList<>();
+        if (rules != null) {
+            for (HttpParserModel.BodyLenHeaderRule rule : rules) {
+                String pattern = rule.getPattern();
+                if (pattern == null || pattern.trim().isEmpty()) continue;
+                compiledRules.add(new BodyLenRule(pattern, pattern.trim(), rule.isChunked()));
+            }
+        }
+        bodyLenRules = compiledRules.toArray(new BodyLenRule[0]);
+
+        List<String> chunkedEndings = model.getChunkedLineEndings();
+        chunkedLineEnding = (chunkedEndings != null && !chunkedEndings.isEmpty())
+                ? ParserUtils.decodeEscapedSequence(chunkedEndings.get(0))
+                : new byte[]{'\r', '\n'};
+        outputBodyEncoding = model.getOutputBodyEncoding();
+
+        useHeaderLinesJs = model.isUseHeaderLinesJs();
+        headerLinesScript = model.getHeaderLinesScript();
+        useRequestLineJs = model.isUseRequestLineJs();
+        requestLineScript = model.getRequestLineScript();
+        useMessageLengthJs = model.isUseMessageLengthJs();
+        messageLengthScript = model.getMessageLengthScript();
+
+        firewallRules = model.getFirewallRules() != null
+                ? Collections.unmodifiableList(new ArrayList<>(model.getFirewallRules()))
+                : Collections.emptyList();
+        List<FirewallRule> enabled = new ArrayList<>();
+        for (FirewallRule rule : firewallRules) {
+            if (rule.isEnabled()) enabled.add(rule);
+        }
+        enabledFirewallRules = enabled.toArray(new FirewallRule[0]);
+        firewallProgram = JSEngine.compileFirewallRules(enabled);
+        loadBalancingRules = model.getLoadBalancingRules() != null
+                ? Collections.unmodifiableList(new ArrayList<>(model.getLoadBalancingRules()))
+                : Collections.emptyList();
+
+        stages = ParserStages.build(this);
+    }
+
+    public static ParserPlan forModel(HttpParserModel model) {
+        ParserPlan plan = CACHE.get(model);
+        if (plan == null) {
+            plan = new ParserPlan(model);
+            CACHE.put(model, plan);
+        }
+        return plan;
+    }
+
+    public static void invalidate(HttpParserModel model) {
+        CACHE.remove(model);
+    }
+
+    // Use best header ending: CRLF if present, else LF if present, else first in list.
+    private static String pickBestHeaderLineEnding(String[] endings) {
+        if (endings.length == 0) return "\r\n";
+        for (String ending : endings) {
+            if ("\r\n".equals(ending)) return ending;
+        }
+        for (String ending : endings) {
+            if ("\n".equals(ending)) return ending;
+        }
+        return endings[0];
+    }
+
+    private static List<String> nonEmpty(List<String> rules) {
+        if (rules == null || rules.isEmpty()) return Collections.emptyList();
+        List<String> out = new ArrayList<>();
+        for (String r : rules) {
+            if (r != null && !r.isEmpty()) out.add(r);
+        }
+        return Collections.unmodifiableList(out);
+    }
+
+    public long getRevision() { return revision; }
+
+    // Metrics of the model, or null while collection is disabled (see ParseMetrics.active)
+    ParseMetrics activeMetrics() { return ParseMetrics.isEnabled() ? metrics : null; }
+
+    public String[] getHeaderLineEndings() { return headerLineEndings; }
+    public byte[][] getHeaderLineEndingBytes() { return headerLineEndingBytes; }
+    public MultiPatternScanner getHeaderEndScanner() { return headerEndScanner; }
+    public MultiPatternScanner getHeaderLineScanner() { return headerLineScanner; }
+    public Pattern getHeaderLinePattern() { return headerLinePattern; }
+    public String getBestHeaderLineEnding() { return bestHeaderLineEnding; }
+    public boolean isAllowHeaderFolding() { return allowHeaderFolding; }
+    public List<String> getDeleteHeaderRules() { return deleteHeaderRules; }
+    public List<String> getAddHeaderRules() { return addHeaderRules; }
+
+    public String[] getRequestLineDelimiters() { return requestLineDelimiters; }
+    public String getRewriteFromMethod() { return rewriteFromMethod; }
+    public String getRewriteToMethod() { return rewriteToMethod; }
+    public boolean isUrlDecode() { return urlDecode; }
+    public int getUrlDecodeFrom() { return urlDecodeFrom; }
+    public int getUrlDecodeTo() { return urlDecodeTo; }
+    public String getForcedHttpVersion() { return forcedHttpVersion; }
+    public MultiPatternScanner getRequestStartScanner() { return requestStartScanner; }
+
+    public BodyLenRule[] getBodyLenRules() { return bodyLenRules; }
+    public boolean hasBodyLenRules() { return hasBodyLenRules; }
+    public byte[] getChunkedLineEnding() { return chunkedLineEnding; }
+    public HttpParserModel.MessageLenBodyEncoding getOutputBodyEncoding() { return outputBodyEncoding; }
+
+    public boolean isUseHeaderLinesJs() { return useHeaderLinesJs; }
+    public String getHeaderLinesScript() { return headerLinesScript; }
+    public boolean isUseRequestLineJs() { return useRequestLineJs; }
+    public String getRequestLineScript() { return requestLineScript; }
+    public boolean isUseMessageLengthJs() { return useMessageLengthJs; }
+    public String getMessageLengthScript() { return messageLengthScript; }
+
+    public List<FirewallRule> getFirewallRules() { return firewallRules; }
+    FirewallRule[] enabledFirewallRules() { return enabledFirewallRules; }
+    JSEngine.FirewallProgram firewallProgram() { return firewallProgram; }
+    public List<LoadBalancingRule> getLoadBalancingRules() { return loadBalancingRules; }
+
+    public List<ParserStage> getStages() { return Collections.unmodifiableList(Arrays.asList(stages)); }
+
+    // The stage array itself, for the hot loop in RequestStep; never modified
+    ParserStage[] pipeline() { return stages; }
+
+    public static final class BodyLenRule {
+        private final String pattern;
+        private final String trimmedPattern;
+        private final boolean chunked;
+
+        BodyLenRule(String pattern, String trimmedPattern, boolean chunked) {
+            this.pattern = pattern;
+            this.trimmedPattern = trimmedPattern;
+            this.chunked = chunked;
+        }
+
+        public String getPattern() { return pattern; }
+        public String getTrimmedPattern() { return trimmedPattern; }
+        public boolean isChunked() { return chunked; }
+    }
+}
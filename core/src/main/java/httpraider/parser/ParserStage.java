@@ -0,0 +1,31 @@
+package httpraider.parser;
+
+/**
+ * One step of the per-request parser pipeline (header split, folding, header rules,
+ * request line, message length, output encoding, firewall...).
+ * {@link ParserPlan} assembles the stages a model needs once; features that are
+ * switched off have no stage at all, so simple configurations run a short pipeline.
+ */
+public interface ParserStage {
+
+    String getName();
+
+    // Runs the stage on the request being parsed; false means parsing of this request ends here
+    boolean apply(RequestStep step);
+
+    /**
+     * Observes stage execution (tracing, metrics). Pass null where a hook is accepted
+     * to run the pipeline without any callbacks.
+     */
+    interface Hook {
+        void beforeStage(ParserStage stage);
+
+        // proceed is false when the stage ended parsing of the current request
+        void afterStage(ParserStage stage, boolean proceed);
+
+        // Same as afterStage(stage, proceed), with the request the stage worked on
+        default void afterStage(ParserStage stage, RequestStep step, boolean proceed) {
+            afterStage(stage, proceed);
+        }
+    }
+}
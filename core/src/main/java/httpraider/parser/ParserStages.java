@@ -0,0 +1,586 @@
+package httpraider.parser;
+
+import httpraider.controller.engines.JSEngine;
+import httpraider.model.network.FirewallRule;
+import httpraider.model.network.HttpParserModel;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The built-in {@link ParserStage}s and the logic that assembles them for a {@link ParserPlan}.
+ * Stages run in the order the original parser applied its steps; a stage is only
+ * added when the model enables the feature it implements.
+ */
+final class ParserStages {
+
+    private ParserStages() {}
+
+    static ParserStage[] build(ParserPlan plan) {
+        List<ParserStage> stages = new ArrayList<>();
+
+        // 1. Split header lines and fold (before any other step)
+        stages.add(HEADER_SPLIT);
+        if (plan.isAllowHeaderFolding()) stages.add(HEADER_FOLDING);
+        // 2. Delete / 3. add header rules
+        if (!plan.getDeleteHeaderRules().isEmpty()) stages.add(DELETE_HEADERS);
+        if (!plan.getAddHeaderRules().isEmpty()) stages.add(ADD_HEADERS);
+        // 4. JS transformations
+        if (plan.isUseHeaderLinesJs()) stages.add(HEADER_LINES_JS);
+        // 5. Request line logic (method rewrite, version, decode)
+        if (plan.isUseRequestLineJs()) stages.add(REQUEST_LINE_JS);
+        stages.add(REQUEST_LINE);
+        // 6. Message length
+        stages.add(MESSAGE_LENGTH);
+        if (plan.isUseMessageLengthJs()) stages.add(MESSAGE_LENGTH_JS);
+        // 7. Output body encoding, or keep the original chunked body
+        HttpParserModel.MessageLenBodyEncoding encoding = plan.getOutputBodyEncoding();
+        if (encoding == HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY) {
+            stages.add(PRESERVE_CHUNKED);
+        } else if (encoding != null) {
+            stages.add(OUTPUT_ENCODING);
+        }
+        stages.add(BUILD_REQUEST);
+        // 8. Firewall
+        if (plan.enabledFirewallRules().length > 0) stages.add(FIREWALL);
+        return stages.toArray(new ParserStage[0]);
+    }
+
+    private abstract static class Stage implements ParserStage {
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    static final ParserStage HEADER_SPLIT = new Stage("Header lines") {
+        @Override
+        public boolean apply(RequestStep step) {
+            ParserPlan plan = step.plan;
+            if (plan.getHeaderLineEndings().length == 0) {
+                return step.fail("No header line endings were configured");
+            }
+
+            int headerEnd = ParserUtils.findHeaderEnd(plan, step.data, step.pos, step.end);
+            if (headerEnd == -1) {
+                if (step.requireHeaderEnd) {
+                    return step.stop(RequestStep.Outcome.HEADERS_INCOMPLETE);
+                }
+                // No delimiter: the rest of the buffer is treated as an unterminated header block
+                headerEnd = step.end;
+                step.headerTerminated = false;
+            }
+            int headersLength = headerEnd - step.pos;
+
+            if (headersLength == 0 && !step.headerTerminated) {
+                return step.stop(RequestStep.Outcome.HEADERS_INCOMPLETE);
+            }
+            if (headersLength == 0) {
+                return step.fail("Header section not found");
+            }
+
+            step.headerEnd = headerEnd;
+            step.headerLines = ParserUtils.splitHeaderLines(plan, step.data, step.pos, headerEnd);
+            return true;
+        }
+    };
+
+    static final ParserStage HEADER_FOLDING = new Stage("Header folding") {
+        @Override
+        public boolean apply(RequestStep step) {
+            step.headerLines = foldHeaderLines(step.headerLines, step.plan.getHeaderLineEndings());
+            return true;
+        }
+    };
+
+    static final ParserStage DELETE_HEADERS = new Stage("Delete headers") {
+        @Override
+        public boolean apply(RequestStep step) {
+            List<String> deleteRules = step.plan.getDeleteHeaderRules();
+            step.headerLines.removeIf(line -> {
+                for (String match : deleteRules) {
+                    if (line.contains(match)) {
+                        return true;
+                    }
+                }
+                return false;
+            });
+            return true;
+        }
+    };
+
+    static final ParserStage ADD_HEADERS = new Stage("Add headers") {
+        @Override
+        public boolean apply(RequestStep step) {
+            // Insert before the header-end block
+            List<String> headerLines = step.headerLines;
+            String addEnding = step.plan.getBestHeaderLineEnding();
+            int insertAt = headerLines.size();
+            for (int i = headerLines.size() - 1; i >= 0; i--) {
+                if (headerLines.get(i).trim().isEmpty()) {
+                    insertAt = i;
+                } else {
+                    break;
+                }
+            }
+            for (String add : step.plan.getAddHeaderRules()) {
+                headerLines.add(insertAt, add + addEnding);
+                insertAt++;
+            }
+            return true;
+        }
+    };
+
+    static final ParserStage HEADER_LINES_JS = new Stage("Header lines JS") {
+        @Override
+        public boolean apply(RequestStep step) {
+            try {
+                step.headerLines = ParserUtils.runHeaderLinesJs(step.plan.getHeaderLinesScript(), step.headerLines);
+                return true;
+            } catch (Exception ex) {
+                return step.fail(ex.getMessage());
+            }
+        }
+    };
+
+    // Runs before REQUEST_LINE, which validates and splits the rewritten line
+    static final ParserStage REQUEST_LINE_JS = new Stage("Request line JS") {
+        @Override
+        public boolean apply(RequestStep step) {
+            // Leave the missing delimiters / request line errors to REQUEST_LINE
+            if (step.plan.getRequestLineDelimiters().length == 0 || step.headerLines.isEmpty()) {
+                return true;
+            }
+            try {
+                step.scriptedRequestLine = ParserUtils.runRequestLineJs(step.plan.getRequestLineScript(), step.headerLines.get(0).trim());
+            } catch (Exception ex) {
+                return step.fail(ex.getMessage());
+            }
+            return true;
+        }
+    };
+
+    static final ParserStage REQUEST_LINE = new Stage("Request line") {
+        @Override
+        public boolean apply(RequestStep step) {
+            ParserPlan plan = step.plan;
+            List<String> headerLines = step.headerLines;
+            String[] requestLineDelimiters = plan.getRequestLineDelimiters();
+            if (requestLineDelimiters.length == 0) {
+                return step.fail("No request line delimiters were configured");
+            }
+            if (headerLines.isEmpty()) {
+                return step.fail("Request line missing");
+            }
+            String requestLine = step.scriptedRequestLine != null ? step.scriptedRequestLine : headerLines.get(0).trim();
+
+            String[] parts = ParserUtils.splitRequestLineSimultaneous(requestLine, requestLineDelimiters);
+            if (parts == null || parts.length != 5) {
+                return step.fail("Invalid request line: could not split into exactly 3 parts");
+            }
+            String method = parts[0];
+            String uri = parts[1];
+            String version = parts[2];
+            String delimiter1 = parts[3];
+            String delimiter2 = parts[4];
+
+            if (plan.getRewriteFromMethod() != null && plan.getRewriteFromMethod().equals(method)) {
+                method = plan.getRewriteToMethod();
+            }
+
+            if (plan.isUrlDecode() && uri != null) {
+                uri = decodeUrlRange(uri, plan.getUrlDecodeFrom(), plan.getUrlDecodeTo());
+            }
+
+            if (plan.getForcedHttpVersion() != null) {
+                version = plan.getForcedHttpVersion();
+            }
+            String oldEnding = "";
+            String origLine = headerLines.get(0);
+            for (String ending : plan.getHeaderLineEndings()) {
+                if (origLine.endsWith(ending)) {
+                    oldEnding = ending;
+                    break;
+                }
+            }
+            // Use original delimiters instead of hardcoded spaces
+            headerLines.set(0, method + delimiter1 + uri + delimiter2 + version + oldEnding);
+            return true;
+        }
+    };
+
+    static final ParserStage MESSAGE_LENGTH = new Stage("Message length") {
+        @Override
+        public boolean apply(RequestStep step) {
+            ParserPlan plan = step.plan;
+            byte[] data = step.data;
+            List<String> currentHeaderLines = new ArrayList<>(step.headerLines);
+            step.headerLines = currentHeaderLines;
+            step.lengthHeaderLines = currentHeaderLines;
+            step.rest = ByteSlice.range(data, step.headerEnd, step.end);
+
+            // Tokenized once; shared by the length rules and, unless the lines change, the firewall
+            HeaderIndex headers = HeaderIndex.of(currentHeaderLines);
+            step.headers = headers;
+
+            // Check if we should preserve original chunked encoding
+            for (int i = 0; i < headers.size(); i++) {
+                String lowerLine = headers.lowerLine(i);
+                if (lowerLine.contains("transfer-encoding") && lowerLine.contains("chunked")) {
+                    if (plan.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY) {
+                        step.preserveChunked = true;
+                    }
+                    break;
+                }
+            }
+
+            MessageLengthHeaderResult lenResult = ParserUtils.getMessageBodyByHeaderRules(plan, currentHeaderLines, headers, step.rest);
+
+            if (step.preserveChunked && lenResult.getError() == null) {
+                // For DONT_MODIFY with chunked, keep a view over the original chunked body
+                // (everything between the end of the headers and where the remaining bytes start)
+                step.originalChunkedBody = ByteSlice.range(data, step.headerEnd, lenResult.getRemainingSlice().offset());
+            }
+
+            if (lenResult.getIncompleteBodyBytes() > 0 && lenResult.getChunkedIncompleteTag() == null) {
+                int missingBytes = lenResult.getIncompleteBodyBytes();
+                ByteSlice afterBody = lenResult.getRemainingSlice();
+
+                if (afterBody.length() >= missingBytes) {
+                    // The partial body and the bytes after it are contiguous in data, so just widen the view
+                    ByteSlice partialBody = lenResult.getBodySlice();
+                    int completedEnd = afterBody.offset() + missingBytes;
+                    lenResult = new MessageLengthHeaderResult(
+                            currentHeaderLines,
+                            ByteSlice.range(data, partialBody.offset(), completedEnd),
+                            ByteSlice.range(data, completedEnd, afterBody.end()),
+                            null, 0, null);
+                } else {
+                    step.body = lenResult.getBodySlice();
+                    step.remaining = afterBody;
+                    step.missingBytes = missingBytes;
+                    return step.stop(RequestStep.Outcome.BODY_INCOMPLETE);
+                }
+            }
+            if ((lenResult.getChunkedIncompleteTag() != null && lenResult.getBodySlice().isEmpty())
+                    || (step.requireCompleteBody && !lenResult.isBodyComplete())) {
+                step.body = ByteSlice.range(data, step.headerEnd, lenResult.getRemainingSlice().offset());
+                step.remaining = lenResult.getRemainingSlice();
+                return step.stop(RequestStep.Outcome.BODY_INCOMPLETE);
+            }
+            if (lenResult.getError() != null) {
+                return step.fail(lenResult.getError());
+            }
+
+            step.lenResult = lenResult;
+            step.body = lenResult.getBodySlice();
+            step.remaining = lenResult.getRemainingSlice();
+            return true;
+        }
+    };
+
+    static final ParserStage MESSAGE_LENGTH_JS = new Stage("Message length JS") {
+        @Override
+        public boolean apply(RequestStep step) {
+            try {
+                ParserUtils.HeaderLinesBodyEncodingResult jsResult = ParserUtils.runMessageLengthJs(
+                        step.plan.getMessageLengthScript(), step.headerLines, step.body.toByteArray(), step.rest.toByteArray());
+                step.headerLines = jsResult.headerLines;
+                step.body = ByteSlice.of(jsResult.body);
+                return true;
+            } catch (Exception ex) {
+                return step.fail(ex.getMessage());
+            }
+        }
+    };
+
+    static final ParserStage OUTPUT_ENCODING = new Stage("Output encoding") {
+        @Override
+        public boolean apply(RequestStep step) {
+            step.headerLines = applyOutputBodyEncoding(step.plan, step.headerLines, step.body);
+            step.body = transformBodyEncoding(step.plan, step.body);
+            return true;
+        }
+    };
+
+    static final ParserStage PRESERVE_CHUNKED = new Stage("Preserve chunked body") {
+        @Override
+        public boolean apply(RequestStep step) {
+            if (step.preserveChunked && step.originalChunkedBody != null) {
+                // Use the original chunked body instead of the decoded body
+                step.body = step.originalChunkedBody;
+            }
+            return true;
+        }
+    };
+
+    static final ParserStage BUILD_REQUEST = new Stage("Build request") {
+        @Override
+        public boolean apply(RequestStep step) {
+            // --- Build header block as-is (no extra endings), preserving all endings and structure
+            StringBuilder headerBlock = new StringBuilder();
+            for (String line : step.headerLines) {
+                headerBlock.append(line);
+            }
+            byte[] headerBytes = headerBlock.toString().getBytes(StandardCharsets.ISO_8859_1);
+            // Materialize the final request: the only copy of the body bytes
+            byte[] rawRequest = new byte[headerBytes.length + step.body.length()];
+            System.arraycopy(headerBytes, 0, rawRequest, 0, headerBytes.length);
+            step.body.copyTo(rawRequest, headerBytes.length);
+            step.request = rawRequest;
+            return true;
+        }
+    };
+
+    static final ParserStage FIREWALL = new Stage("Firewall") {
+        @Override
+        public boolean apply(RequestStep step) {
+            if (step.headerLines != step.lengthHeaderLines) {
+                step.headers = HeaderIndex.of(step.headerLines);
+            }
+            try {
+                step.firewall = checkFirewallRules(step.plan, step.request, step.headers, step.body);
+            } catch (JSEngine.ScriptBudgetException ex) {
+                // Other rule errors let the request through; a runaway rule is reported instead
+                return step.fail("Firewall JS Error: " + ex.getMessage());
+            }
+            return true;
+        }
+    };
+
+    // RFC folding: line starting with whitespace is appended to previous header line
+    static List<String> foldHeaderLines(List<String> headerLines, String[] headerLineEndings) {
+        List<String> folded = new ArrayList<>();
+        for (String line : headerLines) {
+            if ((line.length() > 0) && (line.charAt(0) == ' ' || line.charAt(0) == '\t')) {
+                // Fold: append to previous, remove one whitespace char at start
+                if (!folded.isEmpty()) {
+                    String prev = folded.remove(folded.size() - 1);
+                    String prevNoEnding = prev;
+                    for (String dec : headerLineEndings) {
+                        if (prev.endsWith(dec)) {
+                            prevNoEnding = prev.substring(0, prev.length() - dec.length());
+                            break;
+                        }
+                    }
+                    String continuation = line.substring(1);
+
+                    folded.add(prevNoEnding + " " + continuation);
+                } else {
+                    folded.add(line);
+                }
+            } else {
+                folded.add(line);
+            }
+        }
+        return folded;
+    }
+
+    // Decodes %XX escapes whose value falls in [fromInt, toInt]; a malformed escape leaves the URI untouched
+    static String decodeUrlRange(String uri, int fromInt, int toInt) {
+        try {
+            StringBuilder decoded = new StringBuilder();
+            for (int i = 0; i < uri.length(); ) {
+                if (uri.charAt(i) == '%' && i + 2 < uri.length()) {
+                    String hex = uri.substring(i + 1, i + 3);
+                    int val = Integer.parseInt(hex, 16);
+                    if (val >= fromInt && val <= toInt) {
+                        decoded.append((char) val);
+                        i += 3;
+                        continue;
+                    }
+                }
+                decoded.append(uri.charAt(i));
+                i++;
+            }
+            return decoded.toString();
+        } catch (Exception ignored) {
+            return uri;
+        }
+    }
+
+    static List<String> applyOutputBodyEncoding(ParserPlan plan, List<String> headerLines, ByteSlice body) {
+        List<String> modifiedHeaders = new ArrayList<>();
+        String lineEnding = plan.getBestHeaderLineEnding();
+        boolean hasTransferEncoding = false;
+        boolean hasContentLength = false;
+        
+        // Copy headers, removing conflicting headers based on output encoding
+        for (String line : headerLines) {
+            String lowerLine = line.toLowerCase();
+            if (lowerLine.startsWith("transfer-encoding:")) {
+                hasTransferEncoding = true;
+                if (plan.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.FORCE_CL_HEADER) {
+                    continue; // Skip Transfer-Encoding when forcing Content-Length
+                }
+            } else if (lowerLine.startsWith("content-length:")) {
+                hasContentLength = true;
+                if (plan.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.FORCE_CHUNKED) {
+                    continue; // Skip Content-Length when forcing chunked
+                }
+            }
+            modifiedHeaders.add(line);
+        }
+        
+        // Add appropriate header based on output encoding
+        if (plan.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.FORCE_CHUNKED) {
+            if (!hasTransferEncoding) {
+                // Find position to insert (before empty line)
+                int insertPos = modifiedHeaders.size();
+                for (int i = modifiedHeaders.size() - 1; i >= 0; i--) {
+                    if (modifiedHeaders.get(i).trim().isEmpty()) {
+                        insertPos = i;
+                        break;
+                    }
+                }
+                modifiedHeaders.add(insertPos, "Transfer-Encoding: chunked" + lineEnding);
+            }
+        } else if (plan.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.FORCE_CL_HEADER) {
+            if (!hasContentLength) {
+                // Find position to insert (before empty line)
+                int insertPos = modifiedHeaders.size();
+                for (int i = modifiedHeaders.size() - 1; i >= 0; i--) {
+                    if (modifiedHeaders.get(i).trim().isEmpty()) {
+                        insertPos = i;
+                        break;
+                    }
+                }
+                modifiedHeaders.add(insertPos, "Content-Length: " + body.length() + lineEnding);
+            }
+        }
+        
+        return modifiedHeaders;
+    }
+    
+    static ByteSlice transformBodyEncoding(ParserPlan plan, ByteSlice body) {
+        if (plan.getOutputBodyEncoding() == HttpParserModel.MessageLenBodyEncoding.FORCE_CHUNKED) {
+            // Convert to chunked encoding
+            ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+            try {
+                // Write body as single chunk
+                String sizeHex = Integer.toHexString(body.length());
+                chunked.write(sizeHex.getBytes(StandardCharsets.ISO_8859_1));
+                chunked.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                chunked.write(body.array(), body.offset(), body.length());
+                chunked.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                // Write final chunk
+                chunked.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                return ByteSlice.of(chunked.toByteArray());
+            } catch (Exception e) {
+                return body; // Return original on error
+            }
+        }
+        // For FORCE_CL_HEADER or DONT_MODIFY, return body as-is
+        // (body is already decoded from chunked if it was chunked)
+        return body;
+    }
+    
+    // All enabled rules run as one program; each rule's input is extracted only when the rule is reached
+    static RequestStep.FirewallCheckResult checkFirewallRules(ParserPlan plan, byte[] rawRequest, 
+                                                         HeaderIndex headers, ByteSlice body) {
+        RequestStep.FirewallCheckResult result = new RequestStep.FirewallCheckResult();
+        
+        FirewallRule[] rules = plan.enabledFirewallRules();
+        if (rules.length == 0) {
+            return result;
+        }
+        
+        FirewallInputs inputs = new FirewallInputs(rules, rawRequest, headers, body);
+        int blockedBy = JSEngine.runFirewallProgram(plan.firewallProgram(), inputs::forRule);
+        if (blockedBy >= 0) {
+            FirewallRule rule = rules[blockedBy];
+            result.blocked = true;
+            result.closeConnection = rule.isCloseConnection();
+            result.triggeredSource = rule.getSource().getDisplayName();
+        }
+        return result;
+    }
+    
+    // Inputs of one request, each computed the first time a rule asks for it
+    private static final class FirewallInputs {
+        private final FirewallRule[] rules;
+        private final byte[] rawRequest;
+        private final HeaderIndex headers;
+        private final ByteSlice body;
+        private String[] headerValues;
+        private String bodyStr;
+        private String requestStr;
+        
+        FirewallInputs(FirewallRule[] rules, byte[] rawRequest, HeaderIndex headers, ByteSlice body) {
+            this.rules = rules;
+            this.rawRequest = rawRequest;
+            this.headers = headers;
+            this.body = body;
+        }
+        
+        // A String input, a String[] of header lines, or null when the rule has nothing to check
+        Object forRule(int index) {
+            switch (rules[index].getSource()) {
+                case METHOD:
+                    return requestLinePart(0);
+                    
+                case URL:
+                    return requestLinePart(1);
+                    
+                case VERSION:
+                    if (headers.size() > 0) {
+                        String[] parts = headers.requestLineParts();
+                        if (parts.length > 2) {
+                            // Get the version part (last part before line ending)
+                            String lastPart = parts[parts.length - 1];
+                            // Remove any line endings
+                            return lastPart.replaceAll("\\r|\\n", "");
+                        }
+                    }
+                    return null;
+                    
+                case HEADERS:
+                    // Pass headers as array (excluding request line)
+                    if (headers.size() <= 1) return null;
+                    if (headerValues == null) {
+                        headerValues = new String[headers.size() - 1];
+                        // Clean up line endings from headers
+                        for (int i = 1; i < headers.size(); i++) {
+                            headerValues[i - 1] = headers.line(i).replaceAll("\\r|\\n", "");
+                        }
+                    }
+                    // Rules may write to the array they get; each one sees the request's own headers
+                    return headerValues.clone();
+                    
+                case BODY:
+                    if (bodyStr == null) {
+                        bodyStr = body.toLatin1String();
+                    }
+                    return bodyStr;
+                    
+                case FULL_REQUEST:
+                    if (requestStr == null) {
+                        requestStr = new String(rawRequest, StandardCharsets.ISO_8859_1);
+                    }
+                    return requestStr;
+                    
+                default:
+                    return null;
+            }
+        }
+        
+        private String requestLinePart(int i) {
+            if (headers.size() == 0) return null;
+            String[] parts = headers.requestLineParts();
+            return parts.length > i ? parts[i] : null;
+        }
+    }
+}
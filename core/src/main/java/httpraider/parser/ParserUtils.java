@@ -34,8 +34,12 @@ public class ParserUtils {
     }
 
     private static int indexOf(byte[] data, byte[] pattern, int start) {
+        return indexOf(data, pattern, start, data.length);
+    }
+
+    static int indexOf(byte[] data, byte[] pattern, int start, int end) {
         outer:
-        for (int i = start; i <= data.length - pattern.length; i++) {
+        for (int i = start; i <= end - pattern.length; i++) {
             for (int j = 0; j < pattern.length; j++) {
                 if (data[i + j] != pattern[j]) continue outer;
             }
@@ -58,49 +62,54 @@ public class ParserUtils {
     }
 
     public static ParserResult splitHeaders(HttpParserModel model, byte[] data) {
-        List<String> seqs = model.getHeaderLineEndings();
-        int splitIndex = -1;
-        byte[] foundSeq = null;
-        
-        // First try to find double line endings (header/body delimiter)
-        for (int i = 0; i < seqs.size(); i++) {
-            for (int j = 0; j < seqs.size(); j++) {
-                byte[] seq1 = decodeEscapedSequence(seqs.get(i));
-                byte[] seq2 = decodeEscapedSequence(seqs.get(j));
-                byte[] combined = new byte[seq1.length + seq2.length];
-                System.arraycopy(seq1, 0, combined, 0, seq1.length);
-                System.arraycopy(seq2, 0, combined, seq1.length, seq2.length);
-                int idx = indexOf(data, combined, 0);
-                if (idx >= 0 && (splitIndex == -1 || idx < splitIndex)) {
-                    splitIndex = idx;
-                    foundSeq = combined;
-                }
-            }
-        }
-        
-        if (splitIndex == -1 || foundSeq == null) {
+        int end = findHeaderEnd(model, data, 0, data.length);
+        if (end == -1) {
             return new ParserResult(data, new byte[0], "Header/body delimiter not found");
         }
-        int end = splitIndex + foundSeq.length;
         byte[] headers = Arrays.copyOfRange(data, 0, end);
         byte[] rest = Arrays.copyOfRange(data, end, data.length);
         return new ParserResult(headers, rest, null);
     }
 
+    // Returns the absolute offset just past the header/body delimiter in data[from, to), or -1 if not found
+    public static int findHeaderEnd(HttpParserModel model, byte[] data, int from, int to) {
+        return findHeaderEnd(ParserPlan.forModel(model), data, from, to);
+    }
+
+    public static int findHeaderEnd(ParserPlan plan, byte[] data, int from, int to) {
+        // Single pass over every (ending, ending) pair; earliest start wins, ties go to the first pair
+        return plan.getHeaderEndScanner().findEnd(data, from, to);
+    }
+
     public static List<String> splitHeaderLines(HttpParserModel model, byte[] headersBytes) {
-        String headers = new String(headersBytes, StandardCharsets.ISO_8859_1);
-        List<String> seqs = model.getHeaderLineEndings();
-        if (seqs == null || seqs.isEmpty()) {
+        return splitHeaderLines(ParserPlan.forModel(model), headersBytes, 0, headersBytes.length);
+    }
+
+    public static List<String> splitHeaderLines(ParserPlan plan, byte[] data, int from, int to) {
+        MultiPatternScanner scanner = plan.getHeaderLineScanner();
+        if (scanner != null) {
+            // Each line runs up to and including the first ending found; at equal offsets the first configured ending wins
+            List<String> result = new ArrayList<>();
+            int pos = from;
+            while (pos < to) {
+                int lineEnd = scanner.findEnd(data, pos, to);
+                if (lineEnd == -1) break;
+                result.add(new String(data, pos, lineEnd - pos, StandardCharsets.ISO_8859_1));
+                pos = lineEnd;
+            }
+            if (pos < to) {
+                result.add(new String(data, pos, to - pos, StandardCharsets.ISO_8859_1));
+            }
+            return result;
+        }
+
+        String headers = new String(data, from, to - from, StandardCharsets.ISO_8859_1);
+        Pattern pattern = plan.getHeaderLinePattern();
+        if (pattern == null) {
             List<String> l = new ArrayList<>();
             l.add(headers);
             return l;
         }
-        StringBuilder patternBuilder = new StringBuilder();
-        for (int i = 0; i < seqs.size(); i++) {
-            if (i > 0) patternBuilder.append("|");
-            patternBuilder.append(Pattern.quote(decodeEscapedSequenceStr(seqs.get(i))));
-        }
-        Pattern pattern = Pattern.compile("(.*?(?:" + patternBuilder + "))", Pattern.DOTALL);
 
         List<String> result = new ArrayList<>();
         Matcher matcher = pattern.matcher(headers);
@@ -118,9 +127,18 @@ public class ParserUtils {
 
     public static String[] splitRequestLineSimultaneous(String requestLine, List<String> delimiters) {
         if (delimiters == null || delimiters.isEmpty()) return null;
+        String[] decoded = new String[delimiters.size()];
+        for (int i = 0; i < decoded.length; i++) {
+            decoded[i] = decodeEscapedSequenceStr(delimiters.get(i));
+        }
+        return splitRequestLineSimultaneous(requestLine, decoded);
+    }
+
+    // Same as above, with the delimiters already decoded (see ParserPlan#getRequestLineDelimiters)
+    public static String[] splitRequestLineSimultaneous(String requestLine, String[] decodedDelimiters) {
+        if (decodedDelimiters == null || decodedDelimiters.length == 0) return null;
         List<DelimiterMatch> matches = new ArrayList<>();
-        for (String delim : delimiters) {
-            String delimStr = decodeEscapedSequenceStr(delim);
+        for (String delimStr : decodedDelimiters) {
             int idx = requestLine.indexOf(delimStr);
             while (idx >= 0) {
                 matches.add(new DelimiterMatch(idx, delimStr.length(), delimStr));
@@ -155,8 +173,12 @@ public class ParserUtils {
 
     public static List<String> runHeaderLinesJs(HttpParserModel model, List<String> headerLines) {
         if (!model.isUseHeaderLinesJs()) return headerLines;
+        return runHeaderLinesJs(model.getHeaderLinesScript(), headerLines);
+    }
+
+    static List<String> runHeaderLinesJs(String script, List<String> headerLines) {
         try {
-            return JSEngine.runSplitHeaderScript(headerLines, mergeStringsToBytes(headerLines), model.getHeaderLinesScript());
+            return JSEngine.runSplitHeaderScript(headerLines, mergeStringsToBytes(headerLines), script);
         } catch (Exception e) {
             throw new RuntimeException("HeaderLines JS Error: " + e);
         }
@@ -164,8 +186,12 @@ public class ParserUtils {
 
     public static String runRequestLineJs(HttpParserModel model, String requestLine) {
         if (!model.isUseRequestLineJs()) return requestLine;
+        return runRequestLineJs(model.getRequestLineScript(), requestLine);
+    }
+
+    static String runRequestLineJs(String script, String requestLine) {
         try {
-            String out = JSEngine.runTagEngine(model.getRequestLineScript(), requestLine);
+            String out = JSEngine.runTagEngine(script, requestLine);
             return out == null ? requestLine : out;
         } catch (Exception e) {
             throw new RuntimeException("RequestLine JS Error: " + e);
@@ -173,33 +199,32 @@ public class ParserUtils {
     }
 
     public static MessageLengthHeaderResult getMessageBodyByHeaderRules(HttpParserModel model, List<String> headerLines, byte[] body) {
-        List<HttpParserModel.BodyLenHeaderRule> rules = model.getBodyLenHeaderRules();
-        if (rules == null || rules.isEmpty()) {
-            return new MessageLengthHeaderResult(headerLines, new byte[0], body, null, 0, null);
-        }
-        Map<String, List<String>> headerMap = new LinkedHashMap<>();
-        for (String line : headerLines) {
-            int idx = line.indexOf(':');
-            if (idx > 0) {
-                String name = line.substring(0, idx).trim().toLowerCase();
-                String value = line.substring(idx + 1).trim();
-                headerMap.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
-            }
+        return getMessageBodyByHeaderRules(ParserPlan.forModel(model), headerLines, ByteSlice.of(body));
+    }
+
+    public static MessageLengthHeaderResult getMessageBodyByHeaderRules(ParserPlan plan, List<String> headerLines, ByteSlice body) {
+        return getMessageBodyByHeaderRules(plan, headerLines, HeaderIndex.of(headerLines), body);
+    }
+
+    // body is a view over the bytes following the header block; the returned body/remaining are views over the same array
+    public static MessageLengthHeaderResult getMessageBodyByHeaderRules(ParserPlan plan, List<String> headerLines, HeaderIndex headers, ByteSlice body) {
+        if (!plan.hasBodyLenRules()) {
+            return new MessageLengthHeaderResult(headerLines, ByteSlice.EMPTY, body, null, 0, null);
         }
         boolean isChunked = false;
         int contentLength = -1;
         String error = null;
         
         // Check each rule against the headers
-        for (HttpParserModel.BodyLenHeaderRule rule : rules) {
+        for (ParserPlan.BodyLenRule rule : plan.getBodyLenRules()) {
             String pattern = rule.getPattern();
-            if (pattern == null || pattern.trim().isEmpty()) continue;
             
             // Look for headers that match this pattern
-            for (String headerLine : headerLines) {
+            for (int i = 0; i < headers.size(); i++) {
+                String headerLine = headers.line(i);
                 if (rule.isChunked()) {
                     // For chunked headers: exact match
-                    if (headerLine.trim().equals(pattern.trim())) {
+                    if (headers.trimmedLine(i).equals(rule.getTrimmedPattern())) {
                         isChunked = true;
                         break;
                     }
@@ -224,34 +249,29 @@ public class ParserUtils {
         }
         
         if (error != null) {
-            return new MessageLengthHeaderResult(headerLines, new byte[0], body, error, 0, null);
+            return new MessageLengthHeaderResult(headerLines, ByteSlice.EMPTY, body, error, 0, null);
         }
         
         // Handle chunked encoding
         if (isChunked) {
             // Basic chunked encoding parsing
-            ChunkedParseResult chunkedResult = parseChunkedBody(body, model.getChunkedLineEndings());
-            byte[] decodedBody = chunkedResult.decodedBody;
-            byte[] remaining = new byte[body.length - chunkedResult.bytesConsumed];
-            System.arraycopy(body, chunkedResult.bytesConsumed, remaining, 0, remaining.length);
+            ChunkedParseResult chunkedResult = parseChunkedBody(body.array(), body.offset(), body.end(), plan.getChunkedLineEnding());
+            ByteSlice remaining = body.slice(chunkedResult.bytesConsumed, body.length());
             
             // Return decoded body and remaining bytes without setting chunkedIncompleteTag
-            return new MessageLengthHeaderResult(headerLines, decodedBody, remaining, null, 0, null);
+            return new MessageLengthHeaderResult(headerLines, ByteSlice.of(chunkedResult.decodedBody), remaining, null, 0, null, chunkedResult.complete);
         }
         
         // Handle Content-Length
         if (contentLength >= 0) {
-            if (contentLength > body.length) {
-                int missing = contentLength - body.length;
-                byte[] partial = Arrays.copyOfRange(body, 0, body.length);
-                return new MessageLengthHeaderResult(headerLines, partial, new byte[0], null, missing, null);
+            if (contentLength > body.length()) {
+                int missing = contentLength - body.length();
+                return new MessageLengthHeaderResult(headerLines, body, body.slice(body.length(), body.length()), null, missing, null);
             }
-            byte[] reqBody = Arrays.copyOfRange(body, 0, contentLength);
-            byte[] remaining = Arrays.copyOfRange(body, contentLength, body.length);
-            return new MessageLengthHeaderResult(headerLines, reqBody, remaining, null, 0, null);
+            return new MessageLengthHeaderResult(headerLines, body.slice(0, contentLength), body.slice(contentLength, body.length()), null, 0, null);
         }
         // No relevant header found, treat as Content-Length 0
-        return new MessageLengthHeaderResult(headerLines, new byte[0], body, null, 0, null);
+        return new MessageLengthHeaderResult(headerLines, ByteSlice.EMPTY, body, null, 0, null);
     }
 
     public static class HeaderLinesBodyEncodingResult {
@@ -265,8 +285,12 @@ public class ParserUtils {
 
     public static HeaderLinesBodyEncodingResult runMessageLengthJs(HttpParserModel model, List<String> headerLines, byte[] body, byte[] buffer) {
         if (!model.isUseMessageLengthJs()) return new HeaderLinesBodyEncodingResult(headerLines, body);
+        return runMessageLengthJs(model.getMessageLengthScript(), headerLines, body, buffer);
+    }
+
+    static HeaderLinesBodyEncodingResult runMessageLengthJs(String script, List<String> headerLines, byte[] body, byte[] buffer) {
         try {
-            byte[][] res = JSEngine.runBodyLenScript(headerLines, body, buffer, model.getMessageLengthScript());
+            byte[][] res = JSEngine.runBodyLenScript(headerLines, body, buffer, script);
             List<String> outHeaderLines = new ArrayList<>(headerLines);
             if (res.length > 1 && res[1] != null) {
                 String h = new String(res[1], StandardCharsets.ISO_8859_1);
@@ -287,30 +311,49 @@ public class ParserUtils {
     private static class ChunkedParseResult {
         final byte[] decodedBody;
         final int bytesConsumed;
+        // True once the last chunk and its terminating empty line were seen (or the size line was malformed)
+        final boolean complete;
+        // When not complete: absolute offset of the chunk-size line a scan with more bytes can resume from
+        final int resumeOffset;
         
-        ChunkedParseResult(byte[] decodedBody, int bytesConsumed) {
+        ChunkedParseResult(byte[] decodedBody, int bytesConsumed, boolean complete, int resumeOffset) {
             this.decodedBody = decodedBody;
             this.bytesConsumed = bytesConsumed;
+            this.complete = complete;
+            this.resumeOffset = resumeOffset;
         }
     }
     
-    private static ChunkedParseResult parseChunkedBody(byte[] body, List<String> lineEndings) {
-        if (body == null || body.length == 0) return new ChunkedParseResult(new byte[0], 0);
-        
-        // Use default line ending if none specified
-        byte[] lineEnding = (lineEndings != null && !lineEndings.isEmpty()) 
-            ? decodeEscapedSequence(lineEndings.get(0)) 
-            : new byte[]{'\r', '\n'};
+    // Parses the chunked body in body[from, to); bytesConsumed is relative to from
+    private static ChunkedParseResult parseChunkedBody(byte[] body, int from, int to, byte[] lineEnding) {
+        return parseChunkedBody(body, from, to, lineEnding, new ByteArrayOutputStream());
+    }
+
+    /**
+     * Chunk framing only, from a chunk-size line of a chunked body in data[from, to).
+     * Returns -1 once the body is complete (or malformed), otherwise the offset of the
+     * chunk-size line where a scan over more bytes can resume: decoding from there gives
+     * the same framing as decoding the whole body again.
+     */
+    static int resumeChunkedScan(byte[] data, int from, int to, byte[] lineEnding) {
+        ChunkedParseResult result = parseChunkedBody(data, from, to, lineEnding, null);
+        return result.complete ? -1 : result.resumeOffset;
+    }
+
+    // out collects the decoded chunks; null when only the framing is needed
+    private static ChunkedParseResult parseChunkedBody(byte[] body, int from, int to, byte[] lineEnding, ByteArrayOutputStream out) {
+        if (body == null || from >= to) return new ChunkedParseResult(new byte[0], 0, false, from);
         
-        ByteArrayOutputStream result = new ByteArrayOutputStream();
-        int pos = 0;
+        ByteArrayOutputStream result = out;
+        int pos = from;
         
-        while (pos < body.length) {
+        while (pos < to) {
+            int lineStart = pos;
             // Find chunk size line
-            int lineEnd = indexOf(body, lineEnding, pos);
+            int lineEnd = indexOf(body, lineEnding, pos, to);
             if (lineEnd == -1) {
                 // No line ending found - return what we have so far
-                return new ChunkedParseResult(result.toByteArray(), pos);
+                return chunkedResult(result, pos - from, false, lineStart);
             }
             
             String sizeLine = new String(body, pos, lineEnd - pos, StandardCharsets.ISO_8859_1);
@@ -328,43 +371,52 @@ public class ParserUtils {
                 chunkSize = Integer.parseInt(sizeStr, 16);
             } catch (NumberFormatException e) {
                 // Invalid chunk size - return what we have so far
-                return new ChunkedParseResult(result.toByteArray(), pos);
+                return chunkedResult(result, pos - from, true, lineStart);
             }
             
             // Last chunk (size 0)
             if (chunkSize == 0) {
                 // Skip any trailer headers until we find empty line
+                boolean terminated = false;
                 int trailerEnd = pos;
-                while (trailerEnd + lineEnding.length <= body.length) {
-                    int nextLineEnd = indexOf(body, lineEnding, trailerEnd);
+                while (trailerEnd + lineEnding.length <= to) {
+                    int nextLineEnd = indexOf(body, lineEnding, trailerEnd, to);
                     if (nextLineEnd == -1) break;
                     
                     // Check if this is an empty line
                     if (nextLineEnd == trailerEnd) {
                         // Found empty line, skip past it
                         pos = trailerEnd + lineEnding.length;
+                        terminated = true;
                         break;
                     }
                     trailerEnd = nextLineEnd + lineEnding.length;
                 }
-                break;
+                return chunkedResult(result, pos - from, terminated, lineStart);
             }
             
             // Check if we have enough data for this chunk
-            if (pos + chunkSize > body.length) {
+            if (pos + chunkSize > to) {
                 // Not enough data - return what we have so far
-                return new ChunkedParseResult(result.toByteArray(), pos);
+                return chunkedResult(result, pos - from, false, lineStart);
             }
             
-            result.write(body, pos, chunkSize);
+            if (result != null) result.write(body, pos, chunkSize);
             pos += chunkSize;
             
             // Skip trailing CRLF after chunk data if present
-            if (pos + lineEnding.length <= body.length) {
+            if (pos + lineEnding.length <= to) {
                 pos += lineEnding.length;
+            } else {
+                // Whether the line ending is skipped depends on bytes not received yet
+                return chunkedResult(result, pos - from, false, lineStart);
             }
         }
         
-        return new ChunkedParseResult(result.toByteArray(), pos);
+        return chunkedResult(result, pos - from, false, pos);
+    }
+
+    private static ChunkedParseResult chunkedResult(ByteArrayOutputStream out, int bytesConsumed, boolean complete, int resumeOffset) {
+        return new ChunkedParseResult(out == null ? null : out.toByteArray(), bytesConsumed, complete, resumeOffset);
     }
 }
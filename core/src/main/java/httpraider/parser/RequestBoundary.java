@@ -0,0 +1,55 @@
+package httpraider.parser;
+
+/**
+ * Where one request starts and ends in the byte stream a proxy received, as reported by
+ * {@link MappedChainStream}. For the first parsing hop the offsets are file offsets; for later
+ * hops they are offsets into the stream of requests the previous hop forwarded.
+ * The request bytes themselves are not kept.
+ */
+public final class RequestBoundary {
+
+    private final String proxyId;
+    private final int hop;
+    private final long index;
+    private final long start;
+    private final long end;
+    private final ParsedRequest.Status status;
+    // Length of the request as the proxy rebuilt it (header rules, re-encoding...), -1 when not parsed
+    private final int parsedLength;
+    private final int missingBytes;
+    // Parse error or triggered firewall source, null otherwise
+    private final String detail;
+    private final boolean connectionClosed;
+
+    RequestBoundary(String proxyId, int hop, long index, long start, long end, ParsedRequest.Status status,
+                    int parsedLength, int missingBytes, String detail, boolean connectionClosed) {
+        this.proxyId = proxyId;
+        this.hop = hop;
+        this.index = index;
+        this.start = start;
+        this.end = end;
+        this.status = status;
+        this.parsedLength = parsedLength;
+        this.missingBytes = missingBytes;
+        this.detail = detail;
+        this.connectionClosed = connectionClosed;
+    }
+
+    public String getProxyId() { return proxyId; }
+    public int getHop() { return hop; }
+    public long getIndex() { return index; }
+    public long getStart() { return start; }
+    public long getEnd() { return end; }
+    public long getLength() { return end - start; }
+    public ParsedRequest.Status getStatus() { return status; }
+    public int getParsedLength() { return parsedLength; }
+    public int getMissingBytes() { return missingBytes; }
+    public String getDetail() { return detail; }
+    public boolean isConnectionClosed() { return connectionClosed; }
+
+    @Override
+    public String toString() {
+        return proxyId + "#" + index + " [" + start + ", " + end + ") " + status
+                + (detail != null ? " " + detail : "");
+    }
+}
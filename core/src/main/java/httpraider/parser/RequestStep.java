@@ -0,0 +1,136 @@
+package httpraider.parser;
+
+import java.util.List;
+
+/**
+ * Parses a single request starting at an offset of a buffer by running the
+ * {@link ParserStage} pipeline of a {@link ParserPlan}, and holds the per-request
+ * state the stages share. Used by the whole-buffer loop in {@link ParserChainRunner}
+ * and by {@link IncrementalRequestParser}; callers decide what to do with each outcome.
+ */
+public final class RequestStep {
+
+    enum Outcome {
+        // A request was parsed (it may still have been blocked by the firewall)
+        REQUEST,
+        // The header/body delimiter has not been seen yet
+        HEADERS_INCOMPLETE,
+        // Headers are complete but the body is not
+        BODY_INCOMPLETE,
+        // The request cannot be parsed with the current settings
+        ERROR
+    }
+
+    static final class FirewallCheckResult {
+        static final FirewallCheckResult PASSED = new FirewallCheckResult();
+
+        boolean blocked = false;
+        boolean closeConnection = false;
+        String triggeredSource = "";
+    }
+
+    // --- Input
+    final ParserPlan plan;
+    final byte[] data;
+    final int pos;
+    final int end;
+    // Report HEADERS_INCOMPLETE instead of treating an unterminated header block as the whole request
+    final boolean requireHeaderEnd;
+    // Report BODY_INCOMPLETE when a chunked body has not reached its last chunk
+    final boolean requireCompleteBody;
+
+    // --- Shared between stages
+    int headerEnd;
+    List<String> headerLines;
+    // Header lines as they were when the message length was computed
+    List<String> lengthHeaderLines;
+    HeaderIndex headers;
+    // Request line as returned by the request-line script, null when there is none
+    String scriptedRequestLine;
+    // Bytes following the header block
+    ByteSlice rest;
+    MessageLengthHeaderResult lenResult;
+    boolean preserveChunked;
+    ByteSlice originalChunkedBody;
+
+    // --- Result
+    Outcome outcome = Outcome.REQUEST;
+    String error;
+    // False when the header block ran to the end of the buffer without a delimiter
+    boolean headerTerminated = true;
+    // Final body for REQUEST, the body bytes received so far for BODY_INCOMPLETE
+    ByteSlice body = ByteSlice.EMPTY;
+    // Bytes following this request in the buffer
+    ByteSlice remaining = ByteSlice.EMPTY;
+    // Missing body bytes for BODY_INCOMPLETE, 0 when unknown (chunked)
+    int missingBytes;
+    byte[] request;
+    FirewallCheckResult firewall = FirewallCheckResult.PASSED;
+
+    private RequestStep(ParserPlan plan, byte[] data, int pos, int end,
+                        boolean requireHeaderEnd, boolean requireCompleteBody) {
+        this.plan = plan;
+        this.data = data;
+        this.pos = pos;
+        this.end = end;
+        this.requireHeaderEnd = requireHeaderEnd;
+        this.requireCompleteBody = requireCompleteBody;
+    }
+
+    static RequestStep parse(ParserPlan plan, byte[] data, int pos, int end,
+                             boolean requireHeaderEnd, boolean requireCompleteBody) {
+        return parse(plan, data, pos, end, requireHeaderEnd, requireCompleteBody, null);
+    }
+
+    static RequestStep parse(ParserPlan plan, byte[] data, int pos, int end,
+                             boolean requireHeaderEnd, boolean requireCompleteBody, ParserStage.Hook hook) {
+        RequestStep step = new RequestStep(plan, data, pos, end, requireHeaderEnd, requireCompleteBody);
+        ParserStage[] stages = plan.pipeline();
+        if (hook == null) {
+            for (ParserStage stage : stages) {
+                if (!stage.apply(step)) break;
+            }
+        } else {
+            for (ParserStage stage : stages) {
+                hook.beforeStage(stage);
+                boolean proceed = stage.apply(step);
+                hook.afterStage(stage, step, proceed);
+                if (!proceed) break;
+            }
+        }
+        return step;
+    }
+
+    // Ends parsing of this request with an error; returns false so stages can "return step.fail(...)"
+    boolean fail(String message) {
+        outcome = Outcome.ERROR;
+        error = message;
+        return false;
+    }
+
+    boolean stop(Outcome outcome) {
+        this.outcome = outcome;
+        return false;
+    }
+
+    // Bytes of the request as the last stage left it: the built request once there is one,
+    // otherwise the header lines split so far plus the body selected so far
+    public int getCurrentSize() {
+        if (request != null) return request.length;
+        int size = body.length();
+        if (headerLines != null) {
+            for (String line : headerLines) size += line.length();
+        }
+        return size;
+    }
+
+    // Offset of the request in the buffer being parsed
+    public int getStart() {
+        return pos;
+    }
+
+    // Offset just past the header block, 0 until the header lines were split
+    public int getHeaderEnd() {
+        return headerEnd;
+    }
+}
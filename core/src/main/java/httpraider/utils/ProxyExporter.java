@@ -0,0 +1,249 @@
+package httpraider.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonSyntaxException;
+import httpraider.model.network.ConnectionModel;
+import httpraider.model.network.NetworkModel;
+import httpraider.model.network.ProxyModel;
+import httpraider.model.network.HttpParserModel;
+import httpraider.model.network.LoadBalancingRule;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProxyExporter {
+    
+    private static final Gson gson = new GsonBuilder()
+            .setPrettyPrinting()
+            .create();
+    
+    /**
+     * Exports a ProxyModel to a JSON file
+     * @param proxy The proxy to export
+     * @param file The file to write to
+     * @throws IOException If there's an error writing the file
+     */
+    public static void exportProxy(ProxyModel proxy, File file) throws IOException {
+        // Create a data transfer object that excludes the ID
+        ProxyExportData exportData = new ProxyExportData(proxy);
+        
+        String json = gson.toJson(exportData);
+        Files.writeString(file.toPath(), json, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Imports a ProxyModel from a JSON file
+     * @param file The file to read from
+     * @return The imported ProxyModel with a new ID
+     * @throws IOException If there's an error reading the file
+     * @throws JsonSyntaxException If the JSON is invalid
+     */
+    public static ProxyModel importProxy(File file) throws IOException, JsonSyntaxException {
+        String json = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        ProxyExportData exportData = gson.fromJson(json, ProxyExportData.class);
+        
+        return exportData.toProxyModel();
+    }
+    
+    /**
+     * Exports a whole network (proxies with their forwarding rules, and connections) to a JSON file.
+     * Proxy ids are kept so forwarding rules and connections still point at the right proxies.
+     * @param network The network to export
+     * @param file The file to write to
+     * @throws IOException If there's an error writing the file
+     */
+    public static void exportNetwork(NetworkModel network, File file) throws IOException {
+        NetworkExportData exportData = new NetworkExportData();
+        for (ProxyModel proxy : network.getProxies()) {
+            NetworkProxyData entry = new NetworkProxyData();
+            entry.id = proxy.getId();
+            entry.domainName = proxy.getDomainName();
+            entry.description = proxy.getDescription();
+            entry.isClient = proxy.isClient();
+            entry.showParser = proxy.isShowParser();
+            entry.parserSettings = proxy.getParserSettings();
+            exportData.proxies.add(entry);
+        }
+        for (ConnectionModel connection : network.getConnections()) {
+            exportData.connections.add(new NetworkConnectionData(connection.getFromId(), connection.getToId()));
+        }
+        Files.writeString(file.toPath(), gson.toJson(exportData), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Imports a network written by {@link #exportNetwork}, or written by hand. A proxy entry either
+     * holds its settings inline or names a proxy file written by {@link #exportProxy} ("file",
+     * relative to the network file). Exported proxy files carry no forwarding rules, so an entry can
+     * add them with "forwardingRules"; rule targets and connections use the entry ids.
+     * The client entry, if any, is mapped onto the network's own client.
+     * @param file The file to read from
+     * @return The imported network
+     * @throws IOException If there's an error reading the file or a referenced proxy file
+     * @throws JsonSyntaxException If the JSON is invalid
+     */
+    public static NetworkModel importNetwork(File file) throws IOException, JsonSyntaxException {
+        String json = Files.readString(file.toPath(), StandardCharsets.UTF_8);
+        NetworkExportData exportData = gson.fromJson(json, NetworkExportData.class);
+        if (exportData == null || exportData.proxies == null) {
+            throw new IOException("No proxies in " + file);
+        }
+
+        NetworkModel network = new NetworkModel();
+        Map<String, String> ids = new HashMap<>();
+        for (NetworkProxyData entry : exportData.proxies) {
+            if (entry.id == null || entry.id.isEmpty()) {
+                throw new IOException("Proxy entry without an id in " + file);
+            }
+            ProxyModel loaded = null;
+            if (entry.file != null) {
+                Path proxyPath = file.toPath().toAbsolutePath().getParent().resolve(entry.file);
+                loaded = importProxy(proxyPath.toFile());
+            }
+            boolean client = loaded != null ? loaded.isClient() : entry.isClient;
+            if (client) {
+                // The client only forwards, keep its forwarding rules
+                List<LoadBalancingRule> rules = entry.forwardingRules;
+                if (rules == null && loaded == null && entry.parserSettings != null) {
+                    rules = entry.parserSettings.getLoadBalancingRules();
+                }
+                if (rules != null) {
+                    network.getProxy(ProxyModel.CLIENT_ID).getParserSettings().setLoadBalancingRules(rules);
+                }
+                ids.put(entry.id, ProxyModel.CLIENT_ID);
+                continue;
+            }
+            ProxyModel proxy = new ProxyModel(entry.id,
+                    loaded != null ? loaded.getDomainName() : entry.domainName,
+                    loaded != null ? loaded.getDescription() : entry.description);
+            proxy.setShowParser(loaded != null ? loaded.isShowParser() : entry.showParser);
+            HttpParserModel settings = loaded != null ? loaded.getParserSettings() : entry.parserSettings;
+            proxy.setParserSettings(settings != null ? settings : new HttpParserModel());
+            if (entry.forwardingRules != null) {
+                proxy.getParserSettings().setLoadBalancingRules(entry.forwardingRules);
+            }
+            network.addProxy(proxy);
+            ids.put(entry.id, entry.id);
+        }
+
+        if (exportData.connections != null) {
+            for (NetworkConnectionData connection : exportData.connections) {
+                String from = ids.get(connection.from);
+                String to = ids.get(connection.to);
+                if (from == null || to == null) {
+                    throw new IOException("Connection " + connection.from + " -> " + connection.to + " names an unknown proxy");
+                }
+                network.addConnection(from, to);
+            }
+        }
+        for (ProxyModel proxy : network.getProxies()) {
+            if (proxy.getParserSettings() == null || proxy.getParserSettings().getLoadBalancingRules() == null) continue;
+            for (LoadBalancingRule rule : proxy.getParserSettings().getLoadBalancingRules()) {
+                String target = rule.getForwardToProxyId();
+                if (target != null && ids.containsKey(target)) {
+                    rule.setForwardToProxyId(ids.get(target));
+                }
+            }
+        }
+        return network;
+    }
+
+    private static class NetworkExportData {
+        private List<NetworkProxyData> proxies = new ArrayList<>();
+        private List<NetworkConnectionData> connections = new ArrayList<>();
+    }
+
+    private static class NetworkProxyData {
+        private String id;
+        // Proxy file written by exportProxy, relative to the network file; replaces the inline fields
+        private String file;
+        private String domainName;
+        private String description;
+        private boolean isClient;
+        private boolean showParser;
+        private HttpParserModel parserSettings;
+        private List<LoadBalancingRule> forwardingRules;
+    }
+
+    private static class NetworkConnectionData {
+        private String from;
+        private String to;
+
+        NetworkConnectionData(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * Data transfer object for exporting/importing proxies
+     * Excludes the ID field since it should be regenerated on import
+     */
+    private static class ProxyExportData {
+        private String domainName;
+        private String description;
+        private boolean isClient;
+        private boolean showParser;
+        private HttpParserModel parserSettings;
+        
+        // Constructor for export
+        public ProxyExportData(ProxyModel proxy) {
+            this.domainName = proxy.getDomainName();
+            this.description = proxy.getDescription();
+            this.isClient = proxy.isClient();
+            this.showParser = proxy.isShowParser();
+            
+            // Copy parser settings but exclude forwarding rules
+            this.parserSettings = copyParserSettingsWithoutForwardingRules(proxy.getParserSettings());
+        }
+        
+        // Convert back to ProxyModel with new ID
+        public ProxyModel toProxyModel() {
+            ProxyModel proxy = new ProxyModel(domainName);
+            proxy.setDescription(description);
+            proxy.setClient(isClient);
+            proxy.setShowParser(showParser);
+            proxy.setParserSettings(parserSettings);
+            return proxy;
+        }
+        
+        private HttpParserModel copyParserSettingsWithoutForwardingRules(HttpParserModel original) {
+            HttpParserModel copy = new HttpParserModel();
+            
+            // Copy all settings except loadBalancingRules
+            copy.setHeaderLineEndings(original.getHeaderLineEndings());
+            copy.setAllowHeaderFolding(original.isAllowHeaderFolding());
+            copy.setDeleteHeaderRules(original.getDeleteHeaderRules());
+            copy.setAddHeaderRules(original.getAddHeaderRules());
+            copy.setBodyLenHeaderRules(original.getBodyLenHeaderRules());
+            copy.setChunkedLineEndings(original.getChunkedLineEndings());
+            copy.setRequestLineDelimiters(original.getRequestLineDelimiters());
+            copy.setRewriteMethodEnabled(original.isRewriteMethodEnabled());
+            copy.setFromMethod(original.getFromMethod());
+            copy.setToMethod(original.getToMethod());
+            copy.setDecodeUrlBeforeForwarding(original.isDecodeUrlBeforeForwarding());
+            copy.setUrlDecodeFrom(original.getUrlDecodeFrom());
+            copy.setUrlDecodeTo(original.getUrlDecodeTo());
+            copy.setForcedHttpVersion(original.getForcedHttpVersion());
+            copy.setCustomHttpVersion(original.getCustomHttpVersion());
+            copy.setUseHeaderLinesJs(original.isUseHeaderLinesJs());
+            copy.setHeaderLinesScript(original.getHeaderLinesScript());
+            copy.setUseRequestLineJs(original.isUseRequestLineJs());
+            copy.setRequestLineScript(original.getRequestLineScript());
+            copy.setUseMessageLengthJs(original.isUseMessageLengthJs());
+            copy.setMessageLengthScript(original.getMessageLengthScript());
+            copy.setOutputBodyEncoding(original.getOutputBodyEncoding());
+            
+            // Explicitly set empty forwarding rules
+            copy.setLoadBalancingRules(new java.util.ArrayList<>());
+            
+            return copy;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,53 @@
+package httpraider;
+
+import httpraider.parser.ParserChainRunner;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The core module must stay free of Montoya and Swing: nothing on its classpath provides them,
+ * and no compiled core class refers to them.
+ */
+class CoreDependenciesTest {
+
+    // Internal names as they appear in the constant pool of a class file
+    private static final String[] FORBIDDEN = {"burp/", "javax/swing/", "java/awt/"};
+
+    @Test
+    void burpAndSwingAreNotOnTheClasspath() {
+        assertThrows(ClassNotFoundException.class, () -> Class.forName("burp.api.montoya.MontoyaApi"));
+    }
+
+    @Test
+    void coreClassesDoNotReferenceBurpOrSwing() throws IOException, URISyntaxException {
+        Path classes = Path.of(ParserChainRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        assertTrue(Files.isDirectory(classes), "expected a classes directory: " + classes);
+
+        List<String> offenders = new ArrayList<>();
+        int checked = 0;
+        try (Stream<Path> files = Files.walk(classes)) {
+            for (Path file : (Iterable<Path>) files.filter(p -> p.toString().endsWith(".class"))::iterator) {
+                checked++;
+                // The constant pool stores class names as modified UTF-8, plain ASCII for these prefixes
+                String content = new String(Files.readAllBytes(file), StandardCharsets.ISO_8859_1);
+                for (String prefix : FORBIDDEN) {
+                    if (content.contains(prefix)) offenders.add(classes.relativize(file) + " -> " + prefix);
+                }
+            }
+        }
+        assertTrue(checked > 0, "no classes under " + classes);
+        assertEquals(List.of(), offenders);
+    }
+}
@@ -0,0 +1,157 @@
+package httpraider.controller.engines;
+
+import httpraider.model.network.FirewallRule;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Rules compiled to Java must give Rhino's verdict: the stock firewall templates with typical bodies,
+ * load-balancing assignments and translated regular expressions.
+ */
+class NativeRulesTest {
+
+    private static final String[] INPUTS = {
+            "", "GET", "get", "POST", "TRACE", "/admin/config.php", "/ADMIN", "/api/users?x=1", "HTTP/1.1", "HTTP/2",
+            "Straße", "STRASSE", "İndex /admin", "ſelect", "union select * from", "UNION  SELECT", "café CAFÉ",
+            "<script>alert(1)</script>", "a\nb\r\nc", "ab ab_ab-ab", "..%2f..%2f", "12345"
+    };
+    private static final String[][] HEADER_SETS = {
+            {}, {"Host: x"}, {"Host: a", "host: b", "HOST: c"}, {"Transfer-Encoding: chunked", "Content-Length: 5"},
+            {"X-Forwarded-Host: evil", "İf-Match: x"}, {"content-length: 1", "Content-Length: 2"}, {"Te: trailers", "Hostx: y"}
+    };
+    private static final Map<FirewallRule.Source, String[]> TEMPLATE_BODIES = Map.of(
+            FirewallRule.Source.METHOD, new String[]{"return isMethod('TRACE');", "return isMethodInList(['GET', 'post']);",
+                    "return !isMethod('GET') && !isMethod('POST');"},
+            FirewallRule.Source.URL, new String[]{"return containsPath('/admin');", "return startsWithPath('/API') || endsWithExtension('.php');",
+                    "if (containsPath('..%2f')) { return true; }\nreturn false;", "return containsPath('İ');"},
+            FirewallRule.Source.VERSION, new String[]{"return isVersion('HTTP/2');", "return !isVersion('HTTP/1.1')"},
+            FirewallRule.Source.BODY, new String[]{"return containsText('union select');", "return matchesRegex('union\\\\s+select');",
+                    "return matchesRegex('<script[^>]*>');", "return containsText('café');"},
+            FirewallRule.Source.FULL_REQUEST, new String[]{"return input.indexOf('admin') >= 0;", "return input.length > 10;"}
+    );
+    private static final String[] HEADER_BODIES = {
+            "return hasHeader('Transfer-Encoding');", "return countHeaders('Host') > 1;",
+            "return getHeaderValue('x-forwarded-host') !== null;", "return countHeaders('content-length') >= 2 || hasHeader('te');",
+            "return hasHeader('if-match');", "return getHeaderValue('Host') === null;"
+    };
+
+    @Test
+    void stockTemplatesMatchRhino() {
+        for (Map.Entry<FirewallRule.Source, String[]> entry : TEMPLATE_BODIES.entrySet()) {
+            for (String body : entry.getValue()) {
+                String rule = withBody(FirewallRule.defaultJsCode(entry.getKey()), body);
+                Predicate<Object> compiled = NativeRules.compileFirewallRule(rule, false);
+                assertNotNull(compiled, body);
+                for (String input : INPUTS) {
+                    assertEquals(JSEngine.runFirewallRule(rule, input), compiled.test(input), body + " on " + input);
+                }
+            }
+        }
+        for (String body : HEADER_BODIES) {
+            String rule = withBody(FirewallRule.defaultJsCode(FirewallRule.Source.HEADERS), body);
+            Predicate<Object> compiled = NativeRules.compileFirewallRule(rule, true);
+            assertNotNull(compiled, body);
+            for (String[] headers : HEADER_SETS) {
+                assertEquals(JSEngine.runFirewallRuleArray(rule, headers), compiled.test(headers),
+                        body + " on " + Arrays.toString(headers));
+            }
+        }
+    }
+
+    @Test
+    void unsupportedRulesStayInJs() {
+        assertNull(NativeRules.compileFirewallRule("return foo(input);", false));
+        assertNull(NativeRules.compileFirewallRule("var x = 1; return true;", false));
+        // A headers rule has no 'input' binding
+        assertNull(NativeRules.compileFirewallRule("return input.includes('a');", true));
+        // An invalid pattern is left to Rhino's SyntaxError and the template's catch
+        assertNull(NativeRules.compileFirewallRule(withBody(FirewallRule.defaultJsCode(FirewallRule.Source.BODY), "return matchesRegex('(');"), false));
+    }
+
+    @Test
+    void trailingLineCommentStaysInJs() {
+        // The comment also swallows the closing of the function the body is wrapped in: the rule never blocks
+        String[] bodies = {
+                "return input.includes('a'); // block a",
+                "return input.includes('a');\n// return false;"
+        };
+        for (String body : bodies) {
+            assertNull(NativeRules.compileFirewallRule(body, false), body);
+            assertEquals(false, JSEngine.runFirewallRule(body, "abc /admin"), body);
+        }
+        // Followed by a newline, or inside a string, it is an ordinary comment
+        String commented = "return input.includes('a'); // block a\n";
+        assertNotNull(NativeRules.compileFirewallRule(commented, false));
+        assertEquals(true, JSEngine.runFirewallRule(commented, "abc"));
+        assertNotNull(NativeRules.compileFirewallRule("return input.includes('//');", false));
+    }
+
+    @Test
+    void loadBalancingRulesMatchRhino() {
+        String[] rules = {
+                "result = headers.includes('X-Canary: 1');", "var result = /cookie:\\s*beta=1/i.test(headers);",
+                "output = body.length > 10;", "result = headers.toLowerCase().indexOf('host: admin') !== -1 && body.includes('x')",
+                "result = false; output = true;", "result = headers.includes('a'); result = body.includes('b');"
+        };
+        String[][] inputs = {
+                {"GET / HTTP/1.1\r\nHost: admin\r\nX-Canary: 1", "hello world x"},
+                {"GET / HTTP/1.1\r\nCookie: BETA=1", ""},
+                {"POST / HTTP/1.1\r\nHost: b", "b"}
+        };
+        for (String rule : rules) {
+            BiPredicate<String, String> compiled = NativeRules.loadBalancingRule(rule);
+            assertNotNull(compiled, rule);
+            for (String[] input : inputs) {
+                Object result = JSEngine.runJsBooleanRule(rule, input[0], input[1]);
+                boolean expected = result instanceof Boolean ? (Boolean) result
+                        : result instanceof String && Boolean.parseBoolean((String) result);
+                assertEquals(expected, compiled.test(input[0], input[1]), rule + " on " + input[0]);
+            }
+        }
+    }
+
+    @Test
+    void translatedRegexMatchesRhino() {
+        String[] atoms = {"a", "b", "A", "_", "-", ".", "\\d", "\\w", "\\s", "\\S", "\\W", "\\b", "\\B", "[ab]", "[^a]",
+                "[a-c]", "[\\s-]", "\\.", "^", "$", "(a|b)", "(?:ab|c)", "(?=a)", "(?!b)", "\\x41", "\\u0061", "[\\b]"};
+        String[] quantifiers = {"", "", "", "*", "+", "?", "{2}", "{1,3}", "*?", "+?"};
+        String alphabet = "aAbB_- \t\n\r.éÉſK09c";
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            StringBuilder pattern = new StringBuilder();
+            int length = 1 + random.nextInt(5);
+            for (int i = 0; i < length; i++) {
+                pattern.append(atoms[random.nextInt(atoms.length)]).append(quantifiers[random.nextInt(quantifiers.length)]);
+            }
+            boolean ignoreCase = random.nextBoolean();
+            Pattern translated = NativeRules.RegexTranslator.translate(pattern.toString(), ignoreCase);
+            if (translated == null) continue;
+            String literal = pattern.toString().replace("\\", "\\\\").replace("'", "\\'");
+            String rule = "return new RegExp('" + literal + "', '" + (ignoreCase ? "i" : "") + "').test(input);";
+            for (int i = 0; i < 4; i++) {
+                StringBuilder input = new StringBuilder();
+                int inputLength = random.nextInt(8);
+                for (int j = 0; j < inputLength; j++) input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                assertEquals(JSEngine.runFirewallRule(rule, input.toString()), translated.matcher(input).find(),
+                        "/" + pattern + "/" + (ignoreCase ? "i" : "") + " on " + input);
+            }
+        }
+    }
+
+    private static String withBody(String template, String body) {
+        String placeholder = "// Your code here\nreturn false;";
+        assertTrue(template.contains(placeholder), "template placeholder");
+        return template.replace(placeholder, body);
+    }
+}
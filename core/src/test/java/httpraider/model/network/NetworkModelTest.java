@@ -0,0 +1,108 @@
+package httpraider.model.network;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The adjacency and BFS index must agree with a fresh search over the connections after any edit sequence.
+ */
+class NetworkModelTest {
+
+    @Test
+    void indexMatchesFreshSearchAfterRandomEdits() throws Exception {
+        Random random = new Random(3);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            NetworkModel network = new NetworkModel();
+            List<String> ids = new ArrayList<>(List.of(ProxyModel.CLIENT_ID));
+            for (int op = 0; op < 60; op++) {
+                int kind = random.nextInt(10);
+                if (kind < 2) {
+                    ProxyModel proxy = new ProxyModel("p");
+                    network.addProxy(proxy);
+                    ids.add(proxy.getId());
+                } else if (kind < 6) {
+                    network.addConnection(ids.get(random.nextInt(ids.size())), ids.get(random.nextInt(ids.size())));
+                } else if (kind < 8 && !network.getConnections().isEmpty()) {
+                    List<ConnectionModel> connections = new ArrayList<>(network.getConnections());
+                    ConnectionModel connection = connections.get(random.nextInt(connections.size()));
+                    network.removeConnection(connection.getFromId(), connection.getToId());
+                } else if (kind < 9 && ids.size() > 2) {
+                    network.removeProxy(ids.remove(1 + random.nextInt(ids.size() - 1)));
+                } else if (random.nextInt(4) == 0) {
+                    // The index is transient and rebuilt after deserialization
+                    network = roundTrip(network);
+                }
+                for (String id : ids) assertIndexed(network, id);
+            }
+        }
+    }
+
+    private static void assertIndexed(NetworkModel network, String id) {
+        Set<String> neighbours = new HashSet<>();
+        for (String neighbour : neighbours(network, id)) {
+            if (network.getProxy(neighbour) != null) neighbours.add(neighbour);
+        }
+        Set<String> indexed = new HashSet<>();
+        for (ProxyModel proxy : network.getDirectConnections(id)) indexed.add(proxy.getId());
+        assertEquals(neighbours, indexed, "neighbours of " + id);
+
+        int distance = distanceFromClient(network, id);
+        List<ProxyModel> path = network.getPathToClient(id);
+        if (distance <= 0) {
+            assertNull(path, "path of " + id);
+            return;
+        }
+        assertEquals(distance, path.size() + 1, "distance of " + id);
+        String previous = ProxyModel.CLIENT_ID;
+        for (ProxyModel hop : path) {
+            assertTrue(neighbours(network, previous).contains(hop.getId()), "path of " + id);
+            previous = hop.getId();
+        }
+        assertTrue(neighbours(network, previous).contains(id), "path of " + id);
+    }
+
+    private static Set<String> neighbours(NetworkModel network, String id) {
+        Set<String> result = new HashSet<>();
+        for (ConnectionModel connection : network.getConnections()) {
+            if (connection.getFromId().equals(id)) result.add(connection.getToId());
+            if (connection.getToId().equals(id)) result.add(connection.getFromId());
+        }
+        return result;
+    }
+
+    private static int distanceFromClient(NetworkModel network, String target) {
+        Map<String, Integer> distances = new HashMap<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        distances.put(ProxyModel.CLIENT_ID, 0);
+        queue.add(ProxyModel.CLIENT_ID);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            for (String neighbour : neighbours(network, current)) {
+                if (!distances.containsKey(neighbour) && network.getProxy(neighbour) != null) {
+                    distances.put(neighbour, distances.get(current) + 1);
+                    queue.add(neighbour);
+                }
+            }
+        }
+        return distances.getOrDefault(target, -1);
+    }
+
+    private static NetworkModel roundTrip(NetworkModel network) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(network);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (NetworkModel) in.readObject();
+        }
+    }
+}
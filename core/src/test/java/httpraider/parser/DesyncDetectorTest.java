@@ -0,0 +1,198 @@
+package httpraider.parser;
+
+import httpraider.model.network.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Known smuggling setups on client-to-backend chains, with the positions mapped back to the client input.
+ */
+class DesyncDetectorTest {
+
+    private static final String CL_TE_INPUT = "POST / HTTP/1.1\r\nHost: a\r\nContent-Length: 6\r\nTransfer-Encoding: chunked\r\n\r\n"
+            + "0\r\n\r\nGET /smuggled HTTP/1.1\r\nHost: a\r\n\r\n";
+
+    @Test
+    void clTe() {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        front.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+        back.getParserSettings().setBodyLenHeaderRules(chunkedFirst());
+
+        DesyncDetector.Divergence divergence = single(chain(front, back), CL_TE_INPUT);
+        assertEquals(DesyncDetector.Kind.CL_TE, divergence.getKind());
+        assertEquals(front.getId(), divergence.getUpstreamId());
+        assertEquals(back.getId(), divergence.getDownstreamId());
+        assertEquals(80, divergence.getPosition());
+        assertEquals(81, divergence.getUpstreamEnd());
+        assertEquals(80, divergence.getDownstreamEnd());
+        // The smuggled request ends where the front's next request would
+        assertEquals(115, divergence.getResync());
+    }
+
+    @Test
+    void clTeFixedByDeletingTransferEncoding() {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        front.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+        front.getParserSettings().setDeleteHeaderRules(List.of("Transfer-Encoding"));
+        back.getParserSettings().setBodyLenHeaderRules(chunkedFirst());
+
+        assertFalse(detect(chain(front, back), CL_TE_INPUT).hasDesync());
+    }
+
+    @Test
+    void teCl() {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        front.getParserSettings().setBodyLenHeaderRules(chunkedFirst());
+        front.getParserSettings().setOutputBodyEncoding(HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY);
+        back.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+
+        DesyncDetector.Divergence divergence = single(chain(front, back),
+                "POST / HTTP/1.1\r\nHost: a\r\nContent-Length: 3\r\nTransfer-Encoding: chunked\r\n\r\n8\r\nSMUGGLED\r\n0\r\n\r\n");
+        assertEquals(DesyncDetector.Kind.CL_TE, divergence.getKind());
+        assertEquals(78, divergence.getPosition());
+        assertEquals(93, divergence.getUpstreamEnd());
+        assertEquals(78, divergence.getDownstreamEnd());
+    }
+
+    @Test
+    void headerAddedUpstreamIsComparedAsForwarded() {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        front.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+        front.getParserSettings().setAddHeaderRules(List.of("Transfer-Encoding: chunked"));
+        back.getParserSettings().setBodyLenHeaderRules(chunkedFirst());
+
+        DesyncDetector.Divergence divergence = single(chain(front, back),
+                "POST / HTTP/1.1\r\nHost: a\r\nContent-Length: 6\r\n\r\n0\r\n\r\nX");
+        assertEquals(DesyncDetector.Kind.CL_TE, divergence.getKind());
+        assertEquals(52, divergence.getPosition());
+        assertEquals(53, divergence.getUpstreamEnd());
+        assertEquals(52, divergence.getDownstreamEnd());
+    }
+
+    @Test
+    void headerFolding() {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        front.getParserSettings().setOutputBodyEncoding(HttpParserModel.MessageLenBodyEncoding.DONT_MODIFY);
+        back.getParserSettings().setAllowHeaderFolding(true);
+
+        DesyncDetector.Divergence divergence = single(chain(front, back),
+                "POST / HTTP/1.1\r\nHost: a\r\nContent-Length: 6\r\nX: a\r\n Transfer-Encoding: chunked\r\n\r\n0\r\n\r\nG");
+        assertEquals(DesyncDetector.Kind.HEADER_FOLDING, divergence.getKind());
+        assertEquals(87, divergence.getPosition());
+    }
+
+    @Test
+    void headerDelimiter() {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        back.getParserSettings().setHeaderLineEndings(new ArrayList<>(List.of("\\n", "\\r\\n")));
+
+        DesyncDetector.Divergence divergence = single(chain(front, back),
+                "GET / HTTP/1.1\nHost: a\n\nGET /x HTTP/1.1\r\nHost: a\r\n\r\n");
+        assertEquals(DesyncDetector.Kind.HEADER_DELIMITER, divergence.getKind());
+        assertEquals(24, divergence.getPosition());
+        assertEquals(52, divergence.getResync());
+    }
+
+    @Test
+    void divergenceBehindAnAgreeingHop() {
+        ProxyModel first = new ProxyModel("first");
+        ProxyModel second = new ProxyModel("second");
+        ProxyModel backend = new ProxyModel("backend");
+        first.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+        second.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+        backend.getParserSettings().setBodyLenHeaderRules(chunkedFirst());
+        // Without a rule the middle hop would forward to its first neighbour, the client
+        LoadBalancingRule rule = new LoadBalancingRule();
+        rule.setEnabled(true);
+        rule.setRuleType(RuleType.URL);
+        rule.setMatchOption(MatchMode.PREFIX);
+        rule.setPattern("/");
+        rule.setForwardToProxyId(backend.getId());
+        second.getParserSettings().setLoadBalancingRules(new ArrayList<>(List.of(rule)));
+
+        DesyncDetector.Divergence divergence = single(chain(first, second, backend), CL_TE_INPUT);
+        assertEquals(second.getId(), divergence.getUpstreamId());
+        assertEquals(backend.getId(), divergence.getDownstreamId());
+        assertEquals(DesyncDetector.Kind.CL_TE, divergence.getKind());
+        assertEquals(80, divergence.getPosition());
+    }
+
+    @Test
+    void identicalHopsAgree() {
+        NetworkModel network = chain(new ProxyModel("x"), new ProxyModel("y"), new ProxyModel("z"));
+        assertFalse(detect(network, "GET /p HTTP/1.1\r\nHost: a\r\n\r\n" + CL_TE_INPUT).hasDesync());
+    }
+
+    @Test
+    void everyHopIsFramedOnce() {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel middle = new ProxyModel("middle");
+        ProxyModel back = new ProxyModel("back");
+        front.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+        back.getParserSettings().setBodyLenHeaderRules(chunkedFirst());
+        DesyncDetector detector = new DesyncDetector(chain(front, middle, back), null);
+
+        // What the fuzzer does: its framer runs the coverage hook, so it must see each hop exactly once
+        int[] calls = new int[detector.getHops().size()];
+        List<ProxyModel> hops = detector.getHops();
+        DesyncDetector.Report report = detector.detect(bytes("GET /p HTTP/1.1\r\nHost: a\r\n\r\n" + CL_TE_INPUT), false,
+                (hop, data) -> {
+                    calls[hop]++;
+                    return ParserChainRunner.parseStream(ParserPlan.forModel(hops.get(hop).getParserSettings()), data, true);
+                });
+        assertArrayEquals(new int[]{1, 1, 1}, calls);
+        assertEquals(detect(chain(front, middle, back), "GET /p HTTP/1.1\r\nHost: a\r\n\r\n" + CL_TE_INPUT).getDivergences().toString(),
+                report.getDivergences().toString());
+    }
+
+    private static DesyncDetector.Report detect(NetworkModel network, String input) {
+        return new DesyncDetector(network, null).detect(bytes(input));
+    }
+
+    private static DesyncDetector.Divergence single(NetworkModel network, String input) {
+        List<DesyncDetector.Divergence> divergences = detect(network, input).getDivergences();
+        assertEquals(1, divergences.size(), divergences.toString());
+        return divergences.get(0);
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // Client, then each hop connected to the previous one
+    private static NetworkModel chain(ProxyModel... hops) {
+        NetworkModel network = new NetworkModel();
+        String previous = ProxyModel.CLIENT_ID;
+        for (ProxyModel hop : hops) {
+            network.addProxy(hop);
+            network.addConnection(previous, hop.getId());
+            previous = hop.getId();
+        }
+        return network;
+    }
+
+    private static List<HttpParserModel.BodyLenHeaderRule> contentLengthFirst() {
+        return new ArrayList<>(List.of(
+                new HttpParserModel.BodyLenHeaderRule("Content-Length: ", false, HttpParserModel.DuplicateHandling.FIRST),
+                new HttpParserModel.BodyLenHeaderRule("Transfer-Encoding: chunked", true, HttpParserModel.DuplicateHandling.FIRST)));
+    }
+
+    private static List<HttpParserModel.BodyLenHeaderRule> chunkedFirst() {
+        return new ArrayList<>(List.of(
+                new HttpParserModel.BodyLenHeaderRule("Transfer-Encoding: chunked", true, HttpParserModel.DuplicateHandling.FIRST),
+                new HttpParserModel.BodyLenHeaderRule("Content-Length: ", false, HttpParserModel.DuplicateHandling.FIRST)));
+    }
+}
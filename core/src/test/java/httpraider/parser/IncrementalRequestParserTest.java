@@ -0,0 +1,150 @@
+package httpraider.parser;
+
+import httpraider.model.network.FirewallRule;
+import httpraider.model.network.HttpParserModel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Once finished, the incremental parser must emit the requests of a whole-buffer parse,
+ * whatever the parser settings and the feed sizes.
+ */
+class IncrementalRequestParserTest {
+
+    private static final String[][] ENDING_SETS = {
+            {"\\r\\n", "\\r"}, {"\\r\\n", "\\n"}, {"\\n", "\\r\\n", "\\r", "\\n\\r"}, {"\\r\\n"}, {"\\r", "\\r\\n"}
+    };
+    private static final String[] EOLS = {"\r\n", "\n", "\r", "\n\r"};
+    private static final String[] CHUNKED_BODIES = {
+            "3\r\nabc\r\n0\r\n\r\n", "3\r\nabc\r\n2\r\nxy\r\n0\r\n\r\n", "b\nabcdefghij\n0\n\n", "3\nabc\n0\n\n",
+            "0\r\n\r\n", "zz\r\nabc\r\n0\r\n\r\n", "5\r\nab", ""
+    };
+
+    @Test
+    void randomPipelinesMatchWholeBufferParse() {
+        Random random = new Random(11);
+        for (int iteration = 0; iteration < 20000; iteration++) {
+            HttpParserModel model = randomModel(random);
+            String payload = randomPipeline(random);
+            // Some payloads stop anywhere, including inside a header or body
+            if (random.nextInt(4) == 0) payload = payload.substring(0, random.nextInt(payload.length() + 1));
+            byte[] data = payload.getBytes(StandardCharsets.ISO_8859_1);
+
+            List<String> expected = strings(ParserChainRunner.parseValidRequestsForProxyRaw(model, data));
+            List<String> actual = feed(model, data, 1 + random.nextInt(8), random);
+            assertEquals(expected, actual, describe(model) + " " + escape(payload));
+        }
+    }
+
+    @Test
+    void malformedChunkedBodyAtEndOfInput() {
+        // The body uses \n where the chunk line ending is \r\n: the whole-buffer parse takes it as far as it goes
+        HttpParserModel model = new HttpParserModel();
+        byte[] data = ("GET / HTTP/2\r\nHost: a.com\r\nAccept: */*\r\nTransfer-Encoding: chunked\r\nContent-Length: 0\r\n\r\n"
+                + "b\nabcdefghij\n0\n\n").getBytes(StandardCharsets.ISO_8859_1);
+        List<String> expected = strings(ParserChainRunner.parseValidRequestsForProxyRaw(model, data));
+        assertEquals(1, expected.size());
+        for (int feed : new int[]{1, 7, data.length}) {
+            assertEquals(expected, feed(model, data, feed, null), "feeds of " + feed);
+        }
+    }
+
+    @Test
+    void largeChunkedBodyIsFramedOnce() {
+        StringBuilder payload = new StringBuilder("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n");
+        String chunk = "400\r\n" + "a".repeat(1024) + "\r\n";
+        for (int i = 0; i < 4096; i++) payload.append(chunk);
+        payload.append("0\r\n\r\nGET /next HTTP/1.1\r\nHost: a\r\n\r\n");
+        byte[] data = payload.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+        HttpParserModel model = new HttpParserModel();
+        assertEquals(strings(ParserChainRunner.parseValidRequestsForProxyRaw(model, data)), feed(model, data, 65536, null));
+    }
+
+    private static HttpParserModel randomModel(Random random) {
+        HttpParserModel model = new HttpParserModel();
+        model.setHeaderLineEndings(new ArrayList<>(List.of(ENDING_SETS[random.nextInt(ENDING_SETS.length)])));
+        model.setAllowHeaderFolding(random.nextBoolean());
+        HttpParserModel.DuplicateHandling duplicates = HttpParserModel.DuplicateHandling.values()[random.nextInt(3)];
+        HttpParserModel.BodyLenHeaderRule contentLength = new HttpParserModel.BodyLenHeaderRule("Content-Length: ", false, duplicates);
+        HttpParserModel.BodyLenHeaderRule chunked = new HttpParserModel.BodyLenHeaderRule("Transfer-Encoding: chunked", true, duplicates);
+        switch (random.nextInt(5)) {
+            case 0: model.setBodyLenHeaderRules(new ArrayList<>(List.of(contentLength, chunked))); break;
+            case 1: model.setBodyLenHeaderRules(new ArrayList<>(List.of(chunked, contentLength))); break;
+            case 2: model.setBodyLenHeaderRules(new ArrayList<>(List.of(contentLength))); break;
+            case 3: model.setBodyLenHeaderRules(new ArrayList<>(List.of(chunked))); break;
+            default: break;
+        }
+        if (random.nextBoolean()) {
+            model.setChunkedLineEndings(new ArrayList<>(List.of(random.nextBoolean() ? "\\n" : "\\r\\n")));
+        }
+        model.setOutputBodyEncoding(HttpParserModel.MessageLenBodyEncoding.values()[random.nextInt(3)]);
+        if (random.nextInt(3) == 0) {
+            model.setFirewallRules(List.of(new FirewallRule(FirewallRule.Source.URL,
+                    "return input.indexOf('/1') >= 0;", random.nextBoolean())));
+        }
+        return model;
+    }
+
+    private static String randomPipeline(Random random) {
+        StringBuilder sb = new StringBuilder();
+        int count = 1 + random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            String eol = EOLS[random.nextInt(EOLS.length)];
+            int kind = random.nextInt(4);
+            sb.append(kind == 0 ? "GET /" : "POST /").append(i).append(" HTTP/1.1").append(eol).append("Host: h").append(eol);
+            if (kind == 1) {
+                sb.append("Content-Length: 3").append(eol).append(eol).append("abc");
+            } else if (kind == 2) {
+                sb.append("Transfer-Encoding: chunked").append(eol).append(eol)
+                        .append(CHUNKED_BODIES[random.nextInt(CHUNKED_BODIES.length)]);
+            } else if (kind == 3) {
+                sb.append("Transfer-Encoding: chunked").append(eol).append("Content-Length: ").append(random.nextInt(6))
+                        .append(eol).append(eol).append(CHUNKED_BODIES[random.nextInt(CHUNKED_BODIES.length)]);
+            } else {
+                sb.append(eol);
+            }
+        }
+        return sb.toString();
+    }
+
+    // Feeds of 1 to maxFeed bytes, random when a generator is given
+    private static List<String> feed(HttpParserModel model, byte[] data, int maxFeed, Random random) {
+        List<String> requests = new ArrayList<>();
+        IncrementalRequestParser parser = new IncrementalRequestParser(model,
+                request -> requests.add(new String(request, StandardCharsets.ISO_8859_1)));
+        for (int i = 0; i < data.length; ) {
+            int length = Math.min(data.length - i, random != null ? 1 + random.nextInt(maxFeed) : maxFeed);
+            parser.feed(data, i, length);
+            i += length;
+        }
+        parser.finish();
+        return requests;
+    }
+
+    private static List<String> strings(List<byte[]> requests) {
+        List<String> result = new ArrayList<>();
+        for (byte[] request : requests) result.add(new String(request, StandardCharsets.ISO_8859_1));
+        return result;
+    }
+
+    private static String describe(HttpParserModel model) {
+        StringBuilder sb = new StringBuilder().append(model.getHeaderLineEndings());
+        for (HttpParserModel.BodyLenHeaderRule rule : model.getBodyLenHeaderRules()) {
+            sb.append(' ').append(rule.getPattern().trim()).append('/').append(rule.getDuplicateHandling());
+        }
+        return sb.append(' ').append(model.getChunkedLineEndings()).append(' ').append(model.getOutputBodyEncoding())
+                .append(model.isAllowHeaderFolding() ? " folding" : "")
+                .append(model.getFirewallRules().isEmpty() ? "" : " firewall").toString();
+    }
+
+    private static String escape(String s) {
+        return s.replace("\r", "\\r").replace("\n", "\\n");
+    }
+}
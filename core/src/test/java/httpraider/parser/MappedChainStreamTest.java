@@ -0,0 +1,125 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+import httpraider.model.network.ProxyModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Boundaries streamed from a mapped file must match a whole-buffer parse of what each hop receives.
+ */
+class MappedChainStreamTest {
+
+    private static final String CL_TE_INPUT = "POST / HTTP/1.1\r\nHost: a\r\nContent-Length: 6\r\nTransfer-Encoding: chunked\r\n\r\n"
+            + "0\r\n\r\nGET /smuggled HTTP/1.1\r\nHost: a\r\n\r\n";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void boundariesMatchWholeBufferParsePerHop() throws IOException {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        front.getParserSettings().setBodyLenHeaderRules(contentLengthFirst());
+        StringBuilder capture = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            capture.append(CL_TE_INPUT).append("GET /").append(i).append(" HTTP/1.1\r\nHost: a\r\n\r\n");
+        }
+        // Ends inside a chunked body, which the hops forward as far as it goes
+        capture.append("POST /last HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nab");
+        byte[] data = bytes(capture.toString());
+
+        List<List<RequestBoundary>> hops = stream(data, front, back);
+        List<ParsedRequest> frontEntries = ParserChainRunner.parseRequestsForProxy(front.getParserSettings(), data);
+        assertBoundaries(frontEntries, hops.get(0));
+        assertBoundaries(ParserChainRunner.parseRequestsForProxy(back.getParserSettings(), forwarded(frontEntries)), hops.get(1));
+    }
+
+    @Test
+    void firstHopFailureEndsTheStream() throws IOException {
+        ProxyModel front = new ProxyModel("front");
+        ProxyModel back = new ProxyModel("back");
+        // Several chunks of input after a request line the front cannot parse
+        StringBuilder capture = new StringBuilder("GET /ok HTTP/1.1\r\nHost: a\r\n\r\nBADLINE\r\nHost: a\r\n\r\n");
+        while (capture.length() < 1 << 20) capture.append("GET / HTTP/1.1\r\nHost: a\r\n\r\n");
+        byte[] data = bytes(capture.toString());
+        Path file = write(data);
+
+        try (MappedChainStream stream = new MappedChainStream(file, List.of(front, back))) {
+            List<RequestBoundary> boundaries = new ArrayList<>();
+            stream.run(boundaries::add);
+            assertTrue(stream.getPosition() < data.length, "kept reading after the first hop failed");
+
+            List<List<RequestBoundary>> hops = byHop(boundaries, 2);
+            List<ParsedRequest> frontEntries = ParserChainRunner.parseRequestsForProxy(front.getParserSettings(), data);
+            // The error covers the rest of the capture
+            assertEquals(ParsedRequest.Status.ERROR, hops.get(0).get(1).getStatus());
+            assertEquals(data.length, hops.get(0).get(1).getEnd());
+            assertBoundaries(frontEntries, hops.get(0));
+            assertBoundaries(ParserChainRunner.parseRequestsForProxy(back.getParserSettings(), forwarded(frontEntries)), hops.get(1));
+        }
+    }
+
+    private List<List<RequestBoundary>> stream(byte[] data, ProxyModel... chain) throws IOException {
+        List<RequestBoundary> boundaries = new ArrayList<>();
+        try (MappedChainStream stream = new MappedChainStream(write(data), List.of(chain))) {
+            stream.run(boundaries::add);
+        }
+        return byHop(boundaries, chain.length);
+    }
+
+    private static List<List<RequestBoundary>> byHop(List<RequestBoundary> boundaries, int hops) {
+        List<List<RequestBoundary>> result = new ArrayList<>();
+        for (int i = 0; i < hops; i++) result.add(new ArrayList<>());
+        for (RequestBoundary boundary : boundaries) result.get(boundary.getHop()).add(boundary);
+        return result;
+    }
+
+    // What a hop forwards: its accepted requests, back to back
+    private static byte[] forwarded(List<ParsedRequest> entries) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (ParsedRequest entry : entries) {
+            if (entry.getStatus() == ParsedRequest.Status.COMPLETE) out.writeBytes(entry.getBytes());
+        }
+        return out.toByteArray();
+    }
+
+    private static void assertBoundaries(List<ParsedRequest> expected, List<RequestBoundary> actual) {
+        List<String> expectedSpans = new ArrayList<>();
+        for (ParsedRequest entry : expected) {
+            expectedSpans.add(entry.getStatus() + " " + entry.getStart() + "-" + entry.getEnd());
+        }
+        List<String> actualSpans = new ArrayList<>();
+        for (RequestBoundary boundary : actual) {
+            actualSpans.add(boundary.getStatus() + " " + boundary.getStart() + "-" + boundary.getEnd());
+        }
+        assertEquals(expectedSpans, actualSpans);
+    }
+
+    private Path write(byte[] data) throws IOException {
+        Path file = Files.createTempFile(directory, "capture", ".bin");
+        Files.write(file, data);
+        return file;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static List<HttpParserModel.BodyLenHeaderRule> contentLengthFirst() {
+        return new ArrayList<>(List.of(
+                new HttpParserModel.BodyLenHeaderRule("Content-Length: ", false, HttpParserModel.DuplicateHandling.FIRST),
+                new HttpParserModel.BodyLenHeaderRule("Transfer-Encoding: chunked", true, HttpParserModel.DuplicateHandling.FIRST)));
+    }
+}
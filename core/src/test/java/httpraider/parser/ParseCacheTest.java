@@ -0,0 +1,78 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParseCacheTest {
+
+    private static final String REQUEST = "GET / HTTP/1.1\r\nHost: a\r\n\r\n";
+
+    @Test
+    void repeatedParseIsAHit() {
+        ParseCache cache = new ParseCache();
+        HttpParserModel model = new HttpParserModel();
+        byte[] data = bytes(REQUEST.repeat(3));
+        List<ParsedRequest> first = cache.parse(model, data, true);
+        assertSame(first, cache.parse(model, data.clone(), true));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void editIsReparsedFromTheLatestEntry() {
+        ParseCache cache = new ParseCache();
+        HttpParserModel model = new HttpParserModel();
+        cache.parse(model, bytes(REQUEST.repeat(5)), true);
+        byte[] edited = bytes(REQUEST.repeat(2) + "GET /edited HTTP/1.1\r\nHost: a\r\n\r\n" + REQUEST.repeat(2));
+        List<ParsedRequest> reparsed = cache.parse(model, edited, true);
+        assertEquals(1, cache.getIncrementalParses());
+        assertEquals(render(ParserChainRunner.parseRequestsForProxy(model, edited)), render(reparsed));
+    }
+
+    @Test
+    void inputsOfManySettingsStayWithinTheBudget() throws InterruptedException {
+        long budget = 4L * 1024 * 1024;
+        ParseCache cache = new ParseCache(budget);
+        List<WeakReference<byte[]>> inputs = new ArrayList<>();
+        List<HttpParserModel> models = new ArrayList<>();
+        // Each settings revision used to keep its latest input outside the budget
+        for (int i = 0; i < 40; i++) {
+            HttpParserModel model = new HttpParserModel();
+            models.add(model);
+            byte[] data = bytes("POST / HTTP/1.1\r\nContent-Length: 1000000\r\n\r\n" + "a".repeat(1000000));
+            inputs.add(new WeakReference<>(data));
+            cache.parse(model, data, true);
+            assertTrue(cache.getUsedBytes() <= budget, "used " + cache.getUsedBytes());
+        }
+
+        long retained = inputs.size();
+        for (int attempt = 0; attempt < 50 && retained > budget / 1000000; attempt++) {
+            System.gc();
+            Thread.sleep(10);
+            retained = inputs.stream().filter(ref -> ref.get() != null).count();
+        }
+        assertTrue(retained <= budget / 1000000, retained + " inputs still retained for " + models.size() + " models");
+    }
+
+    private static String render(List<ParsedRequest> requests) {
+        StringBuilder sb = new StringBuilder();
+        for (ParsedRequest request : requests) {
+            sb.append(request.getStatus()).append(' ').append(request.getStart()).append('-').append(request.getEnd())
+                    .append(' ').append(new String(request.toTaggedBytes(), StandardCharsets.ISO_8859_1)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
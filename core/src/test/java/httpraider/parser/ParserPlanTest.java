@@ -0,0 +1,40 @@
+package httpraider.parser;
+
+import httpraider.model.network.HttpParserModel;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ParserPlanTest {
+
+    @Test
+    void planIsSharedUntilInvalidated() {
+        HttpParserModel model = new HttpParserModel();
+        ParserPlan plan = ParserPlan.forModel(model);
+        assertSame(plan, ParserPlan.forModel(model));
+        ParserPlan.invalidate(model);
+        assertNotSame(plan, ParserPlan.forModel(model));
+    }
+
+    @Test
+    void planIsReleasedWithItsModel() throws InterruptedException {
+        HttpParserModel model = new HttpParserModel();
+        model.setUseHeaderLinesJs(true);
+        WeakReference<HttpParserModel> modelRef = new WeakReference<>(model);
+        WeakReference<ParserPlan> planRef = new WeakReference<>(ParserPlan.forModel(model));
+        model = null;
+
+        for (int i = 0; i < 50 && (modelRef.get() != null || planRef.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+            // Cache lookups expunge the entries of collected models
+            ParserPlan.forModel(new HttpParserModel());
+        }
+        assertNull(modelRef.get(), "model still reachable");
+        assertNull(planRef.get(), "plan still cached");
+    }
+}
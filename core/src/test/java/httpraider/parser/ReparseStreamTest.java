@@ -0,0 +1,106 @@
+package httpraider.parser;
+
+import httpraider.model.network.FirewallRule;
+import httpraider.model.network.HttpParserModel;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Re-parsing after an edit must give the entries a full parse of the edited payload gives.
+ */
+class ReparseStreamTest {
+
+    private static final String[] REQUESTS = {
+            "GET / HTTP/1.1\r\nHost: a\r\n\r\n",
+            "POST / HTTP/1.1\r\nHost: a\r\nContent-Length: 5\r\n\r\nhello",
+            "POST / HTTP/1.1\r\nHost: a\r\nContent-Length: 50\r\n\r\nhello",
+            "POST / HTTP/1.1\r\nHost: a\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\n0\r\n\r\n",
+            "POST / HTTP/1.1\r\nHost: a\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhel",
+            "POST / HTTP/1.1\r\nHost: a\r\nTransfer-Encoding: chunked\r\nContent-Length: 3\r\n\r\n3\r\nabc\r\n0\r\n\r\n",
+            "GET / HTTP/1.1\r\nHost: a\r\nX-Fold: a\r\n b\r\n\tc\r\nContent-Length: 2\r\n\r\nok",
+            "GET / HTTP/1.1\nHost: a\nContent-Length: 1\n\nx",
+            "GET / HTTP/1.1\r\nHost: a\r\nContent-Length: zz\r\n\r\n",
+            "BADLINE\r\nHost: a\r\n\r\n",
+            "GET /admin HTTP/1.1\r\nHost: a\r\nCookie: s=1\r\n\r\n",
+            "GET / HTTP/1.1\r\nHost: a"
+    };
+    private static final String[] INSERTIONS = {"", "X", "\r\n", "GET ", "5", "0\r\n\r\n", "Content-Length: 1\r\n"};
+
+    @Test
+    void randomEditsMatchFullParse() {
+        Random random = new Random(4);
+        for (HttpParserModel model : models()) {
+            ParserPlan plan = ParserPlan.forModel(model);
+            for (int iteration = 0; iteration < 300; iteration++) {
+                StringBuilder sb = new StringBuilder();
+                int count = 1 + random.nextInt(4);
+                for (int i = 0; i < count; i++) sb.append(REQUESTS[random.nextInt(REQUESTS.length)]);
+                byte[] before = bytes(sb.toString());
+                int offset = random.nextInt(before.length + 1);
+                int removed = Math.min(before.length - offset, random.nextInt(4));
+                byte[] after = bytes(sb.substring(0, offset) + INSERTIONS[random.nextInt(INSERTIONS.length)]
+                        + sb.substring(offset + removed));
+                EditDelta delta = EditDelta.between(before, after);
+                String context = escape(sb.toString()) + " " + delta;
+
+                List<ParsedRequest> previous = ParserChainRunner.parseRequestsForProxy(model, before);
+                assertEquals(render(ParserChainRunner.parseRequestsForProxy(model, after)),
+                        render(ParserChainRunner.reparseStream(plan, previous, after, delta, true)), context);
+
+                // Forwarding mode, where incomplete entries are left out
+                ParseCache full = new ParseCache(0);
+                List<ParsedRequest> forwarded = ParserChainRunner.reparseStream(plan,
+                        full.parse(model, before, false), after, delta, false);
+                assertEquals(render(full.parse(model, after, false)), render(forwarded), context);
+            }
+        }
+    }
+
+    private static List<HttpParserModel> models() {
+        List<HttpParserModel> models = new ArrayList<>();
+        models.add(new HttpParserModel());
+        HttpParserModel model = new HttpParserModel();
+        model.setHeaderLineEndings(new ArrayList<>(List.of("\\r\\n", "\\n")));
+        model.setAllowHeaderFolding(true);
+        models.add(model);
+        model = new HttpParserModel();
+        model.setDeleteHeaderRules(List.of("Host"));
+        model.setAddHeaderRules(List.of("X-Added: 1"));
+        model.setOutputBodyEncoding(HttpParserModel.MessageLenBodyEncoding.FORCE_CL_HEADER);
+        models.add(model);
+        model = new HttpParserModel();
+        model.setOutputBodyEncoding(HttpParserModel.MessageLenBodyEncoding.FORCE_CHUNKED);
+        model.setDecodeUrlBeforeForwarding(true);
+        models.add(model);
+        model = new HttpParserModel();
+        model.setFirewallRules(List.of(new FirewallRule(FirewallRule.Source.URL, "return input.indexOf('admin') >= 0;", false)));
+        models.add(model);
+        model = new HttpParserModel();
+        model.setChunkedLineEndings(new ArrayList<>(List.of("\\n")));
+        models.add(model);
+        return models;
+    }
+
+    private static String render(List<ParsedRequest> requests) {
+        StringBuilder sb = new StringBuilder();
+        for (ParsedRequest request : requests) {
+            sb.append(request.getStatus()).append(' ').append(request.getStart()).append('-').append(request.getEnd())
+                    .append(' ').append(new String(request.toTaggedBytes(), StandardCharsets.ISO_8859_1)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String escape(String s) {
+        return s.replace("\r", "\\r").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,89 @@
+package httpraider.benchmarks;
+
+import burp.api.montoya.http.message.HttpHeader;
+import burp.api.montoya.http.message.HttpRequestResponse;
+import burp.api.montoya.http.message.responses.HttpResponse;
+import org.openjdk.jmh.annotations.*;
+import proxyFinder.engine.Clusterer;
+import proxyFinder.engine.MutationRunResult;
+import proxyFinder.engine.MutationSet;
+import proxyFinder.engine.ResponseCluster;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Grouping of the responses of a thorough proxy discovery run
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClustererBenchmark {
+
+    @Param({"20", "200"})
+    public int mutationSets;
+
+    private final Clusterer clusterer = new Clusterer();
+    private List<MutationRunResult> results;
+
+    @Setup
+    public void setup() {
+        String[][] servers = {
+                {"200", "nginx", "<html><body>Welcome   to\n nginx!</body></html>"},
+                {"400", "nginx", "<html><body>400 Bad Request</body></html>"},
+                {"400", "Apache", "Bad Request\nYour browser sent a request that this server could not understand."},
+                {"403", "AkamaiGHost", "Access Denied"},
+                {"502", "cloudflare", "Bad gateway"},
+        };
+        results = new ArrayList<>(mutationSets);
+        for (int i = 0; i < mutationSets; i++) {
+            List<HttpRequestResponse> responses = new ArrayList<>();
+            List<Long> timings = new ArrayList<>();
+            for (int s = 0; s < 3; s++) {
+                String[] server = servers[(i + s) % servers.length];
+                responses.add(requestResponse(Integer.parseInt(server[0]), server[1], server[2] + " " + (s % 2)));
+                timings.add(10L + i % 7);
+            }
+            results.add(new MutationRunResult(new MutationSet(new ArrayList<>()), null, responses, timings));
+        }
+    }
+
+    @Benchmark
+    public List<ResponseCluster> clusterResponses() {
+        return clusterer.clusterResponses(results);
+    }
+
+    // Montoya's factories need a running Burp, so the few accessors the clusterer uses are stubbed
+    private static HttpRequestResponse requestResponse(int status, String server, String body) {
+        List<HttpHeader> headers = List.of(header("Server", server), header("Content-Type", "text/html"),
+                header("Via", "1.1 cache"), header("Date", "Mon, 01 Jan 2024 00:00:00 GMT"));
+        HttpResponse response = stub(HttpResponse.class, (name) -> {
+            switch (name) {
+                case "statusCode": return (short) status;
+                case "bodyToString": return body;
+                case "headers": return headers;
+                default: return null;
+            }
+        });
+        return stub(HttpRequestResponse.class, (name) -> "response".equals(name) ? response : null);
+    }
+
+    private static HttpHeader header(String name, String value) {
+        return stub(HttpHeader.class, (method) -> {
+            switch (method) {
+                case "name": return name;
+                case "value": return value;
+                default: return null;
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, java.util.function.Function<String, Object> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> answers.apply(method.getName()));
+    }
+}
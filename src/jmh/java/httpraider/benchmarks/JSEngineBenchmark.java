@@ -0,0 +1,82 @@
+package httpraider.benchmarks;
+
+import httpraider.controller.engines.JSEngine;
+import httpraider.controller.engines.NativeRules;
+import httpraider.model.network.FirewallRule;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+// One firewall rule evaluation, as run for every request at every hop with enabled rules
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JSEngineBenchmark {
+
+    private static final String CONTAINS_RULE = "return input.indexOf('admin') >= 0;";
+    private static final String REGEX_RULE = "return /(union|select|<script)/i.test(input);";
+    private static final String HEADERS_RULE = "for (var i = 0; i < headers.length; i++) {"
+            + " if (String(headers[i]).toLowerCase().indexOf('x-forwarded-host') === 0) return true; } return false;";
+
+    // Rhino optimization level: -1 interpreted, 9 compiled
+    @Param({"-1", "9"})
+    public int optimizationLevel;
+
+    private String url;
+    private String[] headers;
+    private JSEngine.FirewallProgram program;
+    private Predicate<Object> nativeRegexRule;
+
+    @Setup
+    public void setup() {
+        JSEngine.setOptimizationLevel(optimizationLevel);
+        url = "/api/v1/users/12345/profile?fields=name,email&sort=desc";
+        headers = new String[]{"Host: example.com", "User-Agent: bench", "Accept: */*",
+                "Cookie: session=abcdef0123456789", "Content-Type: application/json"};
+        // The first two compile to Java predicates, the headers loop stays a script
+        program = JSEngine.compileFirewallRules(Arrays.asList(
+                new FirewallRule(FirewallRule.Source.URL, CONTAINS_RULE, false),
+                new FirewallRule(FirewallRule.Source.URL, REGEX_RULE, false),
+                new FirewallRule(FirewallRule.Source.HEADERS, HEADERS_RULE, false)));
+        nativeRegexRule = NativeRules.compileFirewallRule(REGEX_RULE, false);
+    }
+
+    @Benchmark
+    public boolean runFirewallRuleContains() {
+        return JSEngine.runFirewallRule(CONTAINS_RULE, url);
+    }
+
+    @Benchmark
+    public boolean runFirewallRuleRegex() {
+        return JSEngine.runFirewallRule(REGEX_RULE, url);
+    }
+
+    // The regex rule above as NativeRules runs it
+    @Benchmark
+    public boolean runFirewallRuleRegexNative() {
+        return nativeRegexRule.test(url);
+    }
+
+    @Benchmark
+    public boolean runFirewallRuleArray() {
+        return JSEngine.runFirewallRuleArray(HEADERS_RULE, headers);
+    }
+
+    // The three rules above, one call each, against the same rules evaluated as a single program
+    @Benchmark
+    public boolean runFirewallRulesSeparately() {
+        return JSEngine.runFirewallRule(CONTAINS_RULE, url)
+                || JSEngine.runFirewallRule(REGEX_RULE, url)
+                || JSEngine.runFirewallRuleArray(HEADERS_RULE, headers);
+    }
+
+    @Benchmark
+    public int runFirewallProgram() {
+        return JSEngine.runFirewallProgram(program, i -> i == 2 ? headers : url);
+    }
+}
@@ -0,0 +1,87 @@
+package httpraider.benchmarks;
+
+import httpraider.model.network.HttpParserModel;
+import httpraider.parser.ParserChainRunner;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Whole-buffer parse of one proxy, as the parser panels and the chain simulation run it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    public enum Payload {
+        SINGLE_GET,
+        PIPELINED_1K,
+        CHUNKED_BIG,
+        HEAVY_FOLDING
+    }
+
+    @Param({"SINGLE_GET", "PIPELINED_1K", "CHUNKED_BIG", "HEAVY_FOLDING"})
+    public Payload payload;
+
+    private HttpParserModel model;
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        model = new HttpParserModel();
+        switch (payload) {
+            case SINGLE_GET:
+                data = request("GET /index.html?q=1 HTTP/1.1\r\nHost: example.com\r\nUser-Agent: bench\r\n"
+                        + "Accept: */*\r\nCookie: session=abcdef0123456789\r\n\r\n");
+                break;
+            case PIPELINED_1K: {
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < 1000; i++) {
+                    if (i % 2 == 0) {
+                        sb.append("GET /item/").append(i).append(" HTTP/1.1\r\nHost: example.com\r\nAccept: */*\r\n\r\n");
+                    } else {
+                        sb.append("POST /submit HTTP/1.1\r\nHost: example.com\r\nContent-Length: 11\r\n\r\nhello=world");
+                    }
+                }
+                data = request(sb.toString());
+                break;
+            }
+            case CHUNKED_BIG: {
+                StringBuilder sb = new StringBuilder("POST /upload HTTP/1.1\r\nHost: example.com\r\nTransfer-Encoding: chunked\r\n\r\n");
+                String chunk = "x".repeat(4096);
+                for (int i = 0; i < 256; i++) {
+                    sb.append(Integer.toHexString(chunk.length())).append("\r\n").append(chunk).append("\r\n");
+                }
+                sb.append("0\r\n\r\n");
+                data = request(sb.toString());
+                break;
+            }
+            case HEAVY_FOLDING: {
+                model.setAllowHeaderFolding(true);
+                StringBuilder sb = new StringBuilder();
+                for (int r = 0; r < 50; r++) {
+                    sb.append("GET /folded/").append(r).append(" HTTP/1.1\r\nHost: example.com\r\n");
+                    for (int h = 0; h < 20; h++) {
+                        sb.append("X-Folded-").append(h).append(": part1\r\n\tpart2\r\n part3\r\n");
+                    }
+                    sb.append("\r\n");
+                }
+                data = request(sb.toString());
+                break;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> parseRequestsForProxyRaw() {
+        return ParserChainRunner.parseRequestsForProxyRaw(model, data);
+    }
+
+    private static byte[] request(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
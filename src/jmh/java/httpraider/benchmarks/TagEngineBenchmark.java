@@ -0,0 +1,45 @@
+package httpraider.benchmarks;
+
+import httpraider.controller.engines.TagEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Placeholder resolution run on every request sent from a stream
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagEngineBenchmark {
+
+    private byte[] noTags;
+    private byte[] nestedBlocks;
+
+    @Setup
+    public void setup() {
+        noTags = ("GET / HTTP/1.1\r\nHost: example.com\r\nContent-Length: 10\r\n\r\n0123456789")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 20; i++) {
+            sb.append("POST /r").append(i).append(" HTTP/1.1\r\nHost: example.com\r\n")
+                    .append("Content-Length: <int_").append(i).append(">\r\nX-Hex: <hex_").append(i).append(">\r\n\r\n")
+                    .append("<start_").append(i).append(">a=<repeat(\"A\", 64)>&b=")
+                    .append("<start_").append(i + 100).append(">nested<end_").append(i + 100).append(">")
+                    .append("<end_").append(i).append(">");
+        }
+        nestedBlocks = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public byte[] resolveNoTags() {
+        return TagEngine.resolve(noTags);
+    }
+
+    @Benchmark
+    public byte[] resolveNestedBlocks() {
+        return TagEngine.resolve(nestedBlocks);
+    }
+}
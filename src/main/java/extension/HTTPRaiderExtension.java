@@ -3,6 +3,8 @@ package extension;
 import burp.api.montoya.BurpExtension;
 import burp.api.montoya.EnhancedCapability;
 import burp.api.montoya.MontoyaApi;
+import httpraider.controller.engines.TagEngine;
+import httpraider.controller.tools.CustomTagManager;
 
 import javax.swing.*;
 import java.awt.*;
@@ -16,6 +18,7 @@ public class HTTPRaiderExtension implements BurpExtension {
     @Override
     public void initialize(MontoyaApi montoyaApi) {
         API = montoyaApi;
+        TagEngine.setCustomTagSource(() -> CustomTagManager.getInstance().getTags());
         new httpraider.controller.ApplicationController();
     }
 
@@ -4,12 +4,16 @@ import httpraider.model.network.HttpParserModel;
 import httpraider.model.network.LoadBalancingRule;
 import httpraider.model.network.ProxyModel;
 import httpraider.model.network.FirewallRule;
+import httpraider.controller.engines.JSEngine;
+import httpraider.parser.ParseMetrics;
+import httpraider.parser.ParserPlan;
 import httpraider.view.panels.parser.HeaderLinesParserPanel;
 import httpraider.view.panels.parser.LoadBalancingParserPanel;
 import httpraider.view.panels.HttpParserPanel;
 import httpraider.view.panels.parser.MessageLengthParserPanel;
 import httpraider.view.panels.parser.RequestLineParserPanel;
 import httpraider.view.panels.parser.FirewallRulesParserPanel;
+import httpraider.view.panels.parser.StageMetricsParserPanel;
 
 import javax.swing.*;
 import javax.swing.event.*;
@@ -43,11 +47,25 @@ public class HttpParserController {
         parserPanel.getTestButton().addActionListener(e -> {
             saveToModel(); // always parse using latest UI config
             byte[] input = parserPanel.getInputEditorPanel().getBytes();
-            List<List<byte[]>> groups = httpraider.parser.ParserChainRunner.parseOnlyCurrentProxyForPanel(
+            List<List<httpraider.parser.ParsedRequest>> groups = httpraider.parser.ParserChainRunner.parseOnlyCurrentProxyForPanel(
                     currentProxy, input
             );
-            parserPanel.getResultEditorPanel().addAll(groups);
+            parserPanel.getResultEditorPanel().setParsedGroups(groups);
+            refreshStageMetrics();
         });
+
+        StageMetricsParserPanel metricsPanel = parserPanel.getStageMetricsParserPanel();
+        metricsPanel.getCollectCheckBox().setSelected(ParseMetrics.isEnabled());
+        metricsPanel.getCollectCheckBox().addActionListener(e -> {
+            ParseMetrics.setEnabled(metricsPanel.getCollectCheckBox().isSelected());
+            refreshStageMetrics();
+        });
+        metricsPanel.getRefreshButton().addActionListener(e -> refreshStageMetrics());
+        metricsPanel.getResetButton().addActionListener(e -> {
+            ParseMetrics.forModel(settings).reset();
+            refreshStageMetrics();
+        });
+        refreshStageMetrics();
         
         // Add window closing listener
         parserPanel.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
@@ -170,6 +188,27 @@ public class HttpParserController {
         // Firewall Rules tab
         FirewallRulesParserPanel firewallRulesPanel = parserPanel.getFirewallRulesParserPanel();
         settings.setFirewallRules(firewallRulesPanel.getRules());
+
+        // Drop the compiled plan so the next parse picks up the new settings
+        ParserPlan.invalidate(settings);
+    }
+
+    private void refreshStageMetrics() {
+        StageMetricsParserPanel metricsPanel = parserPanel.getStageMetricsParserPanel();
+        ParseMetrics metrics = ParseMetrics.forModel(settings);
+        if (metrics.getStages().isEmpty()) {
+            metricsPanel.setMetricsText((ParseMetrics.isEnabled()
+                    ? "No parses recorded for this proxy yet. Run Test or a chain simulation."
+                    : "Metrics collection is disabled.") + String.format("%n") + scriptBudgetLine());
+            return;
+        }
+        metricsPanel.setMetricsText(metrics.format() + scriptBudgetLine());
+    }
+
+    private static String scriptBudgetLine() {
+        return String.format("%nScripts stopped by their budget (all proxies): %d over %d instructions, %d over %d ms%n",
+                JSEngine.getInstructionBudgetHits(), JSEngine.getMaxInstructions(),
+                JSEngine.getTimeBudgetHits(), JSEngine.getMaxMillis());
     }
 
     private void stopTableEditing(JTable table) {
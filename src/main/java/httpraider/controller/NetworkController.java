@@ -7,6 +7,10 @@ import extension.HTTPRaiderExtension;
 import httpraider.model.network.ConnectionModel;
 import httpraider.model.network.NetworkModel;
 import httpraider.model.network.ProxyModel;
+import httpraider.parser.ChainBatchRunner;
+import httpraider.parser.ChainFuzzer;
+import httpraider.parser.ParseCache;
+import httpraider.parser.ParsedRequest;
 import httpraider.parser.ParserChainRunner;
 import httpraider.utils.ProxyExporter;
 import httpraider.view.components.*;
@@ -52,6 +56,7 @@ public class NetworkController {
     private final HttpEditorPanel<HttpRequestEditor> reqEditor;
     private HttpMultiEditorPanel cachedParsedRequestPanel;
     private StreamComboBox<byte[]> cachedStreamsBox;
+    private final ParseCache parseCache = new ParseCache();
 
 
     public static final int ICON_WIDTH = 47;
@@ -101,10 +106,176 @@ public class NetworkController {
             dialog.setLocationRelativeTo(null);
             dialog.setVisible(true);
         });
+        networkBar.setBatchTestActionListener(e -> runBatchTest());
+        networkBar.setFuzzActionListener(e -> runFuzzer());
         view.setProxyBarVisible(false);
         installBarListeners();
     }
 
+    // Runs every session stream (and optionally a wordlist) through the chain and shows the groups per proxy
+    private void runBatchTest() {
+        List<String> names = new ArrayList<>();
+        List<byte[]> payloads = new ArrayList<>();
+        for (StreamController sc : streamControllers) {
+            names.add(sc.getName());
+            payloads.add(sc.getRequest());
+        }
+
+        String[] options = {"Session Streams", "Streams + Wordlist...", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(view,
+                "Simulate payloads through the modeled chain.\n\n" +
+                "Wordlist: one payload per line, Java escapes (\\r\\n) are decoded,\n" +
+                "empty lines and lines starting with # are skipped.",
+                "Batch Test", JOptionPane.DEFAULT_OPTION, JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (choice == 2 || choice == -1) return;
+        if (choice == 1) {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setDialogTitle("Load Payload Wordlist");
+            if (fileChooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) return;
+            java.io.File file = fileChooser.getSelectedFile();
+            try {
+                int line = 0;
+                for (String entry : java.nio.file.Files.readAllLines(file.toPath(), java.nio.charset.StandardCharsets.ISO_8859_1)) {
+                    line++;
+                    if (entry.isEmpty() || entry.startsWith("#")) continue;
+                    names.add(file.getName() + ":" + line);
+                    payloads.add(org.apache.commons.text.StringEscapeUtils.unescapeJava(entry)
+                            .getBytes(java.nio.charset.StandardCharsets.ISO_8859_1));
+                }
+            } catch (Exception ex) {
+                JOptionPane.showMessageDialog(view, "Error reading wordlist: " + ex.getMessage(),
+                        "Batch Test", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+        }
+        if (payloads.isEmpty()) {
+            JOptionPane.showMessageDialog(view, "There are no payloads to simulate.", "Batch Test", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        // Proxies shown in streams, or every proxy when none is
+        List<ProxyModel> targets = new ArrayList<>();
+        for (ProxyModel proxy : sortByDistanceToClient(new LinkedHashSet<>(model.getProxies()))) {
+            if (proxy.isShowParser()) targets.add(proxy);
+        }
+        if (targets.isEmpty()) {
+            for (ProxyModel proxy : sortByDistanceToClient(new LinkedHashSet<>(model.getProxies()))) {
+                if (!proxy.isClient()) targets.add(proxy);
+            }
+        }
+
+        BatchResultsPanel panel = new BatchResultsPanel(targets, names);
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(view), "Batch Test", Dialog.ModalityType.MODELESS);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.setContentPane(panel);
+        dialog.setSize(900, 600);
+        dialog.setLocationRelativeTo(view);
+
+        long startTime = System.nanoTime();
+        SwingWorker<List<ChainBatchRunner.PayloadResult>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected List<ChainBatchRunner.PayloadResult> doInBackground() throws Exception {
+                return ChainBatchRunner.run(model, parseCache, payloads, targets,
+                        (result, completed, total) -> SwingUtilities.invokeLater(() -> panel.addResult(result, completed)));
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    panel.setFinished("Cancelled");
+                    return;
+                }
+                try {
+                    long millis = (System.nanoTime() - startTime) / 1_000_000;
+                    panel.setFinished(get().size() + " payloads simulated in " + millis + " ms");
+                } catch (Exception ex) {
+                    panel.setFinished("Batch failed: " + ex.getMessage());
+                }
+            }
+        };
+        panel.setCancelActionListener(ev -> worker.cancel(true));
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent ev) {
+                worker.cancel(true);
+            }
+        });
+        worker.execute();
+        dialog.setVisible(true);
+    }
+
+    // Fuzzes a session stream against the modeled chain and lists the inputs on which connected proxies disagree
+    private void runFuzzer() {
+        if (streamControllers.isEmpty()) {
+            JOptionPane.showMessageDialog(view, "Create a stream to use as the seed request.", "Fuzz Chain", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        String[] names = new String[streamControllers.size()];
+        for (int i = 0; i < names.length; i++) names[i] = streamControllers.get(i).getName();
+        String seedName = (String) JOptionPane.showInputDialog(view, "Seed request:", "Fuzz Chain",
+                JOptionPane.QUESTION_MESSAGE, null, names, names[0]);
+        if (seedName == null) return;
+        byte[] seed = streamControllers.get(java.util.Arrays.asList(names).indexOf(seedName)).getRequest();
+
+        String secondsText = JOptionPane.showInputDialog(view, "Duration (seconds):", "60");
+        if (secondsText == null) return;
+        long seconds;
+        try {
+            seconds = Long.parseLong(secondsText.trim());
+        } catch (NumberFormatException ex) {
+            JOptionPane.showMessageDialog(view, "Invalid duration: " + secondsText, "Fuzz Chain", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        ChainFuzzer fuzzer = new ChainFuzzer(model, java.util.List.of(seed));
+        if (fuzzer.getHops().isEmpty()) {
+            JOptionPane.showMessageDialog(view, "Connect at least two proxies to compare them.", "Fuzz Chain", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setDialogTitle("Save Divergent Inputs To (optional)");
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (fileChooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
+            fuzzer.setOutputDirectory(fileChooser.getSelectedFile().toPath());
+        }
+
+        FuzzerPanel panel = new FuzzerPanel();
+        fuzzer.setListener(finding -> SwingUtilities.invokeLater(() -> panel.addFinding(finding)));
+        JDialog dialog = new JDialog(SwingUtilities.getWindowAncestor(view), "Fuzz Chain", Dialog.ModalityType.MODELESS);
+        dialog.setDefaultCloseOperation(JDialog.DISPOSE_ON_CLOSE);
+        dialog.setContentPane(panel);
+        dialog.setSize(900, 600);
+        dialog.setLocationRelativeTo(view);
+
+        Timer statsTimer = new Timer(500, ev -> panel.setStats(fuzzer.getStats().toString()));
+        SwingWorker<ChainFuzzer.Stats, Void> worker = new SwingWorker<>() {
+            @Override
+            protected ChainFuzzer.Stats doInBackground() throws Exception {
+                return fuzzer.run(ChainBatchRunner.defaultThreads(), 0, seconds * 1000);
+            }
+
+            @Override
+            protected void done() {
+                statsTimer.stop();
+                try {
+                    panel.setFinished("Finished: " + get());
+                } catch (Exception ex) {
+                    panel.setFinished("Fuzzing failed: " + ex.getMessage());
+                }
+            }
+        };
+        panel.setStopActionListener(ev -> fuzzer.stop());
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent ev) {
+                fuzzer.stop();
+            }
+        });
+        statsTimer.start();
+        worker.execute();
+        dialog.setVisible(true);
+    }
+
     private void reloadAll(boolean layoutOnLoad) {
         List<ProxyModel> proxies = new ArrayList<>(model.getProxies());
         if (layoutOnLoad) {
@@ -548,12 +719,13 @@ public class NetworkController {
                 if (selectedProxyId != null) {
                     ProxyController controller = proxyControllers.get(selectedProxyId);
                     if (controller != null) {
-                        List<List<byte[]>> panelGroups = ParserChainRunner.parseFinalGroupsForPanel(
+                        List<List<ParsedRequest>> panelGroups = ParserChainRunner.parseFinalGroupsForPanel(
                                 controller.getModel(),
                                 reqEditor.getBytes(),
-                                this
+                                model,
+                                parseCache
                         );
-                        cachedParsedRequestPanel.addAll(panelGroups);
+                        cachedParsedRequestPanel.setParsedGroups(panelGroups);
                     }
                 }
             });
@@ -599,12 +771,13 @@ public class NetworkController {
             if (selectedProxyId != null) {
                 ProxyController controller = proxyControllers.get(selectedProxyId);
                 if (controller != null) {
-                    List<List<byte[]>> panelGroups = ParserChainRunner.parseFinalGroupsForPanel(
+                    List<List<ParsedRequest>> panelGroups = ParserChainRunner.parseFinalGroupsForPanel(
                             controller.getModel(),
                             reqEditor.getBytes(),
-                            this
+                            model,
+                            parseCache
                     );
-                    cachedParsedRequestPanel.addAll(panelGroups);
+                    cachedParsedRequestPanel.setParsedGroups(panelGroups);
                 }
             }
         });
@@ -615,12 +788,13 @@ public class NetworkController {
         if (selectedProxyId != null) {
             ProxyController controller = proxyControllers.get(selectedProxyId);
             if (controller != null) {
-                List<List<byte[]>> panelGroups = ParserChainRunner.parseFinalGroupsForPanel(
+                List<List<ParsedRequest>> panelGroups = ParserChainRunner.parseFinalGroupsForPanel(
                         controller.getModel(),
                         reqEditor.getBytes(),
-                        this
+                        model,
+                        parseCache
                 );
-                cachedParsedRequestPanel.addAll(panelGroups);
+                cachedParsedRequestPanel.setParsedGroups(panelGroups);
             }
         }
     }
@@ -629,67 +803,20 @@ public class NetworkController {
     public List<ProxyModel> sortByDistanceToClient(Set<ProxyModel> proxies) {
         if (proxies == null || proxies.isEmpty()) return Collections.emptyList();
 
+        // One lookup per proxy in the model's distance table instead of a BFS per comparison
+        Map<ProxyModel, Integer> distances = new HashMap<>();
+        for (ProxyModel p : proxies) {
+            List<ProxyModel> path = model.getPathToClient(p.getId());
+            distances.put(p, (path == null) ? Integer.MAX_VALUE : path.size());
+        }
         List<ProxyModel> list = new ArrayList<>(proxies);
-        list.sort((p1, p2) -> {
-            List<ProxyModel> path1 = getConnectionPathToClient(p1.getId());
-            List<ProxyModel> path2 = getConnectionPathToClient(p2.getId());
-            int d1 = (path1 == null) ? Integer.MAX_VALUE : path1.size();
-            int d2 = (path2 == null) ? Integer.MAX_VALUE : path2.size();
-            return Integer.compare(d1, d2);
-        });
+        list.sort(Comparator.comparingInt(distances::get));
         return list;
     }
 
 
     public List<ProxyModel> getConnectionPathToClient(String proxyId) {
-        if (proxyId == null) return null;
-        String clientId = null;
-        for (ProxyModel p : model.getProxies()) {
-            if (p.isClient()) {
-                clientId = p.getId();
-                break;
-            }
-        }
-        if (clientId == null || proxyId.equals(clientId)) return null;
-        Map<String, Set<String>> adj = new HashMap<>();
-        for (ProxyModel p : model.getProxies()) {
-            adj.put(p.getId(), new HashSet<>());
-        }
-        for (ConnectionModel c : model.getConnections()) {
-            adj.get(c.getFromId()).add(c.getToId());
-            adj.get(c.getToId()).add(c.getFromId());
-        }
-        Map<String, String> parent = new HashMap<>();
-        Queue<String> queue = new LinkedList<>();
-        Set<String> visited = new HashSet<>();
-        queue.add(clientId);
-        visited.add(clientId);
-        boolean found = false;
-        while (!queue.isEmpty() && !found) {
-            String current = queue.poll();
-            for (String neighbor : adj.get(current)) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    parent.put(neighbor, current);
-                    if (neighbor.equals(proxyId)) {
-                        found = true;
-                        break;
-                    }
-                    queue.add(neighbor);
-                }
-            }
-        }
-        if (!found) return null;
-        List<ProxyModel> path = new ArrayList<>();
-        String curr = proxyId;
-        while (parent.containsKey(curr)) {
-            String prev = parent.get(curr);
-            if (prev.equals(clientId)) break;
-            path.add(model.getProxy(prev));
-            curr = prev;
-        }
-        Collections.reverse(path);
-        return path;
+        return model.getPathToClient(proxyId);
     }
 
     private void unselectProxy() {
@@ -863,63 +990,41 @@ public class NetworkController {
             }
         });
         menu.add(importProxy);
+
+        JMenuItem exportNetwork = new JMenuItem("Export Network");
+        exportNetwork.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setDialogTitle("Export Network");
+            fileChooser.setSelectedFile(new java.io.File("network.json"));
+            fileChooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("JSON Files", "json"));
+
+            if (fileChooser.showSaveDialog(view) == JFileChooser.APPROVE_OPTION) {
+                java.io.File file = fileChooser.getSelectedFile();
+                if (!file.getName().endsWith(".json")) {
+                    file = new java.io.File(file.getAbsolutePath() + ".json");
+                }
+
+                try {
+                    ProxyExporter.exportNetwork(model, file);
+                    JOptionPane.showMessageDialog(view, "Network exported successfully!",
+                        "Export Success", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(view, "Error exporting network: " + ex.getMessage(),
+                        "Export Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        });
+        menu.add(exportNetwork);
         menu.show(canvas, x, y);
     }
 
     public List<ProxyModel> getDirectConnections(String proxyId) {
-        Set<String> directIds = new HashSet<>();
-        for (ConnectionModel c : model.getConnections()) {
-            if (c.getFromId().equals(proxyId)) {
-                directIds.add(c.getToId());
-            } else if (c.getToId().equals(proxyId)) {
-                directIds.add(c.getFromId());
-            }
-        }
-        List<ProxyModel> result = new ArrayList<>();
-        for (String id : directIds) {
-            ProxyModel p = model.getProxy(id);
-            if (p != null) result.add(p);
-        }
-        return result;
+        return model.getDirectConnections(proxyId);
     }
 
-    // Returns true if there exists a path from targetId to the client that passes through viaId
+    // Returns true if the path from targetId to the client passes through viaId
     public boolean hasPathThroughProxyToClient(String targetId, String viaId) {
-        if (targetId == null || viaId == null) return false;
-        String clientId = null;
-        for (ProxyModel p : model.getProxies()) {
-            if (p.isClient()) {
-                clientId = p.getId();
-                break;
-            }
-        }
-        if (clientId == null || targetId.equals(clientId)) return false;
-        // Standard BFS from targetId to client, keeping track if viaId is traversed
-        Set<String> visited = new HashSet<>();
-        Queue<List<String>> queue = new LinkedList<>();
-        List<String> start = new ArrayList<>();
-        start.add(targetId);
-        queue.add(start);
-        visited.add(targetId);
-        while (!queue.isEmpty()) {
-            List<String> path = queue.poll();
-            String current = path.get(path.size() - 1);
-            if (current.equals(clientId)) {
-                // Check if viaId is in the path (excluding start or end)
-                for (int i = 1; i < path.size() - 1; i++) {
-                    if (path.get(i).equals(viaId)) return true;
-                }
-            }
-            for (ProxyModel neighbor : getDirectConnections(current)) {
-                if (!visited.contains(neighbor.getId())) {
-                    visited.add(neighbor.getId());
-                    List<String> newPath = new ArrayList<>(path);
-                    newPath.add(neighbor.getId());
-                    queue.add(newPath);
-                }
-            }
-        }
-        return false;
+        return model.isOnPathToClient(targetId, viaId);
     }
 
 
@@ -965,6 +1070,10 @@ public class NetworkController {
         return view;
     }
 
+    public ParseCache getParseCache() {
+        return parseCache;
+    }
+
     public NetworkModel getModel() {
         return model;
     }
@@ -72,13 +72,15 @@ public final class StreamController extends AbstractController<StreamModel, Stre
                 }
             }
             
-            for (ProxyModel proxyModel : proxyEditors.keySet()){
-                List<List<byte[]>> groups = httpraider.parser.ParserChainRunner.parseFinalGroupsForPanel(
-                        proxyModel,
-                        req,
-                        networkController
-                );
-                proxyEditors.get(proxyModel).addAll(groups);
+            // One chain simulation for every displayed proxy
+            Map<ProxyModel, List<List<httpraider.parser.ParsedRequest>>> groups = httpraider.parser.ParserChainRunner.parseFinalGroupsForPanels(
+                    proxyEditors.keySet(),
+                    req,
+                    networkController.getModel(),
+                    networkController.getParseCache()
+            );
+            for (Map.Entry<ProxyModel, List<List<httpraider.parser.ParsedRequest>>> entry : groups.entrySet()) {
+                proxyEditors.get(entry.getKey()).setParsedGroups(entry.getValue());
             }
         });
     }
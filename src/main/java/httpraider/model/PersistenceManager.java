@@ -11,6 +11,8 @@ public final class PersistenceManager {
     private PersistenceManager() { }
 
     public static <T extends Serializable> void save(String key, T value) {
+        // Outside Burp (benchmarks, headless runs) there is nowhere to persist to
+        if (HTTPRaiderExtension.API == null) return;
         try (ByteArrayOutputStream bos = new ByteArrayOutputStream(); ObjectOutputStream oos = new ObjectOutputStream(bos))
         {
             oos.writeObject(value);
@@ -31,6 +33,7 @@ public final class PersistenceManager {
     }
 
     public static <T extends Serializable> Optional<T> load(String key, Class<T> type) {
+        if (HTTPRaiderExtension.API == null) return Optional.empty();
         ByteArray rawData = HTTPRaiderExtension.API.persistence().extensionData().getByteArray(key);
         if (rawData == null) return Optional.empty();
         byte[] data =  rawData.getBytes();
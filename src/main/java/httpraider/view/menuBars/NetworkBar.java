@@ -9,6 +9,8 @@ public class NetworkBar extends JPanel {
 
     private final JButton discoverButton;
     private final JButton autoLayoutButton;
+    private final JButton batchTestButton;
+    private final JButton fuzzButton;
 
     public NetworkBar() {
         super(new BorderLayout());
@@ -19,20 +21,32 @@ public class NetworkBar extends JPanel {
 
         discoverButton = new JButton("Discover Network");
         autoLayoutButton = new JButton("Auto-Layout");
+        batchTestButton = new JButton("Batch Test");
+        fuzzButton = new JButton("Fuzz Chain");
 
         discoverButton.setFont(discoverButton.getFont().deriveFont(Font.BOLD));
         autoLayoutButton.setFont(autoLayoutButton.getFont().deriveFont(Font.BOLD));
+        batchTestButton.setFont(batchTestButton.getFont().deriveFont(Font.BOLD));
+        fuzzButton.setFont(fuzzButton.getFont().deriveFont(Font.BOLD));
         discoverButton.setFocusPainted(false);
         autoLayoutButton.setFocusPainted(false);
+        batchTestButton.setFocusPainted(false);
+        fuzzButton.setFocusPainted(false);
         discoverButton.setBackground(new Color(119, 79, 221, 224)); // BTN_COLOR_CONNECT
         discoverButton.setForeground(Color.WHITE);
         autoLayoutButton.setBackground(new Color(255, 95, 44));     // BTN_COLOR_SEND
         autoLayoutButton.setForeground(Color.WHITE);
+        batchTestButton.setBackground(new Color(119, 79, 221, 224));
+        batchTestButton.setForeground(Color.WHITE);
+        fuzzButton.setBackground(new Color(119, 79, 221, 224));
+        fuzzButton.setForeground(Color.WHITE);
 
         JPanel left = new JPanel(new FlowLayout(FlowLayout.LEFT));
         left.setOpaque(false);
         left.add(discoverButton);
         left.add(autoLayoutButton);
+        left.add(batchTestButton);
+        left.add(fuzzButton);
 
         add(left, BorderLayout.WEST);
     }
@@ -45,6 +59,14 @@ public class NetworkBar extends JPanel {
         addListenerIfAbsent(autoLayoutButton, l);
     }
 
+    public void setBatchTestActionListener(ActionListener l) {
+        addListenerIfAbsent(batchTestButton, l);
+    }
+
+    public void setFuzzActionListener(ActionListener l) {
+        addListenerIfAbsent(fuzzButton, l);
+    }
+
     private static void addListenerIfAbsent(AbstractButton b, ActionListener l) {
         for (ActionListener e : b.getActionListeners()) if (e == l) return;
         b.addActionListener(l);
@@ -0,0 +1,190 @@
+package httpraider.view.panels;
+
+import httpraider.model.network.ProxyModel;
+import httpraider.parser.ChainBatchRunner;
+import httpraider.parser.DesyncDetector;
+import httpraider.parser.ParsedRequest;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// One row per payload and target proxy, filled in as the batch progresses
+public class BatchResultsPanel extends JPanel {
+
+    private static final String[] COLUMNS = {"#", "Payload", "Proxy", "Requests", "Complete", "Incomplete", "Blocked", "Errors", "Desyncs"};
+
+    private final List<ProxyModel> targets;
+    private final List<String> payloadNames;
+    private final ResultsTableModel tableModel;
+    private final JTable table;
+    private final JTextArea preview;
+    private final JProgressBar progressBar;
+    private final JLabel statusLabel;
+    private final JButton cancelButton;
+
+    public BatchResultsPanel(List<ProxyModel> targets, List<String> payloadNames) {
+        super(new BorderLayout(0, 5));
+        setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+        this.targets = new ArrayList<>(targets);
+        this.payloadNames = new ArrayList<>(payloadNames);
+
+        tableModel = new ResultsTableModel();
+        table = new JTable(tableModel);
+        table.setFillsViewportHeight(true);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.setRowSorter(new TableRowSorter<>(tableModel));
+        table.getColumnModel().getColumn(0).setPreferredWidth(40);
+        table.getColumnModel().getColumn(1).setPreferredWidth(220);
+        table.getColumnModel().getColumn(2).setPreferredWidth(160);
+        DefaultTableCellRenderer centerRenderer = new DefaultTableCellRenderer();
+        centerRenderer.setHorizontalAlignment(SwingConstants.CENTER);
+        for (int c = 3; c < COLUMNS.length; c++) {
+            table.getColumnModel().getColumn(c).setCellRenderer(centerRenderer);
+        }
+
+        preview = new JTextArea();
+        preview.setEditable(false);
+        preview.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        table.getSelectionModel().addListSelectionListener(e -> {
+            if (e.getValueIsAdjusting()) return;
+            int viewRow = table.getSelectedRow();
+            if (viewRow < 0) {
+                preview.setText("");
+                return;
+            }
+            preview.setText(tableModel.rows.get(table.convertRowIndexToModel(viewRow)).describe());
+            preview.setCaretPosition(0);
+        });
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), new JScrollPane(preview));
+        split.setResizeWeight(0.6);
+
+        progressBar = new JProgressBar(0, Math.max(1, payloadNames.size()));
+        progressBar.setStringPainted(true);
+        statusLabel = new JLabel("Simulating " + payloadNames.size() + " payloads through " + targets.size() + " proxies...");
+        cancelButton = new JButton("Cancel");
+        cancelButton.setFocusPainted(false);
+
+        JPanel top = new JPanel(new BorderLayout(8, 0));
+        top.add(statusLabel, BorderLayout.WEST);
+        top.add(progressBar, BorderLayout.CENTER);
+        top.add(cancelButton, BorderLayout.EAST);
+
+        add(top, BorderLayout.NORTH);
+        add(split, BorderLayout.CENTER);
+    }
+
+    public void setCancelActionListener(java.awt.event.ActionListener l) {
+        cancelButton.addActionListener(l);
+    }
+
+    // Must be called on the EDT
+    public void addResult(ChainBatchRunner.PayloadResult result, int completed) {
+        for (ProxyModel target : targets) {
+            tableModel.add(new Row(result, target));
+        }
+        progressBar.setValue(completed);
+        progressBar.setString(completed + " / " + payloadNames.size());
+    }
+
+    // Must be called on the EDT
+    public void setFinished(String status) {
+        statusLabel.setText(status);
+        cancelButton.setEnabled(false);
+    }
+
+    private String payloadName(int index) {
+        return index < payloadNames.size() ? payloadNames.get(index) : "Payload " + (index + 1);
+    }
+
+    private static String proxyName(ProxyModel proxy) {
+        return proxy.isClient() ? "Client" : proxy.getDomainName();
+    }
+
+    private final class Row {
+        final ChainBatchRunner.PayloadResult result;
+        final ProxyModel proxy;
+        final int[] counts = new int[ParsedRequest.Status.values().length];
+        int requests;
+
+        Row(ChainBatchRunner.PayloadResult result, ProxyModel proxy) {
+            this.result = result;
+            this.proxy = proxy;
+            for (List<ParsedRequest> group : result.getGroups(proxy.getId())) {
+                for (ParsedRequest request : group) {
+                    counts[request.getStatus().ordinal()]++;
+                    requests++;
+                }
+            }
+        }
+
+        List<DesyncDetector.Divergence> desyncs() {
+            DesyncDetector.Report report = result.getDesync();
+            return report != null ? report.getDivergences(proxy.getId()) : new ArrayList<>();
+        }
+
+        int count(ParsedRequest.Status... statuses) {
+            int total = 0;
+            for (ParsedRequest.Status status : statuses) total += counts[status.ordinal()];
+            return total;
+        }
+
+        String describe() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(payloadName(result.getIndex())).append(" -> ").append(proxyName(proxy)).append('\n');
+            if (result.getError() != null) {
+                sb.append("Simulation failed: ").append(result.getError()).append('\n');
+            }
+            for (DesyncDetector.Divergence divergence : desyncs()) {
+                sb.append("Desync: ").append(divergence).append('\n');
+            }
+            int n = 1;
+            for (List<ParsedRequest> group : result.getGroups(proxy.getId())) {
+                for (ParsedRequest request : group) {
+                    sb.append("\n----- Request ").append(n++).append(" [").append(request.getStatus()).append("]\n");
+                    sb.append(new String(request.toTaggedBytes(), StandardCharsets.ISO_8859_1)).append('\n');
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private final class ResultsTableModel extends AbstractTableModel {
+        private final List<Row> rows = new ArrayList<>();
+
+        @Override public int getRowCount() { return rows.size(); }
+        @Override public int getColumnCount() { return COLUMNS.length; }
+        @Override public String getColumnName(int column) { return COLUMNS[column]; }
+        @Override public Class<?> getColumnClass(int column) {
+            return column == 1 || column == 2 ? String.class : Integer.class;
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int column) {
+            Row row = rows.get(rowIndex);
+            switch (column) {
+                case 0: return row.result.getIndex() + 1;
+                case 1: return payloadName(row.result.getIndex());
+                case 2: return proxyName(row.proxy);
+                case 3: return row.requests;
+                case 4: return row.count(ParsedRequest.Status.COMPLETE, ParsedRequest.Status.UNTERMINATED_HEADERS);
+                case 5: return row.count(ParsedRequest.Status.HEADERS_INCOMPLETE, ParsedRequest.Status.BODY_INCOMPLETE);
+                case 6: return row.count(ParsedRequest.Status.BLOCKED);
+                case 7: return row.count(ParsedRequest.Status.ERROR) + (row.result.getError() != null ? 1 : 0);
+                default: return row.desyncs().size();
+            }
+        }
+
+        void add(Row row) {
+            rows.add(row);
+            fireTableRowsInserted(rows.size() - 1, rows.size() - 1);
+        }
+    }
+}
@@ -252,7 +252,7 @@ public class DiscoverNetworkPanel extends JPanel {
                             }
                         }
                         toRemove.forEach(id -> networkController.getModel().removeProxy(id));
-                        networkController.getModel().getConnections().clear();
+                        networkController.getModel().clearConnections();
                         
                         // Create proxies for each discovered boundary
                         List<ProxyModel> createdProxies = new ArrayList<>();
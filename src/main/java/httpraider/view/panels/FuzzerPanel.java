@@ -0,0 +1,82 @@
+package httpraider.view.panels;
+
+import httpraider.parser.ChainFuzzer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionListener;
+import java.nio.charset.StandardCharsets;
+
+// Live statistics of a ChainFuzzer run and the divergent inputs found so far
+public class FuzzerPanel extends JPanel {
+
+    private final JLabel statsLabel;
+    private final DefaultListModel<ChainFuzzer.Finding> findingsModel;
+    private final JList<ChainFuzzer.Finding> findingsList;
+    private final JTextArea preview;
+    private final JButton stopButton;
+
+    public FuzzerPanel() {
+        super(new BorderLayout(0, 5));
+        setBorder(BorderFactory.createEmptyBorder(8, 8, 8, 8));
+
+        statsLabel = new JLabel("Starting...");
+        stopButton = new JButton("Stop");
+        stopButton.setFocusPainted(false);
+
+        JPanel top = new JPanel(new BorderLayout(8, 0));
+        top.add(statsLabel, BorderLayout.CENTER);
+        top.add(stopButton, BorderLayout.EAST);
+
+        findingsModel = new DefaultListModel<>();
+        findingsList = new JList<>(findingsModel);
+        findingsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+
+        preview = new JTextArea();
+        preview.setEditable(false);
+        preview.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        findingsList.addListSelectionListener(e -> {
+            if (e.getValueIsAdjusting()) return;
+            ChainFuzzer.Finding finding = findingsList.getSelectedValue();
+            if (finding == null) {
+                preview.setText("");
+                return;
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append(finding.getDivergence()).append('\n');
+            if (finding.getFile() != null) {
+                sb.append("Saved to ").append(finding.getFile()).append('\n');
+            }
+            sb.append('\n').append(new String(finding.getInput(), StandardCharsets.ISO_8859_1));
+            preview.setText(sb.toString());
+            preview.setCaretPosition(0);
+        });
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(findingsList), new JScrollPane(preview));
+        split.setResizeWeight(0.4);
+
+        add(top, BorderLayout.NORTH);
+        add(split, BorderLayout.CENTER);
+    }
+
+    public void setStopActionListener(ActionListener l) {
+        stopButton.addActionListener(l);
+    }
+
+    // Must be called on the EDT
+    public void addFinding(ChainFuzzer.Finding finding) {
+        findingsModel.addElement(finding);
+    }
+
+    // Must be called on the EDT
+    public void setStats(String stats) {
+        statsLabel.setText(stats);
+    }
+
+    // Must be called on the EDT
+    public void setFinished(String stats) {
+        statsLabel.setText(stats);
+        stopButton.setEnabled(false);
+    }
+}
@@ -2,6 +2,7 @@ package httpraider.view.panels;
 
 import burp.api.montoya.http.message.requests.HttpRequest;
 import burp.api.montoya.ui.editor.HttpRequestEditor;
+import httpraider.parser.ParsedRequest;
 import httpraider.view.components.helpers.HttpRequestEditorHighlighter;
 
 import javax.swing.*;
@@ -24,7 +25,8 @@ public class HttpMultiEditorPanel extends JPanel {
     private final JList<ListEntry> requestList;
     private final DefaultListModel<ListEntry> listModel;
     private final JScrollPane listScrollPane;
-    private final Map<Integer, List<byte[]>> groups = new LinkedHashMap<>();
+    // Parsed entries are kept as-is; their tagged bytes are only rendered when shown
+    private final Map<Integer, List<ParsedRequest>> groups = new LinkedHashMap<>();
     private int reqCounter = 1;
     private int nextGroupId = 1;
     private HttpRequestEditorHighlighter highlighter;
@@ -54,7 +56,7 @@ public class HttpMultiEditorPanel extends JPanel {
                 if (entry.type == ListEntryType.ALL) {
                     showAllConcatenated();
                 } else if (entry.type == ListEntryType.REQUEST) {
-                    httpEditorPanel.setBytes(entry.data);
+                    httpEditorPanel.setBytes(entry.data());
                     highlighter.clearHighlights();
                 } else {
                     int dir = e.getValueIsAdjusting() ? 0 : (idx > 0 ? -1 : 1);
@@ -91,7 +93,7 @@ public class HttpMultiEditorPanel extends JPanel {
                 if (idx >= 0) {
                     ListEntry entry = listModel.get(idx);
                     if (entry.type == ListEntryType.REQUEST) {
-                        httpEditorPanel.setBytes(entry.data);
+                        httpEditorPanel.setBytes(entry.data());
                         highlighter.clearHighlights();
 
                     }
@@ -104,9 +106,11 @@ public class HttpMultiEditorPanel extends JPanel {
 
     private void showAllConcatenated() {
         List<byte[]> all = new ArrayList<>();
-        for (List<byte[]> items : groups.values()) {
-            if (items != null && !items.isEmpty()) {
-                all.addAll(items);
+        for (List<ParsedRequest> items : groups.values()) {
+            if (items != null) {
+                for (ParsedRequest item : items) {
+                    all.add(item.toTaggedBytes());
+                }
             }
         }
         if (all.isEmpty()) {
@@ -149,7 +153,7 @@ public class HttpMultiEditorPanel extends JPanel {
 
     public int addGroup(List<byte[]> items) {
         int groupId = nextGroupId++;
-        groups.put(groupId, new ArrayList<>(items));
+        groups.put(groupId, wrap(items));
         refreshList();
         return groupId;
     }
@@ -158,12 +162,30 @@ public class HttpMultiEditorPanel extends JPanel {
         groups.clear();
         nextGroupId = 1;
         for (List<byte[]> groupItems : newGroups) {
+            int groupId = nextGroupId++;
+            groups.put(groupId, wrap(groupItems));
+        }
+        refreshList();
+    }
+
+    public void setParsedGroups(List<List<ParsedRequest>> newGroups) {
+        groups.clear();
+        nextGroupId = 1;
+        for (List<ParsedRequest> groupItems : newGroups) {
             int groupId = nextGroupId++;
             groups.put(groupId, new ArrayList<>(groupItems));
         }
         refreshList();
     }
 
+    private static List<ParsedRequest> wrap(List<byte[]> items) {
+        List<ParsedRequest> wrapped = new ArrayList<>(items.size());
+        for (byte[] item : items) {
+            wrapped.add(ParsedRequest.unparsed(item));
+        }
+        return wrapped;
+    }
+
     public void removeGroup(int groupId) {
         if (groups.containsKey(groupId)) {
             groups.remove(groupId);
@@ -175,7 +197,7 @@ public class HttpMultiEditorPanel extends JPanel {
         if (!groups.containsKey(groupId)) {
             throw new IllegalArgumentException("Group id " + groupId + " does not exist.");
         }
-        groups.get(groupId).add(bytes);
+        groups.get(groupId).add(ParsedRequest.unparsed(bytes));
         refreshList();
     }
 
@@ -192,16 +214,16 @@ public class HttpMultiEditorPanel extends JPanel {
 
     private int getTotalItemCount() {
         int total = 0;
-        for (List<byte[]> l : groups.values()) {
+        for (List<ParsedRequest> l : groups.values()) {
             total += l.size();
         }
         return total;
     }
 
     private byte[] getSingleByteArray() {
-        for (List<byte[]> l : groups.values()) {
+        for (List<ParsedRequest> l : groups.values()) {
             if (l != null && !l.isEmpty()) {
-                return l.get(0);
+                return l.get(0).toTaggedBytes();
             }
         }
         return new byte[0];
@@ -224,11 +246,11 @@ public class HttpMultiEditorPanel extends JPanel {
             listModel.addElement(new ListEntry(ListEntryType.DIVIDER, null, -1, 0));
 
             for (int groupId : groups.keySet()) {
-                List<byte[]> items = groups.get(groupId);
+                List<ParsedRequest> items = groups.get(groupId);
                 if (items != null && !items.isEmpty()) {
                     listModel.addElement(new ListEntry(ListEntryType.GROUP_HEADER, null, groupId, 0));
-                    for (byte[] data : items) {
-                        listModel.addElement(new ListEntry(ListEntryType.REQUEST, data, groupId, reqCounter));
+                    for (ParsedRequest request : items) {
+                        listModel.addElement(new ListEntry(ListEntryType.REQUEST, request, groupId, reqCounter));
                         reqCounter++;
                     }
                     listModel.addElement(new ListEntry(ListEntryType.DIVIDER, null, groupId, 0));
@@ -269,16 +291,20 @@ public class HttpMultiEditorPanel extends JPanel {
 
     private static class ListEntry {
         final ListEntryType type;
-        final byte[] data;
+        final ParsedRequest request;
         final int groupId;
         final int reqNumber;
 
-        ListEntry(ListEntryType type, byte[] data, int groupId, int reqNumber) {
+        ListEntry(ListEntryType type, ParsedRequest request, int groupId, int reqNumber) {
             this.type = type;
-            this.data = data;
+            this.request = request;
             this.groupId = groupId;
             this.reqNumber = reqNumber;
         }
+
+        byte[] data() {
+            return request != null ? request.toTaggedBytes() : null;
+        }
     }
 
     private static class GroupedRequestListCellRenderer extends JPanel implements ListCellRenderer<ListEntry> {
@@ -7,6 +7,7 @@ import httpraider.view.panels.parser.LoadBalancingParserPanel;
 import httpraider.view.panels.parser.MessageLengthParserPanel;
 import httpraider.view.panels.parser.RequestLineParserPanel;
 import httpraider.view.panels.parser.FirewallRulesParserPanel;
+import httpraider.view.panels.parser.StageMetricsParserPanel;
 
 import javax.swing.*;
 import java.awt.*;
@@ -19,6 +20,7 @@ public class HttpParserPanel extends JDialog {
     private final MessageLengthParserPanel messageLengthParserPanel;
     private final LoadBalancingParserPanel loadBalancingParserPanel;
     private final FirewallRulesParserPanel firewallRulesParserPanel;
+    private final StageMetricsParserPanel stageMetricsParserPanel;
 
     private final JButton testButton;
     private final JButton saveButton;
@@ -42,12 +44,14 @@ public class HttpParserPanel extends JDialog {
         messageLengthParserPanel = new MessageLengthParserPanel();
         loadBalancingParserPanel = new LoadBalancingParserPanel();
         firewallRulesParserPanel = new FirewallRulesParserPanel();
+        stageMetricsParserPanel = new StageMetricsParserPanel();
 
         tabbedPane.addTab("Headers", headerLinesParserPanel);
         tabbedPane.addTab("Request Line", requestLineParserPanel);
         tabbedPane.addTab("Message-Length", messageLengthParserPanel);
         tabbedPane.addTab("Forwarding Rules", loadBalancingParserPanel);
         tabbedPane.addTab("Firewall Rules", firewallRulesParserPanel);
+        tabbedPane.addTab("Stage Metrics", stageMetricsParserPanel);
 
         // --- Center bar with Test/Save and border
         JPanel buttonBar = new JPanel();
@@ -113,6 +117,7 @@ public class HttpParserPanel extends JDialog {
     public MessageLengthParserPanel getMessageLengthParserPanel() { return messageLengthParserPanel; }
     public LoadBalancingParserPanel getLoadBalancingParserPanel() { return loadBalancingParserPanel; }
     public FirewallRulesParserPanel getFirewallRulesParserPanel() { return firewallRulesParserPanel; }
+    public StageMetricsParserPanel getStageMetricsParserPanel() { return stageMetricsParserPanel; }
     public JButton getTestButton() { return testButton; }
     public JButton getSaveButton() { return saveButton; }
     public HttpEditorPanel getInputEditorPanel() { return inputEditorPanel; }
@@ -36,7 +36,7 @@ public class FirewallRuleRowPanel extends JPanel {
             // Set default code when source changes and code is empty
             if (rule.getJsCode() == null || rule.getJsCode().isEmpty() || 
                 rule.getJsCode().equals("// Return true to block the request\nreturn false;")) {
-                rule.setJsCode(getDefaultCodeForSource((FirewallRule.Source) sourceCombo.getSelectedItem()));
+                rule.setJsCode(FirewallRule.defaultJsCode((FirewallRule.Source) sourceCombo.getSelectedItem()));
             }
         });
         add(sourceCombo);
@@ -57,7 +57,7 @@ public class FirewallRuleRowPanel extends JPanel {
         
         // Initialize with default code if empty
         if (rule.getJsCode() == null || rule.getJsCode().isEmpty()) {
-            rule.setJsCode(getDefaultCodeForSource(rule.getSource()));
+            rule.setJsCode(FirewallRule.defaultJsCode(rule.getSource()));
         }
     }
 
@@ -80,7 +80,7 @@ public class FirewallRuleRowPanel extends JPanel {
     }
 
     private void openJsEditorDialog() {
-        String defaultCode = getDefaultCodeForSource((FirewallRule.Source) sourceCombo.getSelectedItem());
+        String defaultCode = FirewallRule.defaultJsCode((FirewallRule.Source) sourceCombo.getSelectedItem());
         String currentCode = (rule.getJsCode() != null && !rule.getJsCode().isEmpty()) ? 
                             rule.getJsCode() : defaultCode;
         
@@ -100,149 +100,4 @@ public class FirewallRuleRowPanel extends JPanel {
             rule.setJsCode(editorPanel.getCode());
         }
     }
-
-    private String getDefaultCodeForSource(FirewallRule.Source source) {
-        switch (source) {
-            case METHOD:
-                return """
-                    // Input variable: 'input' contains the HTTP method as a string (e.g., "GET", "POST", "TRACE")
-                    // Return: true to block the request, false to allow
-                    
-                    function isMethod(method) {
-                        return input.toUpperCase() === method.toUpperCase();
-                    }
-                    
-                    function isMethodInList(methodList) {
-                        for (var i = 0; i < methodList.length; i++) {
-                            if (input.toUpperCase() === methodList[i].toUpperCase()) {
-                                return true;
-                            }
-                        }
-                        return false;
-                    }
-                    
-                    // Your code here
-                    return false;
-                    """;
-            
-            case URL:
-                return """
-                    // Input variable: 'input' contains the URL path as a string (e.g., "/api/users", "/admin/config.php")
-                    // Return: true to block the request, false to allow
-                    
-                    function containsPath(path) {
-                        return input.toLowerCase().includes(path.toLowerCase());
-                    }
-                    
-                    function startsWithPath(path) {
-                        return input.toLowerCase().startsWith(path.toLowerCase());
-                    }
-                    
-                    function endsWithExtension(extension) {
-                        return input.toLowerCase().endsWith(extension.toLowerCase());
-                    }
-                    
-                    // Your code here
-                    return false;
-                    """;
-            
-            case VERSION:
-                return """
-                    // Input variable: 'input' contains the HTTP version as a string (e.g., "HTTP/1.1", "HTTP/2")
-                    // Return: true to block the request, false to allow
-                    
-                    function isVersion(version) {
-                        return input === version;
-                    }
-                    
-                    // Your code here
-                    return false;
-                    """;
-            
-            case HEADERS:
-                return """
-                    // Input variable: 'headers' contains an array of header strings (without the request line)
-                    // Each header is a string like "Host: example.com" or "User-Agent: Mozilla/5.0"
-                    // Return: true to block the request, false to allow
-                    
-                    function getHeaderValue(headerName) {
-                        var searchName = headerName.toLowerCase() + ':';
-                        for (var i = 0; i < headers.length; i++) {
-                            var lowerHeader = headers[i].toLowerCase();
-                            if (lowerHeader.startsWith(searchName)) {
-                                return headers[i].substring(headerName.length + 1).trim();
-                            }
-                        }
-                        return null;
-                    }
-                    
-                    function hasHeader(headerName) {
-                        return getHeaderValue(headerName) !== null;
-                    }
-                    
-                    function countHeaders(headerName) {
-                        var count = 0;
-                        var searchName = headerName.toLowerCase() + ':';
-                        for (var i = 0; i < headers.length; i++) {
-                            if (headers[i].toLowerCase().startsWith(searchName)) {
-                                count++;
-                            }
-                        }
-                        return count;
-                    }
-                    
-                    // Your code here
-                    return false;
-                    """;
-            
-            case BODY:
-                return """
-                    // Input variable: 'input' contains the request body as a string
-                    // Return: true to block the request, false to allow
-                    
-                    function containsText(text) {
-                        return input.toLowerCase().includes(text.toLowerCase());
-                    }
-                    
-                    function matchesRegex(pattern) {
-                        try {
-                            var regex = new RegExp(pattern, 'i');
-                            return regex.test(input);
-                        } catch (e) {
-                            return false;
-                        }
-                    }
-                    
-                    // Your code here
-                    return false;
-                    """;
-            
-            case FULL_REQUEST:
-            default:
-                return """
-                    // Input variable: 'input' contains the full HTTP request as a string
-                    // Return: true to block the request, false to allow
-                    
-                    function getRequestLine() {
-                        var lines = input.split('\\n');
-                        return lines.length > 0 ? lines[0].trim() : '';
-                    }
-                    
-                    function getMethod() {
-                        var requestLine = getRequestLine();
-                        var parts = requestLine.split(' ');
-                        return parts.length > 0 ? parts[0] : '';
-                    }
-                    
-                    function getUrl() {
-                        var requestLine = getRequestLine();
-                        var parts = requestLine.split(' ');
-                        return parts.length > 1 ? parts[1] : '';
-                    }
-                    
-                    // Your code here
-                    return false;
-                    """;
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,43 @@
+package httpraider.view.panels.parser;
+
+import javax.swing.*;
+import java.awt.*;
+
+// Per-stage parse timings of the proxy being edited
+public class StageMetricsParserPanel extends JPanel {
+    private final JCheckBox collectCheckBox;
+    private final JButton refreshButton;
+    private final JButton resetButton;
+    private final JTextArea metricsArea;
+
+    public StageMetricsParserPanel() {
+        super(new BorderLayout(0, 8));
+        setBorder(BorderFactory.createEmptyBorder(10, 8, 10, 8));
+
+        collectCheckBox = new JCheckBox("Collect stage metrics (all proxies)");
+        collectCheckBox.setToolTipText("Times every parser stage and forwarding rule evaluation; slows parsing down slightly while enabled");
+        refreshButton = new JButton("Refresh");
+        resetButton = new JButton("Reset");
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT, 8, 0));
+        top.add(collectCheckBox);
+        top.add(refreshButton);
+        top.add(resetButton);
+
+        metricsArea = new JTextArea();
+        metricsArea.setEditable(false);
+        metricsArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        add(top, BorderLayout.NORTH);
+        add(new JScrollPane(metricsArea), BorderLayout.CENTER);
+    }
+
+    public JCheckBox getCollectCheckBox() { return collectCheckBox; }
+    public JButton getRefreshButton() { return refreshButton; }
+    public JButton getResetButton() { return resetButton; }
+
+    public void setMetricsText(String text) {
+        metricsArea.setText(text);
+        metricsArea.setCaretPosition(0);
+    }
+}